@@ -0,0 +1,106 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.expertdesk.edplus.EntryUtil;
+import com.expertdesk.edplus.FieldValueMap;
+import com.expertdesk.edplus.Server;
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.Entry;
+
+/**
+ * Measures iterating all entries of a form on a {@link SimulatedFactoryAdapter simulated server}, with and without prefetching.
+ * The conversion benchmarks also convert every entry to a map, run with the gc profiler to see the allocation rate:
+ * <pre>
+ * ant bench -Dbench.args="EntryIteratorBenchmark -prof gc"
+ * </pre>
+ * 
+ * @author Hugo Visser
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EntryIteratorBenchmark {
+    @Param({"10000"})
+    public int entryCount;
+    
+    @Param({"20", "200"})
+    public int fieldCount;
+    
+    @Param({"0", "500"})
+    public long latencyMicros;
+    
+    @Param({"0", "2"})
+    public int prefetchDepth;
+    
+    private Server server;
+    private FieldValueMap map;
+    
+    @Setup
+    public void setUp() {
+        SimulatedFactoryAdapter factory = new SimulatedFactoryAdapter(entryCount, fieldCount, 30, 0);
+        factory.setLatency(latencyMicros, 0);
+        server = new Server(new ARServerUser());
+        server.setFactoryAdapter(factory);
+        server.setPrefetchDepth(prefetchDepth);
+        map = new FieldValueMap(fieldCount);
+    }
+    
+    @Benchmark
+    public int iterate(Blackhole blackhole) throws ARException {
+        int count = 0;
+        for (Entry entry : server.query("Benchmark")) {
+            blackhole.consume(entry);
+            count++;
+        }
+        return count;
+    }
+    
+    @Benchmark
+    public int iterateToHashMap(Blackhole blackhole) throws ARException {
+        int count = 0;
+        for (Entry entry : server.query("Benchmark")) {
+            blackhole.consume(EntryUtil.toEntryMap(entry));
+            count++;
+        }
+        return count;
+    }
+    
+    @Benchmark
+    public int iterateToFieldValueMap(Blackhole blackhole) throws ARException {
+        int count = 0;
+        for (Entry entry : server.query("Benchmark")) {
+            map.clear();
+            blackhole.consume(EntryUtil.toEntryMap(entry, map));
+            count++;
+        }
+        return count;
+    }
+}
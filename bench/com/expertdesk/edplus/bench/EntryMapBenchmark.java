@@ -0,0 +1,102 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.expertdesk.edplus.EntryUtil;
+import com.expertdesk.edplus.FieldValueMap;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryFactory;
+import com.remedy.arsys.api.EntryID;
+import com.remedy.arsys.api.EntryItem;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.Value;
+
+/**
+ * Compares converting entries with a <code>HashMap&lt;Long, Value&gt;</code> and with a {@link FieldValueMap}.
+ * Run with the gc profiler to see the allocation rate per operation:
+ * <pre>
+ * ant bench -Dbench.args="EntryMapBenchmark -prof gc"
+ * </pre>
+ * 
+ * @author Hugo Visser
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntryMapBenchmark {
+    @Param({"20", "300"})
+    public int fieldCount;
+    
+    private Entry entry;
+    private Map<Long, Value> hashMap;
+    private FieldValueMap fieldValueMap;
+    private FieldValueMap reusedMap;
+    
+    @Setup
+    public void setUp() {
+        EntryItem[] items = new EntryItem[fieldCount];
+        for (int i=0; i < fieldCount; i++) {
+            long fieldId = i < 10 ? i + 2 : 536870913L + i;
+            items[i] = new EntryItem(new FieldID(fieldId), i % 2 == 0 ? new Value("value " + i) : new Value(i));
+        }
+        entry = (Entry) EntryFactory.getFactory().newInstance();
+        entry.setEntryID(new EntryID("000000000000001"));
+        entry.setEntryItems(items);
+        hashMap = EntryUtil.toEntryMap(entry);
+        fieldValueMap = EntryUtil.toEntryMap(entry, new FieldValueMap(fieldCount));
+        reusedMap = new FieldValueMap(fieldCount);
+    }
+    
+    @Benchmark
+    public Map<Long, Value> toHashMap() {
+        return EntryUtil.toEntryMap(entry, new HashMap<Long, Value>());
+    }
+    
+    @Benchmark
+    public FieldValueMap toNewFieldValueMap() {
+        return EntryUtil.toEntryMap(entry, new FieldValueMap(fieldCount));
+    }
+    
+    @Benchmark
+    public FieldValueMap toReusedFieldValueMap() {
+        reusedMap.clear();
+        return EntryUtil.toEntryMap(entry, reusedMap);
+    }
+    
+    @Benchmark
+    public Entry fromHashMap() {
+        return EntryUtil.toEntry("Benchmark", hashMap);
+    }
+    
+    @Benchmark
+    public Entry fromFieldValueMap() {
+        return EntryUtil.toEntry("Benchmark", fieldValueMap);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus.bench;
+
+import com.expertdesk.edplus.ContextFactory;
+import com.remedy.arsys.api.ARServerUser;
+
+/**
+ * Creates contexts that are never connected, for a {@link com.expertdesk.edplus.ServerPool} of a simulated server.
+ * 
+ * @author Hugo Visser
+ */
+public class SimulatedContextFactory implements ContextFactory {
+    public ARServerUser createContext() {
+        return new ARServerUser();
+    }
+
+    public boolean isValid(ARServerUser context) {
+        return true;
+    }
+
+    public void destroyContext(ARServerUser context) {
+    }
+}
@@ -0,0 +1,243 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus.bench;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.expertdesk.edplus.FactoryAdapter;
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.ActiveLinkCriteria;
+import com.remedy.arsys.api.ActiveLinkFactory;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.ContainerCriteria;
+import com.remedy.arsys.api.ContainerListCriteria;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryFactory;
+import com.remedy.arsys.api.EntryID;
+import com.remedy.arsys.api.EntryItem;
+import com.remedy.arsys.api.EntryKey;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.EscalationCriteria;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldCriteria;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.FilterCriteria;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.MenuCriteria;
+import com.remedy.arsys.api.MenuListCriteria;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.SchemaCriteria;
+import com.remedy.arsys.api.SchemaListCriteria;
+import com.remedy.arsys.api.Value;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewCriteria;
+import com.remedy.arsys.api.ViewID;
+import com.remedy.arsys.api.ViewListCriteria;
+import com.remedy.arsys.api.WorkflowObjectListCriteria;
+
+/**
+ * A {@link FactoryAdapter} that simulates a server in process, so the iterators can be benchmarked without an AR System server.
+ * The server has one form with a configurable number of entries and fields, and a configurable number of active links. Every call
+ * waits for the latency of a round trip plus the latency per returned row. 
+ * <br />
+ * The qualification, sorting and field list of a query are ignored, all entries match and all fields are returned. The other 
+ * object types have no objects.
+ * 
+ * @author Hugo Visser
+ */
+public class SimulatedFactoryAdapter implements FactoryAdapter {
+    private final int entryCount;
+    private final int fieldCount;
+    private final int activeLinkCount;
+    private final Value[] values;
+    private final FieldID[] fieldIds;
+    private long callLatencyNanos = 0;
+    private long rowLatencyNanos = 0;
+    
+    /**
+     * Create a simulated server
+     * @param entryCount the number of entries in the form
+     * @param fieldCount the number of fields of each entry
+     * @param valueLength the length of the character values, every other field is an integer
+     * @param activeLinkCount the number of active links
+     */
+    public SimulatedFactoryAdapter(int entryCount, int fieldCount, int valueLength, int activeLinkCount) {
+        this.entryCount = entryCount;
+        this.fieldCount = fieldCount;
+        this.activeLinkCount = activeLinkCount;
+        
+        StringBuilder sb = new StringBuilder(valueLength);
+        for (int i=0; i < valueLength; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        values = new Value[fieldCount];
+        fieldIds = new FieldID[fieldCount];
+        for (int i=0; i < fieldCount; i++) {
+            fieldIds[i] = new FieldID(i < 10 ? i + 2 : 536870913L + i);
+            values[i] = i % 2 == 0 ? new Value(sb.toString()) : new Value(i);
+        }
+    }
+    
+    /**
+     * Set the latency of the calls
+     * @param callMicros the latency of every call in microseconds
+     * @param rowMicros the additional latency of every entry or object that a call returns in microseconds
+     */
+    public void setLatency(long callMicros, long rowMicros) {
+        this.callLatencyNanos = callMicros * 1000;
+        this.rowLatencyNanos = rowMicros * 1000;
+    }
+    
+    private void roundTrip(int rows) {
+        long nanos = callLatencyNanos + rows * rowLatencyNanos;
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+    
+    private static String entryId(int index) {
+        String id = Integer.toString(index + 1);
+        return "000000000000000".substring(id.length()) + id;
+    }
+    
+    public EntryKey[] findEntryKeys(ARServerUser context, EntryListCriteria criteria, Integer matches) throws ARException {
+        int first = Math.min(criteria.getFirstRetrieve(), entryCount);
+        int size = criteria.getMaxLimit() > 0 ? Math.min(criteria.getMaxLimit(), entryCount - first) : entryCount - first;
+        EntryKey[] keys = new EntryKey[size];
+        for (int i=0; i < size; i++) {
+            keys[i] = new EntryKey();
+            keys[i].setEntryID(new EntryID(entryId(first + i)));
+        }
+        roundTrip(size);
+        return keys;
+    }
+
+    public Entry[] findEntries(ARServerUser context, EntryListCriteria listCriteria, EntryCriteria criteria) throws ARException {
+        EntryID[] ids = listCriteria.getEntriesToRetrieve();
+        Entry[] entries = new Entry[ids.length];
+        for (int i=0; i < ids.length; i++) {
+            EntryItem[] items = new EntryItem[fieldCount];
+            for (int j=0; j < fieldCount; j++) {
+                items[j] = new EntryItem(fieldIds[j], values[j]);
+            }
+            entries[i] = (Entry) EntryFactory.getFactory().newInstance();
+            entries[i].setEntryID(ids[i]);
+            entries[i].setEntryItems(items);
+        }
+        roundTrip(entries.length);
+        return entries;
+    }
+
+    public NameID[] findActiveLinkNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        NameID[] names = new NameID[activeLinkCount];
+        for (int i=0; i < activeLinkCount; i++) {
+            names[i] = new NameID("Benchmark:AL:" + entryId(i));
+        }
+        roundTrip(names.length);
+        return names;
+    }
+
+    public ActiveLink[] findActiveLinks(ARServerUser context, WorkflowObjectListCriteria listCriteria, ActiveLinkCriteria criteria) 
+        throws ARException {
+        NameID[] names = listCriteria.getWorkflowNames();
+        ActiveLink[] links = new ActiveLink[names.length];
+        for (int i=0; i < names.length; i++) {
+            links[i] = (ActiveLink) ActiveLinkFactory.getFactory().newInstance();
+            links[i].setName(names[i]);
+        }
+        roundTrip(links.length);
+        return links;
+    }
+
+    public NameID[] findFilterNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new NameID[0];
+    }
+
+    public Filter[] findFilters(ARServerUser context, WorkflowObjectListCriteria listCriteria, FilterCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new Filter[0];
+    }
+
+    public NameID[] findEscalationNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new NameID[0];
+    }
+
+    public Escalation[] findEscalations(ARServerUser context, WorkflowObjectListCriteria listCriteria, EscalationCriteria criteria) 
+        throws ARException {
+        roundTrip(0);
+        return new Escalation[0];
+    }
+
+    public NameID[] findSchemaNames(ARServerUser context, SchemaListCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new NameID[0];
+    }
+
+    public Schema[] findSchemas(ARServerUser context, SchemaListCriteria listCriteria, SchemaCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new Schema[0];
+    }
+
+    public NameID[] findMenuNames(ARServerUser context, MenuListCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new NameID[0];
+    }
+
+    public Menu[] findMenus(ARServerUser context, MenuListCriteria listCriteria, MenuCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new Menu[0];
+    }
+
+    public NameID[] findContainerNames(ARServerUser context, ContainerListCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new NameID[0];
+    }
+
+    public Container[] findContainers(ARServerUser context, ContainerListCriteria listCriteria, ContainerCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new Container[0];
+    }
+
+    public FieldID[] findFieldIds(ARServerUser context, FieldListCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new FieldID[0];
+    }
+
+    public Field[] findFields(ARServerUser context, FieldListCriteria listCriteria, FieldCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new Field[0];
+    }
+
+    public ViewID[] findViewIds(ARServerUser context, ViewListCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new ViewID[0];
+    }
+
+    public View[] findViews(ARServerUser context, ViewListCriteria listCriteria, ViewCriteria criteria) throws ARException {
+        roundTrip(0);
+        return new View[0];
+    }
+}
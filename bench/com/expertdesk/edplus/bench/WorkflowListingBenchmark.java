@@ -0,0 +1,98 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.expertdesk.edplus.ObjectProperty;
+import com.expertdesk.edplus.Server;
+import com.expertdesk.edplus.ServerPool;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+
+/**
+ * Measures listing all active links on a {@link SimulatedFactoryAdapter simulated server}, with the blocks retrieved one at a time
+ * or in parallel with a pool.
+ * 
+ * @author Hugo Visser
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WorkflowListingBenchmark {
+    @Param({"10000"})
+    public int activeLinkCount;
+    
+    @Param({"0", "2000"})
+    public long latencyMicros;
+    
+    @Param({"1", "4"})
+    public int parallelism;
+    
+    private Server server;
+    private ServerPool pool;
+    
+    @Setup
+    public void setUp() {
+        SimulatedFactoryAdapter factory = new SimulatedFactoryAdapter(0, 0, 0, activeLinkCount);
+        factory.setLatency(latencyMicros, 0);
+        server = new Server(new ARServerUser());
+        server.setFactoryAdapter(factory);
+        if (parallelism > 1) {
+            pool = new ServerPool(new SimulatedContextFactory(), parallelism);
+            server.setPool(pool);
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+    
+    @Benchmark
+    public int listActiveLinks(Blackhole blackhole) {
+        int count = 0;
+        for (ActiveLink link : server.getActiveLinks()) {
+            blackhole.consume(link);
+            count++;
+        }
+        return count;
+    }
+    
+    @Benchmark
+    public int listActiveLinkNames(Blackhole blackhole) {
+        int count = 0;
+        for (ActiveLink link : server.getActiveLinks(ObjectProperty.NAME)) {
+            blackhole.consume(link);
+            count++;
+        }
+        return count;
+    }
+}
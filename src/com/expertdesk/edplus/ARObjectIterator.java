@@ -1,406 +1,746 @@
-/*
-*   Copyright 2007 Mansystems Nederland B.V.
-*
-*   Licensed under the Apache License, Version 2.0 (the "License");
-*   you may not use this file except in compliance with the License.
-*   You may obtain a copy of the License at
-*
-*       http://www.apache.org/licenses/LICENSE-2.0
-*
-*   Unless required by applicable law or agreed to in writing, software
-*   distributed under the License is distributed on an "AS IS" BASIS,
-*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-*   See the License for the specific language governing permissions and
-*   limitations under the License.
-*
-*/
-package com.expertdesk.edplus;
-
-import java.util.Iterator;
-
-import com.remedy.arsys.api.ARException;
-import com.remedy.arsys.api.ARServerUser;
-import com.remedy.arsys.api.ActiveLink;
-import com.remedy.arsys.api.ActiveLinkCriteria;
-import com.remedy.arsys.api.ActiveLinkFactory;
-import com.remedy.arsys.api.Container;
-import com.remedy.arsys.api.ContainerCriteria;
-import com.remedy.arsys.api.ContainerFactory;
-import com.remedy.arsys.api.ContainerListCriteria;
-import com.remedy.arsys.api.ContainerType;
-import com.remedy.arsys.api.Escalation;
-import com.remedy.arsys.api.EscalationCriteria;
-import com.remedy.arsys.api.EscalationFactory;
-import com.remedy.arsys.api.Field;
-import com.remedy.arsys.api.FieldCriteria;
-import com.remedy.arsys.api.FieldFactory;
-import com.remedy.arsys.api.FieldListCriteria;
-import com.remedy.arsys.api.Filter;
-import com.remedy.arsys.api.FilterCriteria;
-import com.remedy.arsys.api.FilterFactory;
-import com.remedy.arsys.api.Menu;
-import com.remedy.arsys.api.MenuCriteria;
-import com.remedy.arsys.api.MenuFactory;
-import com.remedy.arsys.api.MenuListCriteria;
-import com.remedy.arsys.api.NameID;
-import com.remedy.arsys.api.Schema;
-import com.remedy.arsys.api.SchemaCriteria;
-import com.remedy.arsys.api.SchemaFactory;
-import com.remedy.arsys.api.SchemaListCriteria;
-import com.remedy.arsys.api.SchemaType;
-import com.remedy.arsys.api.View;
-import com.remedy.arsys.api.ViewCriteria;
-import com.remedy.arsys.api.ViewFactory;
-import com.remedy.arsys.api.ViewListCriteria;
-import com.remedy.arsys.api.WorkflowObjectListCriteria;
-
-
-/**
- * An Iterator to iterate server objects. Use the static newXxxIterable to create an instance of this class. <br />
- * Example:
- * <pre>
- * ARServerUser context = ...
- * for (ActiveLink link : ARObjectIterator.newActiveLinkIterable(context, null)) {
- *      // do something with link
- * }
- * </pre>
- * @author Hugo Visser
- */
-public class ARObjectIterator<T> implements Iterator<T>, Iterable<T> {
-    private Class type;
-    private Object criteriaObject;
-    private ARServerUser context;
-    private T[] elements;
-    private int pos;
-    private NameID[] keys;
-    private int block = 0;
-    private boolean lastBlock = false;
-    
-    // constructor for ActiveLink, Filter, Escalation
-    private ARObjectIterator(ARServerUser context, WorkflowObjectListCriteria wlc,  Class objectType) {
-        this.type = objectType;
-        this.criteriaObject = wlc;
-        this.context = context;        
-    }
-    
-    private ARObjectIterator(ARServerUser context, SchemaListCriteria slc) {
-        this.type = Schema.class;
-        this.criteriaObject = slc;
-        this.context = context;        
-    }
-    
-    private ARObjectIterator(ARServerUser context, ContainerListCriteria clc) {
-        this.type = Container.class;
-        this.criteriaObject = clc;
-        this.context = context;
-    }
-
-    private ARObjectIterator(ARServerUser context, MenuListCriteria mlc) {
-        this.type = Menu.class;
-        this.criteriaObject = mlc;
-        this.context = context;
-    }
-
-    private ARObjectIterator(ARServerUser context, FieldListCriteria flc) throws IllegalArgumentException {
-        if (flc == null) {
-            throw new IllegalArgumentException("flc is null");
-        }
-        this.type = Field.class;
-        this.criteriaObject = flc;
-        this.context = context;
-    }
-
-    private ARObjectIterator(ARServerUser context, ViewListCriteria vlc) throws IllegalArgumentException {
-        if (vlc == null) {
-            throw new IllegalArgumentException("vlc is null");
-        }
-        this.type = View.class;
-        this.criteriaObject = vlc;
-        this.context = context;
-    }
-
-    public boolean hasNext() {
-        if ((elements == null || pos >= elements.length)) {
-            try {
-                getNextBlock();
-            }
-            catch (ARException e) {
-                throw new RuntimeException(e);
-            }
-        }        
-        return elements != null;
-    }
-
-    public T next() {
-        if (!hasNext()) {
-            throw new IllegalStateException();
-        }
-        return elements[pos++];
-    }
-
-    public void remove() {
-        
-    }
-
-    public Iterator<T> iterator() {
-        return this;
-    }
-
-    @SuppressWarnings("unchecked")
-    private void getNextBlock() throws ARException {
-        if (lastBlock) {
-            pos = 0;
-            elements = null;
-            return;
-        }
-        
-        if (type == ActiveLink.class) {
-            elements = (T[]) getNextBlockActiveLink();
-        }
-        else 
-        if (type == Filter.class) {
-            elements = (T[]) getNextBlockFilter();
-        }
-        else
-        if (type == Escalation.class) {
-            elements = (T[]) getNextBlockEscalation();
-        }
-        else
-        if (type == Menu.class) {
-            elements = (T[]) getMenus();
-            lastBlock = true;
-        }
-        else
-        if (type == Schema.class) {
-            elements = (T[]) getSchemas();
-            lastBlock = true;
-        }
-        else
-        if (type == Container.class) {
-            elements = (T[])getContainers();
-            lastBlock = true;
-        }
-        else 
-        if (type == Field.class) {
-            elements = (T[])getFields();
-            lastBlock = true;
-        }
-        else 
-        if (type == View.class) {
-            elements = (T[])getViews();
-            lastBlock = true;
-        }
-        
-        if (elements == null) {
-            lastBlock = true;
-        }
-        
-        pos = 0;            
-    }
-    
-    private View[] getViews() throws ARException {
-        ViewListCriteria vlc = (ViewListCriteria)criteriaObject;
-        ViewCriteria vc = new ViewCriteria();
-        vc.setRetrieveAll(true);
-        return ViewFactory.findObjects(context, vlc, vc);
-    }
-    
-    private Field[] getFields() throws ARException {
-        FieldListCriteria flc = (FieldListCriteria)criteriaObject;            
-        FieldCriteria fc = new FieldCriteria();
-        fc.setRetrieveAll(true);
-        return FieldFactory.findObjects(context, flc, fc);
-    }
-    
-    private Container[] getContainers() throws ARException {
-        if (criteriaObject == null) {
-            criteriaObject = new ContainerListCriteria();
-            ContainerListCriteria clc = (ContainerListCriteria)criteriaObject;
-            clc.setAttribute(true);
-            clc.setTypes(new ContainerType[] {ContainerType.ALL});
-        }
-        ContainerCriteria cc = new ContainerCriteria();
-        cc.setRetrieveAll(true);
-        return ContainerFactory.findObjects(context, (ContainerListCriteria)criteriaObject, cc);
-    }
-    
-    private Schema[] getSchemas() throws ARException {
-        if (criteriaObject == null) {
-            criteriaObject = new SchemaListCriteria(SchemaType.ALL, true, null, null);
-        }
-        if (keys == null) {
-            keys = SchemaFactory.find(context, (SchemaListCriteria)criteriaObject);
-        }
-        SchemaCriteria sc = new SchemaCriteria();
-        sc.setRetrieveAll(true);
-        return SchemaFactory.findObjects(context, (SchemaListCriteria)criteriaObject, sc);
-    }
-    
-    private Menu[] getMenus() throws ARException {
-        if (criteriaObject == null) {
-            criteriaObject = new MenuListCriteria();
-        }
-        MenuCriteria mc = new MenuCriteria();
-        mc.setRetrieveAll(true);
-        return MenuFactory.findObjects(context, (MenuListCriteria)criteriaObject, mc);
-    }
-
-    private ActiveLink[] getNextBlockActiveLink() throws ARException {
-        if (criteriaObject == null) {
-            criteriaObject = new WorkflowObjectListCriteria();
-        }
-        if (keys == null) {
-            keys = ActiveLinkFactory.find(context, (WorkflowObjectListCriteria) criteriaObject);
-            block = 0;
-        }
-        WorkflowObjectListCriteria wlc = (WorkflowObjectListCriteria)criteriaObject;
-        int size = Math.min(keys.length - (block * 100), 100);
-        if (size <= 0) {            
-            return null;
-        }
-        else {
-            NameID[] k = new NameID[size];
-            for (int i=0; i < size; i++) {
-                k[i] = keys[block*100 + i];
-            }
-            ActiveLinkCriteria alc = new ActiveLinkCriteria();
-            alc.setRetrieveAll(true);
-            wlc.setWorkflowNames(k);
-            block++;            
-            return ActiveLinkFactory.findObjects(context, wlc, alc);
-        }
-    }
-    
-    private Filter[] getNextBlockFilter() throws ARException {
-        if (criteriaObject == null) {
-            criteriaObject = new WorkflowObjectListCriteria();
-        }
-        if (keys == null) {
-            keys = FilterFactory.find(context, (WorkflowObjectListCriteria) criteriaObject);
-            block = 0;
-        }
-        WorkflowObjectListCriteria wlc = (WorkflowObjectListCriteria)criteriaObject;
-        int size = Math.min(keys.length - (block * 100), 100);
-        if (size <= 0) {
-            return null;
-        }
-        else {
-            NameID[] k = new NameID[size];
-            for (int i=0; i < size; i++) {
-                k[i] = keys[block*100 + i];
-            }
-            FilterCriteria flc = new FilterCriteria();
-            flc.setRetrieveAll(true);
-            wlc.setWorkflowNames(k);
-            block++;            
-            return FilterFactory.findObjects(context, wlc, flc);
-        }
-    }
-
-    private Escalation[] getNextBlockEscalation() throws ARException {
-        if (criteriaObject == null) {
-            criteriaObject = new WorkflowObjectListCriteria();
-        }
-        if (keys == null) {
-            keys = EscalationFactory.find(context, (WorkflowObjectListCriteria) criteriaObject);
-            block = 0;
-        }
-        WorkflowObjectListCriteria wlc = (WorkflowObjectListCriteria)criteriaObject;
-        int size = Math.min(keys.length - (block * 100), 100);
-        if (size <= 0) {
-            return null;
-        }
-        else {
-            NameID[] k = new NameID[size];
-            for (int i=0; i < size; i++) {
-                k[i] = keys[block*100 + i];
-            }
-            EscalationCriteria elc = new EscalationCriteria();
-            elc.setRetrieveAll(true);
-            wlc.setWorkflowNames(k);
-            block++;            
-            return EscalationFactory.findObjects(context, wlc, elc);
-        }
-    }
-    /**
-     * Create an iterable that iterates {@link ActiveLink}s
-     * @param context the server context
-     * @param wlc criteria that the objects should match or null to iterate all objects
-     * @return the iterable
-     */
-    public static Iterable<ActiveLink> newActiveLinkIterable(ARServerUser context, WorkflowObjectListCriteria wlc) {
-        return new ARObjectIterator<ActiveLink>(context, wlc, ActiveLink.class);
-    }
-
-    /**
-     * Create an iterable that iterates {@link Filter}s
-     * @param context the server context
-     * @param wlc criteria that the objects should match or null to iterate all objects
-     * @return the iterable
-     */
-    public static Iterable<Filter> newFilterIterable(ARServerUser context, WorkflowObjectListCriteria wlc) {
-        return new ARObjectIterator<Filter>(context, wlc, Filter.class);
-    }
-    
-    /**
-     * Create an iterable that iterates {@link Escalation}s
-     * @param context the server context
-     * @param wlc criteria that the objects should match or null to iterate all objects
-     * @return the iterable
-     */
-    public static Iterable<Escalation> newEscalationIterable(ARServerUser context, WorkflowObjectListCriteria wlc) {
-        return new ARObjectIterator<Escalation>(context, wlc, Escalation.class);
-    }
-
-    /**
-     * Create an iterable that iterates {@link Schema}s
-     * @param context the server context
-     * @param slc criteria that the objects should match or null to iterate all objects
-     * @return the iterable
-     */
-    public static Iterable<Schema> newSchemaIterable(ARServerUser context, SchemaListCriteria slc) {
-        return new ARObjectIterator<Schema>(context, slc);
-    }
-
-    /**
-     * Create an iterable that iterates {@link Container}s (guides, packing lists etc)
-     * @param context the server context
-     * @param clc criteria that the objects should match or null to iterate all objects
-     * @return the iterable
-     */
-    public static Iterable<Container> newContainerIterable(ARServerUser context, ContainerListCriteria clc) {
-        return new ARObjectIterator<Container>(context, clc);
-    }
-
-    /**
-     * Create an iterable that iterates {@link Menu}s
-     * @param context the server context
-     * @param mlc criteria that the objects should match or null to iterate all objects
-     * @return the iterable
-     */
-    public static Iterable<Menu> newMenuIterable(ARServerUser context, MenuListCriteria mlc) {
-        return new ARObjectIterator<Menu>(context, mlc);
-    }
-    
-    /**
-     * Create an iterable that iterates {@link Field}s
-     * @param context the server context
-     * @param flc criteria that the objects should match
-     * @return the iterable
-     * @throws IllegalArgumentException if flc is null
-     */
-    public static Iterable<Field> newFieldIterable(ARServerUser context, FieldListCriteria flc) throws IllegalArgumentException {
-        return new ARObjectIterator<Field>(context, flc);
-    }
-
-    /**
-     * Create an iterable that iterates {@link View}s
-     * @param context the server context
-     * @param vlc criteria that the objects should match
-     * @return the iterable
-     * @throws IllegalArgumentException if flc is null
-     */
-    public static Iterable<View> newViewIterable(ARServerUser context, ViewListCriteria vlc) throws IllegalArgumentException {
-        return new ARObjectIterator<View>(context, vlc);
-    }
-}
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.ActiveLinkCriteria;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.ContainerCriteria;
+import com.remedy.arsys.api.ContainerListCriteria;
+import com.remedy.arsys.api.ContainerType;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.EscalationCriteria;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldCriteria;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.FieldType;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.FilterCriteria;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.MenuCriteria;
+import com.remedy.arsys.api.MenuListCriteria;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.SchemaCriteria;
+import com.remedy.arsys.api.SchemaListCriteria;
+import com.remedy.arsys.api.SchemaType;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewCriteria;
+import com.remedy.arsys.api.ViewID;
+import com.remedy.arsys.api.ViewListCriteria;
+import com.remedy.arsys.api.WorkflowObjectListCriteria;
+
+
+/**
+ * An Iterator to iterate server objects. Use the static newXxxIterable to create an instance of this class. The iterator first finds the
+ * names (or ids) of the objects and then retrieves the objects in blocks, so only one block of objects is in memory at a time. <br />
+ * Example:
+ * <pre>
+ * ARServerUser context = ...
+ * for (ActiveLink link : ARObjectIterator.newActiveLinkIterable(context, null)) {
+ *      // do something with link
+ * }
+ * </pre>
+ * @author Hugo Visser
+ */
+public class ARObjectIterator<T> implements Iterator<T>, Iterable<T> {
+    private Class type;
+    private Object criteriaObject;
+    private ARServerUser context;
+    private T[] elements;
+    private int pos;
+    private Object[] keys;
+    private int block = 0;
+    private boolean lastBlock = false;
+    private final static int BLOCK_SIZE = 100;
+    private ObjectType objectType;
+    private ServerPool pool;
+    private int parallelism = 1;
+    private boolean ordered = true;
+    private ConcurrentBlocks concurrentBlocks;
+    private Set<ObjectProperty> properties;
+    private FactoryAdapter factory = ApiFactoryAdapter.getInstance();
+    
+    private ARObjectIterator(ARServerUser context, Object criteria, Class type, ObjectType objectType) {
+        this.type = type;
+        this.criteriaObject = criteria;
+        this.context = context;        
+        this.objectType = objectType;
+    }
+    
+    // constructor for objects that are retrieved concurrently
+    private ARObjectIterator(ARServerUser context, Object criteria, Class type, ObjectType objectType,
+            ServerPool pool, int parallelism, boolean ordered) throws IllegalArgumentException {
+        this(context, criteria, type, objectType);
+        if (pool == null) {
+            throw new IllegalArgumentException("pool is null");
+        }
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Retrieve only the given properties of the objects instead of the complete objects. This should be called before the iteration 
+     * starts.
+     * @param properties the properties to retrieve, or none to retrieve the complete objects
+     */
+    public void setProperties(ObjectProperty... properties) {
+        this.properties = properties.length > 0 ? EnumSet.copyOf(Arrays.asList(properties)) : null;
+    }
+
+    /**
+     * Set the adapter that is used to find the objects. By default the factories of the AR System API are called directly.
+     * @param factory the adapter
+     * @throws IllegalArgumentException if factory is null
+     */
+    public void setFactoryAdapter(FactoryAdapter factory) throws IllegalArgumentException {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory is null");
+        }
+        this.factory = factory;
+    }
+
+    public boolean hasNext() {
+        while (elements == null || pos >= elements.length) {
+            try {
+                getNextBlock();
+            }
+            catch (ARException e) {
+                throw new RuntimeException(e);
+            }
+            if (elements == null) {
+                return false;
+            }
+        }        
+        return true;
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new IllegalStateException();
+        }
+        return elements[pos++];
+    }
+
+    public void remove() {
+        
+    }
+
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void getNextBlock() throws ARException {
+        if (lastBlock) {
+            pos = 0;
+            elements = null;
+            return;
+        }
+        
+        if (criteriaObject == null) {
+            criteriaObject = objectType.newCriteria();
+        }
+        if (keys == null) {
+            keys = objectType.find(factory, context, criteriaObject);
+            block = 0;
+            if (keys == null) {
+                keys = objectType.newKeys(0);
+            }
+        }
+        if (concurrentBlocks == null && pool != null && parallelism > 1) {
+            concurrentBlocks = new ConcurrentBlocks();
+        }
+        if (concurrentBlocks != null) {
+            elements = (T[]) concurrentBlocks.next();
+        }
+        else {
+            Object[] k = nextKeys();
+            elements = k != null ? (T[]) objectType.findObjects(factory, context, criteriaObject, k, properties) : null;
+        }
+        
+        if (elements == null) {
+            lastBlock = true;
+        }
+        
+        pos = 0;            
+    }
+    
+    // the keys of the next block or null if there are no more blocks
+    private Object[] nextKeys() {
+        int size = Math.min(keys.length - (block * BLOCK_SIZE), BLOCK_SIZE);
+        if (size <= 0) {
+            return null;
+        }
+        Object[] k = objectType.newKeys(size);
+        System.arraycopy(keys, block * BLOCK_SIZE, k, 0, size);
+        block++;
+        return k;
+    }
+    
+    /**
+     * Finds the keys of the objects of one type and retrieves the objects for a block of keys. The keys of a block are set on 
+     * a new criteria object, so that blocks can be retrieved concurrently without sharing the criteria of the iterator.
+     */
+    private abstract static class ObjectType {
+        /**
+         * @return the criteria to use when no criteria are given
+         * @throws IllegalStateException if the criteria are required
+         */
+        Object newCriteria() throws IllegalStateException {
+            throw new IllegalStateException("criteria are required");
+        }
+        
+        abstract Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException;
+        
+        abstract Object[] newKeys(int size);
+        
+        /**
+         * @param properties the properties to retrieve or null to retrieve the complete objects
+         */
+        abstract Object[] findObjects(FactoryAdapter factory, ARServerUser context, Object criteria, Object[] keys, Set<ObjectProperty> properties) 
+            throws ARException;
+    }
+    
+    private abstract static class WorkflowType extends ObjectType {
+        Object newCriteria() {
+            return new WorkflowObjectListCriteria();
+        }
+        
+        Object[] newKeys(int size) {
+            return new NameID[size];
+        }
+        
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, Object criteria, Object[] keys, Set<ObjectProperty> properties) 
+                throws ARException {
+            WorkflowObjectListCriteria wlc = new WorkflowObjectListCriteria();
+            wlc.setWorkflowNames((NameID[]) keys);
+            return findObjects(factory, context, wlc, properties);
+        }
+        
+        abstract Object[] findObjects(FactoryAdapter factory, ARServerUser context, WorkflowObjectListCriteria wlc, Set<ObjectProperty> properties) 
+            throws ARException;
+    }
+    
+    private static WorkflowType workflowTypeOf(Class type) throws IllegalArgumentException {
+        if (type == ActiveLink.class) {
+            return ACTIVE_LINK;
+        }
+        if (type == Filter.class) {
+            return FILTER;
+        }
+        if (type == Escalation.class) {
+            return ESCALATION;
+        }
+        throw new IllegalArgumentException(type + " is not a workflow object type");
+    }
+    
+    /**
+     * Find the names of the workflow objects of a type.
+     * @param type {@link ActiveLink}, {@link Filter} or {@link Escalation}
+     */
+    static NameID[] findWorkflowNames(Class type, FactoryAdapter factory, ARServerUser context, WorkflowObjectListCriteria wlc) 
+        throws ARException {
+        return (NameID[]) workflowTypeOf(type).find(factory, context, wlc);
+    }
+    
+    /**
+     * Create an iterable that retrieves the workflow objects with the given names in blocks.
+     * @param type {@link ActiveLink}, {@link Filter} or {@link Escalation}
+     * @param pool the pool to retrieve the blocks concurrently with, or null to retrieve them with the context only
+     */
+    static <T> Iterable<T> newWorkflowIterable(Class<T> type, FactoryAdapter factory, ARServerUser context, NameID[] names, ServerPool pool, 
+            int parallelism, boolean ordered) {
+        ARObjectIterator<T> iterator = new ARObjectIterator<T>(context, new WorkflowObjectListCriteria(), type, workflowTypeOf(type));
+        iterator.keys = names;
+        iterator.factory = factory;
+        iterator.pool = pool;
+        iterator.parallelism = parallelism;
+        iterator.ordered = ordered;
+        return iterator;
+    }
+    
+    // the flags of the properties in the order of ObjectProperty
+    private final static int[] ACTIVE_LINK_PROPERTIES = {
+        ActiveLinkCriteria.NAME, ActiveLinkCriteria.TIMESTAMP, ActiveLinkCriteria.OWNER,
+        ActiveLinkCriteria.LAST_CHANGED, ActiveLinkCriteria.HELP_TEXT, ActiveLinkCriteria.CHANGE_DIARY,
+        ActiveLinkCriteria.QUERY, ActiveLinkCriteria.ACTION_LIST, ActiveLinkCriteria.ELSE_LIST,
+        ActiveLinkCriteria.ENABLE, ActiveLinkCriteria.ORDER, ActiveLinkCriteria.SCHEMA_LIST,
+        ActiveLinkCriteria.GROUP_LIST};
+    private final static int[] FILTER_PROPERTIES = {
+        FilterCriteria.NAME, FilterCriteria.TIMESTAMP, FilterCriteria.OWNER, FilterCriteria.LAST_CHANGED,
+        FilterCriteria.HELP_TEXT, FilterCriteria.CHANGE_DIARY, FilterCriteria.QUERY, FilterCriteria.ACTION_LIST,
+        FilterCriteria.ELSE_LIST, FilterCriteria.ENABLE, FilterCriteria.ORDER, FilterCriteria.SCHEMA_LIST};
+    private final static int[] ESCALATION_PROPERTIES = {
+        EscalationCriteria.NAME, EscalationCriteria.TIMESTAMP, EscalationCriteria.OWNER,
+        EscalationCriteria.LAST_CHANGED, EscalationCriteria.HELP_TEXT, EscalationCriteria.CHANGE_DIARY,
+        EscalationCriteria.QUERY, EscalationCriteria.ACTION_LIST, EscalationCriteria.ELSE_LIST,
+        EscalationCriteria.ENABLE, EscalationCriteria.ORDER, EscalationCriteria.SCHEMA_LIST};
+    private final static int[] SCHEMA_PROPERTIES = {
+        SchemaCriteria.NAME, SchemaCriteria.TIMESTAMP, SchemaCriteria.OWNER, SchemaCriteria.LAST_CHANGED,
+        SchemaCriteria.HELP_TEXT, SchemaCriteria.CHANGE_DIARY};
+    private final static int[] MENU_PROPERTIES = {
+        MenuCriteria.NAME, MenuCriteria.TIMESTAMP, MenuCriteria.OWNER, MenuCriteria.LAST_CHANGED,
+        MenuCriteria.HELP_TEXT, MenuCriteria.CHANGE_DIARY};
+    private final static int[] CONTAINER_PROPERTIES = {
+        ContainerCriteria.NAME, ContainerCriteria.TIMESTAMP, ContainerCriteria.OWNER, ContainerCriteria.LAST_CHANGED,
+        ContainerCriteria.HELP_TEXT, ContainerCriteria.CHANGE_DIARY};
+    private final static int[] FIELD_PROPERTIES = {
+        FieldCriteria.NAME, FieldCriteria.TIMESTAMP, FieldCriteria.OWNER, FieldCriteria.LAST_CHANGED,
+        FieldCriteria.HELP_TEXT, FieldCriteria.CHANGE_DIARY};
+    private final static int[] VIEW_PROPERTIES = {
+        ViewCriteria.NAME, ViewCriteria.TIMESTAMP, ViewCriteria.OWNER, ViewCriteria.LAST_CHANGED,
+        ViewCriteria.HELP_TEXT, ViewCriteria.CHANGE_DIARY};
+    
+    private final static WorkflowType ACTIVE_LINK = new WorkflowType() {
+        Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException {
+            return factory.findActiveLinkNames(context, (WorkflowObjectListCriteria) criteria);
+        }
+
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, WorkflowObjectListCriteria wlc, Set<ObjectProperty> properties) 
+            throws ARException {
+            ActiveLinkCriteria alc = new ActiveLinkCriteria();
+            if (properties == null) {
+                alc.setRetrieveAll(true);
+            }
+            else {
+                alc.setPropertiesToRetrieve(ObjectProperty.toFlags(properties, ACTIVE_LINK_PROPERTIES));
+            }
+            return factory.findActiveLinks(context, wlc, alc);
+        }
+    };
+
+    private final static WorkflowType FILTER = new WorkflowType() {
+        Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException {
+            return factory.findFilterNames(context, (WorkflowObjectListCriteria) criteria);
+        }
+
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, WorkflowObjectListCriteria wlc, Set<ObjectProperty> properties) 
+            throws ARException {
+            FilterCriteria fc = new FilterCriteria();
+            if (properties == null) {
+                fc.setRetrieveAll(true);
+            }
+            else {
+                fc.setPropertiesToRetrieve(ObjectProperty.toFlags(properties, FILTER_PROPERTIES));
+            }
+            return factory.findFilters(context, wlc, fc);
+        }
+    };
+
+    private final static WorkflowType ESCALATION = new WorkflowType() {
+        Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException {
+            return factory.findEscalationNames(context, (WorkflowObjectListCriteria) criteria);
+        }
+
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, WorkflowObjectListCriteria wlc, Set<ObjectProperty> properties) 
+            throws ARException {
+            EscalationCriteria ec = new EscalationCriteria();
+            if (properties == null) {
+                ec.setRetrieveAll(true);
+            }
+            else {
+                ec.setPropertiesToRetrieve(ObjectProperty.toFlags(properties, ESCALATION_PROPERTIES));
+            }
+            return factory.findEscalations(context, wlc, ec);
+        }
+    };
+    
+    private final static ObjectType SCHEMA = new ObjectType() {
+        Object newCriteria() {
+            return new SchemaListCriteria(SchemaType.ALL, true, null, null);
+        }
+        
+        Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException {
+            return factory.findSchemaNames(context, (SchemaListCriteria) criteria);
+        }
+        
+        Object[] newKeys(int size) {
+            return new NameID[size];
+        }
+        
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, Object criteria, Object[] keys, Set<ObjectProperty> properties) 
+                throws ARException {
+            SchemaListCriteria slc = new SchemaListCriteria(SchemaType.ALL, true, null, null);
+            slc.setSchemaNames((NameID[]) keys);
+            SchemaCriteria sc = new SchemaCriteria();
+            if (properties == null) {
+                sc.setRetrieveAll(true);
+            }
+            else {
+                sc.setPropertiesToRetrieve(ObjectProperty.toFlags(properties, SCHEMA_PROPERTIES));
+            }
+            return factory.findSchemas(context, slc, sc);
+        }
+    };
+    
+    private final static ObjectType MENU = new ObjectType() {
+        Object newCriteria() {
+            return new MenuListCriteria();
+        }
+        
+        Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException {
+            return factory.findMenuNames(context, (MenuListCriteria) criteria);
+        }
+        
+        Object[] newKeys(int size) {
+            return new NameID[size];
+        }
+        
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, Object criteria, Object[] keys, Set<ObjectProperty> properties) 
+                throws ARException {
+            MenuListCriteria mlc = new MenuListCriteria();
+            mlc.setMenuNames((NameID[]) keys);
+            MenuCriteria mc = new MenuCriteria();
+            if (properties == null) {
+                mc.setRetrieveAll(true);
+            }
+            else {
+                mc.setPropertiesToRetrieve(ObjectProperty.toFlags(properties, MENU_PROPERTIES));
+            }
+            return factory.findMenus(context, mlc, mc);
+        }
+    };
+    
+    private final static ObjectType CONTAINER = new ObjectType() {
+        Object newCriteria() {
+            ContainerListCriteria clc = new ContainerListCriteria();
+            clc.setAttribute(true);
+            clc.setTypes(new ContainerType[] {ContainerType.ALL});
+            return clc;
+        }
+        
+        Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException {
+            return factory.findContainerNames(context, (ContainerListCriteria) criteria);
+        }
+        
+        Object[] newKeys(int size) {
+            return new NameID[size];
+        }
+        
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, Object criteria, Object[] keys, Set<ObjectProperty> properties) 
+                throws ARException {
+            ContainerListCriteria clc = (ContainerListCriteria) newCriteria();
+            clc.setContainerNames((NameID[]) keys);
+            ContainerCriteria cc = new ContainerCriteria();
+            if (properties == null) {
+                cc.setRetrieveAll(true);
+            }
+            else {
+                cc.setPropertiesToRetrieve(ObjectProperty.toFlags(properties, CONTAINER_PROPERTIES));
+            }
+            return factory.findContainers(context, clc, cc);
+        }
+    };
+    
+    private final static ObjectType FIELD = new ObjectType() {
+        Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException {
+            return factory.findFieldIds(context, (FieldListCriteria) criteria);
+        }
+        
+        Object[] newKeys(int size) {
+            return new FieldID[size];
+        }
+        
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, Object criteria, Object[] keys, Set<ObjectProperty> properties) 
+                throws ARException {
+            FieldListCriteria flc = new FieldListCriteria(((FieldListCriteria) criteria).getSchemaID(), null, FieldType.AR_ALL_FIELD);
+            flc.setFieldIDs((FieldID[]) keys);
+            FieldCriteria fc = new FieldCriteria();
+            if (properties == null) {
+                fc.setRetrieveAll(true);
+            }
+            else {
+                fc.setPropertiesToRetrieve(ObjectProperty.toFlags(properties, FIELD_PROPERTIES));
+            }
+            return factory.findFields(context, flc, fc);
+        }
+    };
+    
+    private final static ObjectType VIEW = new ObjectType() {
+        Object[] find(FactoryAdapter factory, ARServerUser context, Object criteria) throws ARException {
+            return factory.findViewIds(context, (ViewListCriteria) criteria);
+        }
+        
+        Object[] newKeys(int size) {
+            return new ViewID[size];
+        }
+        
+        Object[] findObjects(FactoryAdapter factory, ARServerUser context, Object criteria, Object[] keys, Set<ObjectProperty> properties) 
+                throws ARException {
+            ViewListCriteria vlc = new ViewListCriteria(((ViewListCriteria) criteria).getSchemaID(), null);
+            vlc.setViewIDs((ViewID[]) keys);
+            ViewCriteria vc = new ViewCriteria();
+            if (properties == null) {
+                vc.setRetrieveAll(true);
+            }
+            else {
+                vc.setPropertiesToRetrieve(ObjectProperty.toFlags(properties, VIEW_PROPERTIES));
+            }
+            return factory.findViews(context, vlc, vc);
+        }
+    };
+    
+    /**
+     * Retrieves up to parallelism blocks at the same time, each with a context leased from the pool. The threads stop when they
+     * have been idle for a few seconds, so an iterator that is not iterated to the end does not keep them alive. Once a block
+     * has failed the executor is stopped, and every later call throws the same exception.
+     */
+    private final class ConcurrentBlocks {
+        private final ThreadPoolExecutor executor;
+        private final CompletionService<Object[]> completionService;
+        private final LinkedList<Future<Object[]>> pending = new LinkedList<Future<Object[]>>();
+        private Exception failure;
+        private boolean finished = false;
+        
+        ConcurrentBlocks() {
+            executor = new ThreadPoolExecutor(0, parallelism, 5, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "edplus-objects-" + type.getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+            completionService = ordered ? null : new ExecutorCompletionService<Object[]>(executor);
+        }
+        
+        Object[] next() throws ARException {
+            if (failure instanceof ARException) {
+                throw (ARException) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            if (finished) {
+                return null;
+            }
+            while (pending.size() < parallelism) {
+                final Object[] k = nextKeys();
+                if (k == null) {
+                    break;
+                }
+                Callable<Object[]> task = new Callable<Object[]>() {
+                    public Object[] call() throws ARException {
+                        Server server = pool.lease();
+                        try {
+                            return objectType.findObjects(factory, server.getContext(), criteriaObject, k, properties);
+                        }
+                        finally {
+                            pool.release(server);
+                        }
+                    }
+                };
+                pending.add(ordered ? executor.submit(task) : completionService.submit(task));
+            }
+            if (pending.isEmpty()) {
+                finished = true;
+                stop(false);
+                return null;
+            }
+            try {
+                Future<Object[]> future;
+                if (ordered) {
+                    future = pending.removeFirst();
+                }
+                else {
+                    future = completionService.take();
+                    pending.remove(future);
+                }
+                return future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw fail(new RuntimeException(e));
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof ARException) {
+                    throw fail((ARException) e.getCause());
+                }
+                throw fail(new RuntimeException(e.getCause()));
+            }
+        }
+        
+        private <E extends Exception> E fail(E e) {
+            failure = e;
+            stop(true);
+            return e;
+        }
+        
+        private void stop(boolean now) {
+            // the caller runs policy silently discards tasks after a shutdown, so a task submitted by mistake could be waited for forever
+            executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+            if (now) {
+                executor.shutdownNow();
+            }
+            else {
+                executor.shutdown();
+            }
+        }
+    }
+    
+    /**
+     * Create an iterable that iterates {@link ActiveLink}s
+     * @param context the server context
+     * @param wlc criteria that the objects should match or null to iterate all objects
+     * @return the iterable
+     */
+    public static Iterable<ActiveLink> newActiveLinkIterable(ARServerUser context, WorkflowObjectListCriteria wlc) {
+        return new ARObjectIterator<ActiveLink>(context, wlc, ActiveLink.class, ACTIVE_LINK);
+    }
+
+    /**
+     * Create an iterable that iterates {@link ActiveLink}s, retrieving several blocks of active links at the same time.
+     * @param context the server context, used to find the names of the active links
+     * @param wlc criteria that the objects should match or null to iterate all objects
+     * @param pool the pool to lease the contexts from that retrieve the blocks
+     * @param parallelism the maximum number of blocks that are retrieved at the same time
+     * @param ordered true to return the active links in the order of the names, false to return the blocks as soon as they are retrieved
+     * @return the iterable
+     * @throws IllegalArgumentException if pool is null
+     */
+    public static Iterable<ActiveLink> newActiveLinkIterable(ARServerUser context, WorkflowObjectListCriteria wlc, ServerPool pool, int parallelism, boolean ordered) 
+        throws IllegalArgumentException {
+        return new ARObjectIterator<ActiveLink>(context, wlc, ActiveLink.class, ACTIVE_LINK, pool, parallelism, ordered);
+    }
+
+    /**
+     * Create an iterable that iterates {@link Filter}s
+     * @param context the server context
+     * @param wlc criteria that the objects should match or null to iterate all objects
+     * @return the iterable
+     */
+    public static Iterable<Filter> newFilterIterable(ARServerUser context, WorkflowObjectListCriteria wlc) {
+        return new ARObjectIterator<Filter>(context, wlc, Filter.class, FILTER);
+    }
+
+    /**
+     * Create an iterable that iterates {@link Filter}s, retrieving several blocks of filters at the same time.
+     * @param context the server context, used to find the names of the filters
+     * @param wlc criteria that the objects should match or null to iterate all objects
+     * @param pool the pool to lease the contexts from that retrieve the blocks
+     * @param parallelism the maximum number of blocks that are retrieved at the same time
+     * @param ordered true to return the filters in the order of the names, false to return the blocks as soon as they are retrieved
+     * @return the iterable
+     * @throws IllegalArgumentException if pool is null
+     */
+    public static Iterable<Filter> newFilterIterable(ARServerUser context, WorkflowObjectListCriteria wlc, ServerPool pool, int parallelism, boolean ordered) 
+        throws IllegalArgumentException {
+        return new ARObjectIterator<Filter>(context, wlc, Filter.class, FILTER, pool, parallelism, ordered);
+    }
+    
+    /**
+     * Create an iterable that iterates {@link Escalation}s
+     * @param context the server context
+     * @param wlc criteria that the objects should match or null to iterate all objects
+     * @return the iterable
+     */
+    public static Iterable<Escalation> newEscalationIterable(ARServerUser context, WorkflowObjectListCriteria wlc) {
+        return new ARObjectIterator<Escalation>(context, wlc, Escalation.class, ESCALATION);
+    }
+
+    /**
+     * Create an iterable that iterates {@link Escalation}s, retrieving several blocks of escalations at the same time.
+     * @param context the server context, used to find the names of the escalations
+     * @param wlc criteria that the objects should match or null to iterate all objects
+     * @param pool the pool to lease the contexts from that retrieve the blocks
+     * @param parallelism the maximum number of blocks that are retrieved at the same time
+     * @param ordered true to return the escalations in the order of the names, false to return the blocks as soon as they are retrieved
+     * @return the iterable
+     * @throws IllegalArgumentException if pool is null
+     */
+    public static Iterable<Escalation> newEscalationIterable(ARServerUser context, WorkflowObjectListCriteria wlc, ServerPool pool, int parallelism, boolean ordered) 
+        throws IllegalArgumentException {
+        return new ARObjectIterator<Escalation>(context, wlc, Escalation.class, ESCALATION, pool, parallelism, ordered);
+    }
+
+    /**
+     * Create an iterable that iterates {@link Schema}s
+     * @param context the server context
+     * @param slc criteria that the objects should match or null to iterate all objects
+     * @return the iterable
+     */
+    public static Iterable<Schema> newSchemaIterable(ARServerUser context, SchemaListCriteria slc) {
+        return new ARObjectIterator<Schema>(context, slc, Schema.class, SCHEMA);
+    }
+
+    /**
+     * Create an iterable that iterates {@link Container}s (guides, packing lists etc)
+     * @param context the server context
+     * @param clc criteria that the objects should match or null to iterate all objects
+     * @return the iterable
+     */
+    public static Iterable<Container> newContainerIterable(ARServerUser context, ContainerListCriteria clc) {
+        return new ARObjectIterator<Container>(context, clc, Container.class, CONTAINER);
+    }
+
+    /**
+     * Create an iterable that iterates {@link Menu}s
+     * @param context the server context
+     * @param mlc criteria that the objects should match or null to iterate all objects
+     * @return the iterable
+     */
+    public static Iterable<Menu> newMenuIterable(ARServerUser context, MenuListCriteria mlc) {
+        return new ARObjectIterator<Menu>(context, mlc, Menu.class, MENU);
+    }
+    
+    /**
+     * Create an iterable that iterates {@link Field}s
+     * @param context the server context
+     * @param flc criteria that the objects should match
+     * @return the iterable
+     * @throws IllegalArgumentException if flc is null
+     */
+    public static Iterable<Field> newFieldIterable(ARServerUser context, FieldListCriteria flc) throws IllegalArgumentException {
+        if (flc == null) {
+            throw new IllegalArgumentException("flc is null");
+        }
+        return new ARObjectIterator<Field>(context, flc, Field.class, FIELD);
+    }
+
+    /**
+     * Create an iterable that iterates {@link View}s
+     * @param context the server context
+     * @param vlc criteria that the objects should match
+     * @return the iterable
+     * @throws IllegalArgumentException if flc is null
+     */
+    public static Iterable<View> newViewIterable(ARServerUser context, ViewListCriteria vlc) throws IllegalArgumentException {
+        if (vlc == null) {
+            throw new IllegalArgumentException("vlc is null");
+        }
+        return new ARObjectIterator<View>(context, vlc, View.class, VIEW);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+/**
+ * Tunes the number of keys or entries that an {@link EntryIterator} retrieves with a single call, based on the time the previous 
+ * calls took and the amount of data they returned. The size grows when calls return quickly and shrinks when they take longer than 
+ * the target time, but always stays between the minimum and maximum size. The size can also be limited by the number of 
+ * values (rows times fields) per call, so that wide entries are retrieved in smaller blocks than narrow ones.
+ * <pre>
+ * EntryIterator itr = ...
+ * itr.setEntryListFieldInfo(101, 8, 103);
+ * // retrieve between 50 and 5000 entries per call, aiming for calls of 500ms
+ * itr.setAdaptiveBlockSize(new AdaptiveChunkSize(50, 5000, 100, 500));
+ * </pre>
+ * An instance is thread-safe and can be shared by several iterators on the same form, so that they start with a size that has 
+ * already been tuned.
+ * 
+ * @author Hugo Visser
+ */
+public class AdaptiveChunkSize {
+    private int minSize;
+    private int maxSize;
+    private final long targetNanos;
+    private int maxValuesPerCall = 0;
+    private int size;
+    
+    /**
+     * Create a new controller
+     * @param minSize the minimum size
+     * @param maxSize the maximum size
+     * @param initialSize the size of the first call
+     * @param targetMillis the time that a call should take in milliseconds
+     * @throws IllegalArgumentException if minSize is smaller than 1 or larger than maxSize
+     */
+    public AdaptiveChunkSize(int minSize, int maxSize, int initialSize, long targetMillis) throws IllegalArgumentException {
+        if (minSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid size range " + minSize + "-" + maxSize);
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetNanos = targetMillis * 1000000L;
+        this.size = clamp(initialSize);
+    }
+    
+    /**
+     * Limit the number of values, which is the number of rows times the number of fields, that are retrieved with a single call.
+     * @param maxValues the maximum number of values or 0 for no limit (the default)
+     */
+    public synchronized void setMaxValuesPerCall(int maxValues) {
+        this.maxValuesPerCall = maxValues;
+    }
+    
+    /**
+     * @return the size for the next call
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+    
+    /**
+     * @return the minimum size
+     */
+    public synchronized int getMinSize() {
+        return minSize;
+    }
+    
+    /**
+     * @return the maximum size, which can be lowered when the server limits the number of results
+     */
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Record the result of a call.
+     * @param requested the number of rows that were requested
+     * @param returned the number of rows that were returned
+     * @param values the number of values that were returned
+     * @param elapsedNanos the duration of the call in nanoseconds
+     */
+    synchronized void update(int requested, int returned, int values, long elapsedNanos) {
+        if (returned <= 0 || elapsedNanos <= 0) {
+            return;
+        }
+        // the size that would have taken the target time, moving at most a factor 2 per call to dampen noise
+        long ideal = (long) ((double) returned * targetNanos / elapsedNanos);
+        if (returned < requested && ideal > size) {
+            // the end of the results was reached, so the call says nothing about larger sizes
+            ideal = size;
+        }
+        long next = Math.max(size / 2, Math.min((long) size * 2, (size + ideal) / 2));
+        if (maxValuesPerCall > 0 && values > 0) {
+            long valuesPerRow = Math.max(1, values / returned);
+            next = Math.min(next, maxValuesPerCall / valuesPerRow);
+        }
+        size = clamp(next);
+    }
+    
+    /**
+     * Lower the maximum size, for example because the server returned fewer results than requested due to a server limit.
+     * @param limit the new maximum size
+     */
+    synchronized void limitMaxSize(int limit) {
+        if (limit > 0 && limit < maxSize) {
+            maxSize = Math.max(limit, 1);
+            minSize = Math.min(minSize, maxSize);
+            size = clamp(size);
+        }
+    }
+    
+    private int clamp(long value) {
+        return (int) Math.max(minSize, Math.min(maxSize, value));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.ActiveLinkCriteria;
+import com.remedy.arsys.api.ActiveLinkFactory;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.ContainerCriteria;
+import com.remedy.arsys.api.ContainerFactory;
+import com.remedy.arsys.api.ContainerListCriteria;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryFactory;
+import com.remedy.arsys.api.EntryKey;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.EscalationCriteria;
+import com.remedy.arsys.api.EscalationFactory;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldCriteria;
+import com.remedy.arsys.api.FieldFactory;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.FilterCriteria;
+import com.remedy.arsys.api.FilterFactory;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.MenuCriteria;
+import com.remedy.arsys.api.MenuFactory;
+import com.remedy.arsys.api.MenuListCriteria;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.SchemaCriteria;
+import com.remedy.arsys.api.SchemaFactory;
+import com.remedy.arsys.api.SchemaListCriteria;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewCriteria;
+import com.remedy.arsys.api.ViewFactory;
+import com.remedy.arsys.api.ViewID;
+import com.remedy.arsys.api.ViewListCriteria;
+import com.remedy.arsys.api.WorkflowObjectListCriteria;
+
+/**
+ * The {@link FactoryAdapter} that calls the factories of the AR System API, this is the adapter that is used by default.
+ * 
+ * @author Hugo Visser
+ */
+public class ApiFactoryAdapter implements FactoryAdapter {
+    private final static ApiFactoryAdapter instance = new ApiFactoryAdapter();
+    
+    /**
+     * @return the shared instance, the adapter has no state
+     */
+    public static ApiFactoryAdapter getInstance() {
+        return instance;
+    }
+    
+    public EntryKey[] findEntryKeys(ARServerUser context, EntryListCriteria criteria, Integer matches) throws ARException {
+        return EntryFactory.find(context, criteria, false, matches);
+    }
+
+    public Entry[] findEntries(ARServerUser context, EntryListCriteria listCriteria, EntryCriteria criteria) throws ARException {
+        return EntryFactory.findObjects(context, listCriteria, criteria, false, null);
+    }
+
+    public NameID[] findActiveLinkNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        return ActiveLinkFactory.find(context, criteria);
+    }
+
+    public ActiveLink[] findActiveLinks(ARServerUser context, WorkflowObjectListCriteria listCriteria, ActiveLinkCriteria criteria) throws ARException {
+        return ActiveLinkFactory.findObjects(context, listCriteria, criteria);
+    }
+
+    public NameID[] findFilterNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        return FilterFactory.find(context, criteria);
+    }
+
+    public Filter[] findFilters(ARServerUser context, WorkflowObjectListCriteria listCriteria, FilterCriteria criteria) throws ARException {
+        return FilterFactory.findObjects(context, listCriteria, criteria);
+    }
+
+    public NameID[] findEscalationNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        return EscalationFactory.find(context, criteria);
+    }
+
+    public Escalation[] findEscalations(ARServerUser context, WorkflowObjectListCriteria listCriteria, EscalationCriteria criteria) throws ARException {
+        return EscalationFactory.findObjects(context, listCriteria, criteria);
+    }
+
+    public NameID[] findSchemaNames(ARServerUser context, SchemaListCriteria criteria) throws ARException {
+        return SchemaFactory.find(context, criteria);
+    }
+
+    public Schema[] findSchemas(ARServerUser context, SchemaListCriteria listCriteria, SchemaCriteria criteria) throws ARException {
+        return SchemaFactory.findObjects(context, listCriteria, criteria);
+    }
+
+    public NameID[] findMenuNames(ARServerUser context, MenuListCriteria criteria) throws ARException {
+        return MenuFactory.find(context, criteria);
+    }
+
+    public Menu[] findMenus(ARServerUser context, MenuListCriteria listCriteria, MenuCriteria criteria) throws ARException {
+        return MenuFactory.findObjects(context, listCriteria, criteria);
+    }
+
+    public NameID[] findContainerNames(ARServerUser context, ContainerListCriteria criteria) throws ARException {
+        return ContainerFactory.find(context, criteria);
+    }
+
+    public Container[] findContainers(ARServerUser context, ContainerListCriteria listCriteria, ContainerCriteria criteria) throws ARException {
+        return ContainerFactory.findObjects(context, listCriteria, criteria);
+    }
+
+    public FieldID[] findFieldIds(ARServerUser context, FieldListCriteria criteria) throws ARException {
+        return FieldFactory.find(context, criteria);
+    }
+
+    public Field[] findFields(ARServerUser context, FieldListCriteria listCriteria, FieldCriteria criteria) throws ARException {
+        return FieldFactory.findObjects(context, listCriteria, criteria);
+    }
+
+    public ViewID[] findViewIds(ARServerUser context, ViewListCriteria criteria) throws ARException {
+        return ViewFactory.find(context, criteria);
+    }
+
+    public View[] findViews(ARServerUser context, ViewListCriteria listCriteria, ViewCriteria criteria) throws ARException {
+        return ViewFactory.findObjects(context, listCriteria, criteria);
+    }
+}
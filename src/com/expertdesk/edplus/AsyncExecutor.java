@@ -0,0 +1,172 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the asynchronous calls of a server on an executor, with a limit on the number of calls that run at the same time. Calls over 
+ * the limit wait in a queue without using a thread, and are handed to the executor when a running call finishes.
+ * 
+ * @author Hugo Visser
+ */
+final class AsyncExecutor {
+    /**
+     * The default maximum number of calls that run at the same time
+     */
+    final static int DEFAULT_LIMIT = 8;
+    private static ExecutorService sharedExecutor;
+    private final Queue<Task<?>> queue = new ConcurrentLinkedQueue<Task<?>>();
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile int limit;
+    private volatile Executor executor;
+    
+    /**
+     * @param limit the maximum number of calls that run at the same time
+     * @throws IllegalArgumentException if the limit is less than 1
+     */
+    AsyncExecutor(int limit) throws IllegalArgumentException {
+        setLimit(limit);
+    }
+    
+    /**
+     * @param limit the maximum number of calls that run at the same time
+     * @throws IllegalArgumentException if the limit is less than 1
+     */
+    void setLimit(int limit) throws IllegalArgumentException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit < 1");
+        }
+        this.limit = limit;
+        drain();
+    }
+    
+    /**
+     * @param executor the executor or null to use the shared executor
+     */
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * @return the number of calls that are running
+     */
+    int getRunning() {
+        return running.get();
+    }
+    
+    /**
+     * @return the number of calls that wait for a running call to finish
+     */
+    int getQueued() {
+        return queue.size();
+    }
+    
+    /**
+     * Run a call asynchronously.
+     * @param call the call
+     * @return the future result of the call
+     */
+    <T> Future<T> submit(Callable<T> call) {
+        Task<T> task = new Task<T>(call);
+        queue.add(task);
+        drain();
+        return task;
+    }
+    
+    private void drain() {
+        while (!queue.isEmpty() && acquire()) {
+            final Task<?> task = queue.poll();
+            if (task == null) {
+                running.decrementAndGet();
+                continue;
+            }
+            Runnable runnable = new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    }
+                    finally {
+                        running.decrementAndGet();
+                        drain();
+                    }
+                }
+            };
+            try {
+                getExecutor().execute(runnable);
+            }
+            catch (RejectedExecutionException e) {
+                running.decrementAndGet();
+                task.fail(e);
+            }
+        }
+    }
+    
+    private boolean acquire() {
+        while (true) {
+            int current = running.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    private Executor getExecutor() {
+        Executor e = executor;
+        return e != null ? e : getSharedExecutor();
+    }
+    
+    /**
+     * @return the executor that is shared by all servers that have no executor set, its threads stop when they have been idle for a minute
+     */
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            sharedExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "edplus-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sharedExecutor;
+    }
+    
+    private static final class Task<T> extends FutureTask<T> {
+        Task(Callable<T> call) {
+            super(call);
+        }
+        
+        void fail(Throwable error) {
+            setException(error);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a bulk operation such as {@link Server#storeAll(String, Iterable)}: the number of entries that were stored,
+ * the entries that failed and the throughput.
+ * 
+ * @author Hugo Visser
+ */
+public class BulkResult {
+    private final int succeeded;
+    private final List<Failure> failures;
+    private final long elapsedMillis;
+    
+    BulkResult(int succeeded, List<Failure> failures, long elapsedMillis) {
+        this.succeeded = succeeded;
+        this.failures = Collections.unmodifiableList(new ArrayList<Failure>(failures));
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    /**
+     * @return the number of entries that were stored successfully
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+    
+    /**
+     * @return the number of entries that could not be stored
+     */
+    public int getFailed() {
+        return failures.size();
+    }
+    
+    /**
+     * @return the entries that could not be stored, in no particular order
+     */
+    public List<Failure> getFailures() {
+        return failures;
+    }
+    
+    /**
+     * @return the duration of the operation in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    /**
+     * @return the number of entries processed per second, including the failed entries
+     */
+    public double getThroughput() {
+        return elapsedMillis > 0 ? (succeeded + failures.size()) * 1000.0 / elapsedMillis : 0;
+    }
+    
+    public String toString() {
+        return succeeded + " stored, " + failures.size() + " failed in " + elapsedMillis + " ms (" 
+            + Math.round(getThroughput()) + " entries/s)";
+    }
+    
+    /**
+     * An entry that could not be stored.
+     */
+    public static class Failure {
+        private final int index;
+        private final String entryId;
+        private final Exception exception;
+        private final boolean cancelled;
+        
+        Failure(int index, String entryId, Exception exception) {
+            this(index, entryId, exception, false);
+        }
+        
+        Failure(int index, String entryId, Exception exception, boolean cancelled) {
+            this.index = index;
+            this.entryId = entryId;
+            this.exception = exception;
+            this.cancelled = cancelled;
+        }
+        
+        /**
+         * @return the position of the entry in the input, starting at 0
+         */
+        public int getIndex() {
+            return index;
+        }
+        
+        /**
+         * @return the entry id or null if a new entry was created
+         */
+        public String getEntryId() {
+            return entryId;
+        }
+        
+        /**
+         * @return the exception, normally a {@link com.remedy.arsys.api.ARException}, or the exception of the input if the entry
+         * could not be read
+         */
+        public Exception getException() {
+            return exception;
+        }
+        
+        /**
+         * @return true if the entry was not stored because the operation was interrupted, the exception is then a 
+         * {@link java.util.concurrent.CancellationException}
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        public String toString() {
+            return "Entry " + (entryId != null ? entryId : "#" + index) + ": " + exception;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.DataType;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.Value;
+
+/**
+ * Stores entries using a number of worker threads, each with its own server context. The calling thread reads the input and hands
+ * the entries to the workers through a bounded queue. The workers have always stopped when {@link #storeAll(Iterator)} returns,
+ * so the contexts can be used again.
+ * 
+ * @author Hugo Visser
+ */
+final class BulkWriter {
+    private final static Task END = new Task(-1, null);
+    private final String form;
+    private final List<Server> servers;
+    private final ConcurrencyGovernor governor;
+    private final BlockingQueue<Task> queue;
+    private final List<BulkResult.Failure> failures = Collections.synchronizedList(new ArrayList<BulkResult.Failure>());
+    private int succeeded = 0;
+    private volatile boolean cancelled = false;
+    
+    /**
+     * @param form the form to store the entries in
+     * @param servers the servers to use, one worker is started for each server
+     * @param governor the governor that limits the calls that store the entries, or null
+     */
+    BulkWriter(String form, List<Server> servers, ConcurrencyGovernor governor) {
+        this.form = form;
+        this.servers = servers;
+        this.governor = governor;
+        this.queue = new ArrayBlockingQueue<Task>(servers.size() * 2);
+    }
+    
+    /**
+     * Store all entries and wait until they are stored. When the input throws an exception, no more entries are read and the
+     * exception is reported as a failure at the index of the entry that could not be read. When the calling thread is interrupted,
+     * the entries that have been read but not stored yet are reported as cancelled failures, after the entries that are being 
+     * stored have been stored.
+     * @param entries the entries to store
+     * @return the result
+     */
+    BulkResult storeAll(Iterator<Map<Long, Value>> entries) {
+        long start = System.currentTimeMillis();
+        if (servers.size() == 1) {
+            // no need for a separate thread
+            int index = 0;
+            for (Map<Long, Value> entry = next(entries, index); entry != null; entry = next(entries, index)) {
+                store(servers.get(0), new Task(index++, entry));
+            }
+            return new BulkResult(succeeded, failures, System.currentTimeMillis() - start);
+        }
+        
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i=0; i < servers.size(); i++) {
+            final Server server = servers.get(i);
+            Thread worker = new Thread("edplus-bulk-" + form + "-" + i) {
+                public void run() {
+                    work(server);
+                }
+            };
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        
+        boolean interrupted = false;
+        Task task = null;
+        try {
+            int index = 0;
+            for (Map<Long, Value> entry = next(entries, index); entry != null; entry = next(entries, index)) {
+                task = new Task(index++, entry);
+                queue.put(task);
+            }
+        }
+        catch (InterruptedException e) {
+            // the workers report the queued entries as cancelled
+            interrupted = true;
+            cancelled = true;
+            cancel(task);
+        }
+        finally {
+            // wait for the workers even when interrupted, a worker may still be using its context
+            for (int i=0; i < workers.size(); i++) {
+                interrupted |= putUninterruptibly(END);
+            }
+            for (Thread worker : workers) {
+                interrupted |= joinUninterruptibly(worker);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            return new BulkResult(succeeded, failures, System.currentTimeMillis() - start);
+        }
+    }
+    
+    private Map<Long, Value> next(Iterator<Map<Long, Value>> entries, int index) {
+        try {
+            return entries.hasNext() ? entries.next() : null;
+        }
+        catch (RuntimeException e) {
+            failures.add(new BulkResult.Failure(index, null, e));
+            return null;
+        }
+    }
+    
+    private boolean putUninterruptibly(Task task) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(task);
+                return interrupted;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+    
+    private boolean joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                return interrupted;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+    
+    private void work(Server server) {
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            }
+            catch (InterruptedException e) {
+                // the workers are not interrupted by storeAll, treat it as a cancellation and keep taking tasks until the end
+                cancelled = true;
+                continue;
+            }
+            if (task == END) {
+                return;
+            }
+            if (cancelled) {
+                cancel(task);
+            }
+            else {
+                store(server, task);
+            }
+        }
+    }
+    
+    private void cancel(Task task) {
+        failures.add(new BulkResult.Failure(task.index, entryId(task), new CancellationException("The bulk operation was interrupted"), true));
+    }
+    
+    private void store(Server server, Task task) {
+        String entryId = null;
+        try {
+            entryId = entryId(task);
+            Entry entry = EntryUtil.toEntry(form, task.entry);
+            entry.setContext(server.getContext());
+            Server.store(entry, governor);
+            synchronized (this) {
+                succeeded++;
+            }
+        }
+        catch (ARException e) {
+            failures.add(new BulkResult.Failure(task.index, entryId, e));
+        }
+        catch (RuntimeException e) {
+            failures.add(new BulkResult.Failure(task.index, entryId, e));
+        }
+    }
+    
+    private static String entryId(Task task) {
+        Value id = task.entry.get(1L);
+        return id != null && id.getDataType() != DataType.NULL ? id.toString() : null;
+    }
+    
+    private static final class Task {
+        private final int index;
+        private final Map<Long, Value> entry;
+        
+        Task(int index, Map<Long, Value> entry) {
+            this.index = index;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.remedy.arsys.api.ARException;
+
+/**
+ * Limits the number of calls that run against an AR System server at the same time, so that parallel jobs do not saturate the
+ * RPC queues of the server. The limit adapts to the server: while the calls succeed and their recent latency stays 
+ * close to the long term latency, the limit grows by one for every limit calls (additive increase). When the recent latency rises above
+ * the long term latency times the tolerance, or a call fails with a network or timeout error, the limit is multiplied by the backoff
+ * ratio (multiplicative decrease). The latencies are kept per operation, as a search for keys takes longer than retrieving a block of
+ * entries. Optionally the number of calls per second is limited as well.
+ * <pre>
+ * ConcurrencyGovernor governor = new ConcurrencyGovernor();
+ * governor.setMaxRate(200);
+ * governor.setMaxWait(30000);
+ * server.setConcurrencyGovernor(governor);
+ * </pre>
+ * Callers over the limit wait for a slot, up to the maximum wait, after which a {@link RejectedExecutionException} is thrown. 
+ * A governor can be shared by several {@link Server} objects for the same AR System server, and can be registered as a JMX MBean to 
+ * observe the current limit.
+ * 
+ * @author Hugo Visser
+ * @see Server#setConcurrencyGovernor(ConcurrencyGovernor)
+ */
+public class ConcurrencyGovernor implements ConcurrencyGovernorMBean {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+    private volatile int minLimit;
+    private volatile int maxLimit;
+    private volatile double tolerance = 1.5;
+    private volatile double backoffRatio = 0.9;
+    private volatile long maxWait = -1;
+    private volatile long[] overloadErrors = RetryPolicy.DEFAULT_RETRYABLE_ERRORS.clone();
+    // guarded by lock
+    private double limit;
+    private int inFlight = 0;
+    private int queued = 0;
+    private final Map<String, Latency> latencies = new HashMap<String, Latency>();
+    private long lastDecrease = 0;
+    // the rate limit, guarded by the lock as well
+    private double maxRate = 0;
+    private long intervalNanos = 0;
+    private long nextPermit = 0;
+    
+    /**
+     * Create a governor with an initial limit of 8, between 1 and 64 calls
+     */
+    public ConcurrencyGovernor() {
+        this(8, 1, 64);
+    }
+    
+    /**
+     * @param initialLimit the initial limit
+     * @param minLimit the minimum limit
+     * @param maxLimit the maximum limit
+     * @throws IllegalArgumentException if the limits are less than 1 or the initial limit is not between the minimum and maximum
+     */
+    public ConcurrencyGovernor(int initialLimit, int minLimit, int maxLimit) throws IllegalArgumentException {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must be 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+    
+    /**
+     * @param tolerance the factor by which the recent latency may rise above the long term latency before the limit is lowered, 
+     * the default is 1.5
+     * @throws IllegalArgumentException if the tolerance is less than 1
+     */
+    public void setLatencyTolerance(double tolerance) throws IllegalArgumentException {
+        if (tolerance < 1) {
+            throw new IllegalArgumentException("tolerance < 1");
+        }
+        this.tolerance = tolerance;
+    }
+    
+    /**
+     * @param ratio the factor by which the limit is lowered, the default is 0.9
+     * @throws IllegalArgumentException if the ratio is not between 0 and 1
+     */
+    public void setBackoffRatio(double ratio) throws IllegalArgumentException {
+        if (ratio <= 0 || ratio >= 1) {
+            throw new IllegalArgumentException("ratio must be between 0 and 1");
+        }
+        this.backoffRatio = ratio;
+    }
+    
+    /**
+     * @param maxWait the maximum time in milliseconds that a caller waits for a slot or for the rate limit, 0 to reject callers over 
+     * the limit immediately or -1 to wait without a limit (the default)
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+    
+    /**
+     * @param errors the AR System message numbers of the errors that indicate an overloaded server, by default the network and timeout 
+     * errors of {@link RetryPolicy#DEFAULT_RETRYABLE_ERRORS}
+     */
+    public void setOverloadErrors(long... errors) {
+        this.overloadErrors = errors.clone();
+    }
+    
+    /**
+     * @param callsPerSecond the maximum number of calls per second, or 0 to not limit the rate (the default)
+     */
+    public void setMaxRate(double callsPerSecond) {
+        lock.lock();
+        try {
+            maxRate = Math.max(callsPerSecond, 0);
+            intervalNanos = maxRate > 0 ? (long) (1000000000 / maxRate) : 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    public double getMaxRate() {
+        lock.lock();
+        try {
+            return maxRate;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    public long getRejected() {
+        return rejected.get();
+    }
+    
+    public long getDecreases() {
+        return decreases.get();
+    }
+    
+    /**
+     * Wait for a slot and for the rate limit.
+     * @return the start time of the call in nanoseconds, to pass to {@link #release(String, long, ARException)}
+     * @throws RejectedExecutionException if no slot became available within the maximum wait, or the thread was interrupted
+     */
+    long acquire() throws RejectedExecutionException {
+        long wait = maxWait;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait);
+        lock.lock();
+        try {
+            queued++;
+            try {
+                while (inFlight >= (int) limit) {
+                    if (wait == 0) {
+                        throw reject("the concurrency limit of " + (int) limit + " is reached");
+                    }
+                    if (wait < 0) {
+                        available.await();
+                    }
+                    else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw reject("no call slot became available within " + wait + " ms");
+                        }
+                        available.awaitNanos(remaining);
+                    }
+                }
+                inFlight++;
+            }
+            finally {
+                queued--;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject("interrupted while waiting for a call slot");
+        }
+        finally {
+            lock.unlock();
+        }
+        try {
+            waitForRate(wait, deadline);
+        }
+        catch (RejectedExecutionException e) {
+            release();
+            throw e;
+        }
+        return System.nanoTime();
+    }
+    
+    private void waitForRate(long wait, long deadline) throws RejectedExecutionException {
+        long delay;
+        lock.lock();
+        try {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long permit = Math.max(now, nextPermit);
+            delay = permit - now;
+            if (wait >= 0 && permit > deadline) {
+                throw reject("the rate limit of " + maxRate + " calls per second is reached");
+            }
+            nextPermit = permit + intervalNanos;
+            queued++;
+        }
+        finally {
+            lock.unlock();
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject("interrupted while waiting for the rate limit");
+        }
+        finally {
+            lock.lock();
+            queued--;
+            lock.unlock();
+        }
+    }
+    
+    private RejectedExecutionException reject(String message) {
+        rejected.incrementAndGet();
+        return new RejectedExecutionException(message);
+    }
+    
+    /**
+     * Release a slot without adapting the limit, for a call that was rejected or failed with an unexpected exception.
+     */
+    void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Release the slot of a call and adapt the limit to the latency and the result of the call.
+     * @param operation the operation of the call
+     * @param start the start time returned by {@link #acquire()}
+     * @param error the error of the call or null if it succeeded
+     */
+    void release(String operation, long start, ARException error) {
+        long now = System.nanoTime();
+        long latency = now - start;
+        boolean overload = error != null && RetryPolicy.hasMessage(error, overloadErrors);
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= limit / 2;
+            inFlight--;
+            if (error == null) {
+                Latency l = latencies.get(operation);
+                if (l == null) {
+                    l = new Latency(latency);
+                    latencies.put(operation, l);
+                }
+                overload = l.update(latency, tolerance) > tolerance;
+            }
+            if (overload) {
+                // calls that started before the last decrease saw the old limit, they should not lower it again
+                if (start > lastDecrease) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                    decreases.incrementAndGet();
+                }
+            }
+            else if (error == null && saturated) {
+                double previous = limit;
+                limit = Math.min(maxLimit, limit + 1 / limit);
+                if ((int) limit > (int) previous) {
+                    available.signal();
+                }
+            }
+            available.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * The recent and long term latency of an operation, as exponential moving averages
+     */
+    private static final class Latency {
+        private double recent;
+        private double longTerm;
+        
+        Latency(long latency) {
+            recent = latency;
+            longTerm = latency;
+        }
+        
+        /**
+         * @param tolerance the tolerance of the governor
+         * @return the ratio of the recent to the long term latency
+         */
+        double update(long latency, double tolerance) {
+            recent += (latency - recent) / 10;
+            // follow a drop in latency quickly and a rise slowly, so that the long term latency stays close to the unloaded latency,
+            // and rise even slower while overloaded, so that a lasting overload keeps lowering the limit
+            double rise = recent > longTerm * tolerance ? 10000 : 1000;
+            longTerm += (latency - longTerm) / (latency < longTerm ? 10 : rise);
+            return recent / longTerm;
+        }
+    }
+    
+    public String toString() {
+        return "limit " + getLimit() + ", " + getInFlight() + " in flight, " + getQueued() + " queued, " + getRejected() + " rejected";
+    }
+}
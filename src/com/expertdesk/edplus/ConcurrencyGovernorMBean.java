@@ -0,0 +1,56 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+/**
+ * The JMX interface of {@link ConcurrencyGovernor}.
+ * 
+ * @author Hugo Visser
+ */
+public interface ConcurrencyGovernorMBean {
+    /**
+     * @return the current concurrency limit
+     */
+    int getLimit();
+    
+    /**
+     * @return the number of calls that are running
+     */
+    int getInFlight();
+    
+    /**
+     * @return the number of callers that wait for a slot or for the rate limit
+     */
+    int getQueued();
+    
+    /**
+     * @return the number of callers that were rejected because no slot became available in time
+     */
+    long getRejected();
+    
+    /**
+     * @return the number of times the limit was lowered because of high latency or errors
+     */
+    long getDecreases();
+    
+    /**
+     * @return the maximum number of calls per second, or 0 if the rate is not limited
+     */
+    double getMaxRate();
+    
+    void setMaxRate(double callsPerSecond);
+}
@@ -0,0 +1,48 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+
+/**
+ * Creates, checks and disposes the {@link ARServerUser} contexts that are managed by a {@link ServerPool}.
+ * Implement this interface to control how the contexts of a pool are created, for example to use a stub context in a test.
+ * 
+ * @author Hugo Visser
+ */
+public interface ContextFactory {
+    /**
+     * Create a new context.
+     * @return the new context
+     * @throws ARException if the context cannot be created
+     */
+    ARServerUser createContext() throws ARException;
+    
+    /**
+     * Check if a context that has been idle in the pool can still be used.
+     * @param context the context to check
+     * @return true if the context can be used, false if it should be discarded
+     */
+    boolean isValid(ARServerUser context);
+    
+    /**
+     * Dispose a context that is removed from the pool.
+     * @param context the context to dispose
+     */
+    void destroyContext(ARServerUser context);
+}
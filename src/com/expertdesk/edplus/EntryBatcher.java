@@ -0,0 +1,284 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryID;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.EntryListFieldInfo;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.NameID;
+
+/**
+ * Retrieves entries by id, coalescing the requests of concurrent callers for the same form and fields into batches. The first caller
+ * of a batch waits for the batch delay or until the batch is full, retrieves all entries of the batch with a single call and hands 
+ * each caller its own entry. When a batch fails, the entries are retrieved one by one, so that a caller only gets its own error.
+ * 
+ * @author Hugo Visser
+ */
+final class EntryBatcher {
+    /**
+     * The maximum number of entries that is retrieved in one call, the same as the default block size of the {@link EntryIterator}
+     */
+    final static int MAX_BATCH_SIZE = 100;
+    private final ConcurrentMap<String, Batch> pending = new ConcurrentHashMap<String, Batch>();
+    private volatile long delay = 2;
+    
+    /**
+     * @param delay the time in milliseconds the first caller of a batch waits for other callers, 0 to retrieve the batch immediately
+     * @throws IllegalArgumentException if the delay is negative
+     */
+    void setDelay(long delay) throws IllegalArgumentException {
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay < 0");
+        }
+        this.delay = delay;
+    }
+    
+    /**
+     * Get an entry, in a batch with the requests of other threads.
+     * @param context the context, used when this caller retrieves the batch
+     * @param factory the factory adapter, used when this caller retrieves the batch
+     * @param form the form
+     * @param id the entry id
+     * @param fieldIds the fields to retrieve or an empty array for all fields
+     * @return the entry or null if it does not exist
+     * @throws ARException if the entry could not be retrieved
+     */
+    Entry get(ARServerUser context, FactoryAdapter factory, String form, EntryID id, long[] fieldIds) throws ARException {
+        String key = key(form, fieldIds);
+        Batch batch;
+        Request request;
+        boolean leader = false;
+        while (true) {
+            batch = pending.get(key);
+            if (batch == null) {
+                // the request of the leader is in the batch before the batch is published, so that other callers cannot fill and
+                // close the batch before the leader has joined it
+                Batch newBatch = new Batch();
+                request = new Request(id);
+                newBatch.requests.add(request);
+                batch = pending.putIfAbsent(key, newBatch);
+                if (batch == null) {
+                    batch = newBatch;
+                    leader = true;
+                    break;
+                }
+            }
+            synchronized (batch) {
+                if (batch.closed) {
+                    continue;
+                }
+                request = new Request(id);
+                batch.requests.add(request);
+                if (batch.requests.size() >= MAX_BATCH_SIZE) {
+                    close(key, batch);
+                }
+            }
+            break;
+        }
+        if (leader) {
+            synchronized (batch) {
+                long deadline = System.currentTimeMillis() + delay;
+                long remaining = delay;
+                while (!batch.closed && remaining > 0) {
+                    try {
+                        batch.wait(remaining);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (!batch.closed) {
+                    close(key, batch);
+                }
+            }
+            try {
+                retrieve(context, factory, form, fieldIds, batch.requests);
+            }
+            finally {
+                // never leave the other callers waiting
+                for (Request r : batch.requests) {
+                    r.fail(new IllegalStateException("The batch was not retrieved"));
+                }
+            }
+        }
+        return request.await();
+    }
+    
+    /**
+     * Get entries in batches of at most {@link #MAX_BATCH_SIZE} entries.
+     * @param context the context
+     * @param factory the factory adapter
+     * @param form the form
+     * @param ids the entry ids
+     * @param fieldIds the fields to retrieve or an empty array for all fields
+     * @return the entries in the order of the ids, with null for the entries that do not exist
+     * @throws ARException if an entry could not be retrieved
+     */
+    static List<Entry> getAll(ARServerUser context, FactoryAdapter factory, String form, List<EntryID> ids, long[] fieldIds) throws ARException {
+        List<Entry> result = new ArrayList<Entry>(ids.size());
+        EntryCriteria ec = criteria(fieldIds);
+        for (int offset = 0; offset < ids.size(); offset += MAX_BATCH_SIZE) {
+            List<EntryID> batch = ids.subList(offset, Math.min(ids.size(), offset + MAX_BATCH_SIZE));
+            Map<String, Entry> entries = find(context, factory, form, batch.toArray(new EntryID[batch.size()]), ec);
+            for (EntryID id : batch) {
+                result.add(entries.get(id.toString()));
+            }
+        }
+        return result;
+    }
+    
+    private void close(String key, Batch batch) {
+        batch.closed = true;
+        pending.remove(key, batch);
+        batch.notifyAll();
+    }
+    
+    private static void retrieve(ARServerUser context, FactoryAdapter factory, String form, long[] fieldIds, List<Request> requests) {
+        EntryCriteria ec = criteria(fieldIds);
+        try {
+            EntryID[] ids = new EntryID[requests.size()];
+            for (int i=0; i < ids.length; i++) {
+                ids[i] = requests.get(i).id;
+            }
+            Map<String, Entry> entries = find(context, factory, form, ids, ec);
+            for (Request request : requests) {
+                request.complete(entries.get(request.id.toString()), null);
+            }
+        }
+        catch (Exception e) {
+            if (requests.size() == 1) {
+                requests.get(0).complete(null, e);
+                return;
+            }
+            // retrieve the entries one by one, so that only the callers of failing entries get an error
+            for (Request request : requests) {
+                try {
+                    Map<String, Entry> entries = find(context, factory, form, new EntryID[] {request.id}, ec);
+                    request.complete(entries.get(request.id.toString()), null);
+                }
+                catch (Exception e2) {
+                    request.complete(null, e2);
+                }
+            }
+        }
+    }
+    
+    private static Map<String, Entry> find(ARServerUser context, FactoryAdapter factory, String form, EntryID[] ids, EntryCriteria ec) 
+        throws ARException {
+        EntryListCriteria elc = new EntryListCriteria();
+        elc.setSchemaID(new NameID(form));
+        elc.setEntriesToRetrieve(ids);
+        Entry[] result = factory.findEntries(context, elc, ec);
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        if (result != null) {
+            for (Entry entry : result) {
+                if (entry != null && entry.getEntryID() != null) {
+                    entries.put(entry.getEntryID().toString(), entry);
+                }
+            }
+        }
+        return entries;
+    }
+    
+    private static EntryCriteria criteria(long[] fieldIds) {
+        if (fieldIds.length == 0) {
+            return null;
+        }
+        EntryListFieldInfo[] fieldInfo = new EntryListFieldInfo[fieldIds.length];
+        for (int i=0; i < fieldIds.length; i++) {
+            fieldInfo[i] = new EntryListFieldInfo(new FieldID(fieldIds[i]));
+        }
+        return new EntryCriteria(fieldInfo);
+    }
+    
+    private static String key(String form, long[] fieldIds) {
+        StringBuilder sb = new StringBuilder(form);
+        for (long fieldId : fieldIds) {
+            sb.append(',').append(fieldId);
+        }
+        return sb.toString();
+    }
+    
+    private static final class Batch {
+        private final List<Request> requests = new ArrayList<Request>();
+        private boolean closed = false;
+    }
+    
+    private static final class Request {
+        private final EntryID id;
+        private Entry entry;
+        private Exception error;
+        private boolean done = false;
+        
+        Request(EntryID id) {
+            this.id = id;
+        }
+        
+        synchronized void complete(Entry entry, Exception error) {
+            this.entry = entry;
+            this.error = error;
+            this.done = true;
+            notifyAll();
+        }
+        
+        synchronized void fail(Exception error) {
+            if (!done) {
+                complete(null, error);
+            }
+        }
+        
+        synchronized Entry await() throws ARException {
+            boolean interrupted = false;
+            // the leader always completes the request, so keep waiting when interrupted
+            while (!done) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error instanceof ARException) {
+                throw (ARException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error != null) {
+                throw new RuntimeException(error);
+            }
+            return entry;
+        }
+    }
+}
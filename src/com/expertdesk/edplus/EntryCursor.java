@@ -0,0 +1,126 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.io.Serializable;
+
+import com.remedy.arsys.api.EntryListFieldInfo;
+import com.remedy.arsys.api.QualifierInfo;
+import com.remedy.arsys.api.SortInfo;
+import com.remedy.arsys.api.Value;
+
+/**
+ * The position of an {@link EntryIterator}, so that an iteration can be continued later, also in another process. The cursor holds 
+ * the query (form, qualifier, sorting and fields) and the position after the last entry that was returned. Cursors are serializable 
+ * and small, a batch job can save the cursor after every entry it has processed and continue from the saved cursor after a restart:
+ * <pre>
+ * EntryIterator itr = cursor != null ? new EntryIterator(context, cursor) : new EntryIterator(context, "HPD:Help Desk");
+ * itr.setKeysetField(1);
+ * while (itr.hasNext()) {
+ *     process(itr.next());
+ *     save(itr.getCursor());
+ * }
+ * </pre>
+ * In keyset mode (see {@link EntryIterator#setKeysetField(long)}) the cursor holds the key of the last entry, and the iteration 
+ * continues exactly after it, even if entries were added or deleted in the mean time. Otherwise the cursor holds the index of the 
+ * next entry, and entries can be skipped or returned twice when the matching entries change before the iteration is continued.
+ * 
+ * @author Hugo Visser
+ * @see EntryIterator#getCursor()
+ * @see EntryIterator#EntryIterator(com.remedy.arsys.api.ARServerUser, EntryCursor)
+ */
+public final class EntryCursor implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String form;
+    private final QualifierInfo qualifier;
+    private final SortInfo[] sorting;
+    private final EntryListFieldInfo[] fields;
+    private final int chunkSize;
+    private final int blockSize;
+    private final long keysetField;
+    private final int position;
+    private final int windowEnd;
+    private final Value lastKey;
+    
+    EntryCursor(String form, QualifierInfo qualifier, SortInfo[] sorting, EntryListFieldInfo[] fields, int chunkSize, int blockSize, 
+        long keysetField, int position, int windowEnd, Value lastKey) {
+        this.form = form;
+        this.qualifier = qualifier;
+        this.sorting = sorting;
+        this.fields = fields;
+        this.chunkSize = chunkSize;
+        this.blockSize = blockSize;
+        this.keysetField = keysetField;
+        this.position = position;
+        this.windowEnd = windowEnd;
+        this.lastKey = lastKey;
+    }
+    
+    /**
+     * @return the form
+     */
+    public String getForm() {
+        return form;
+    }
+    
+    /**
+     * @return the index of the next entry, the number of entries that were returned before the cursor was taken including the 
+     * first index of a window
+     */
+    public int getPosition() {
+        return position;
+    }
+    
+    /**
+     * @return the key of the last entry that was returned in keyset mode, or null
+     */
+    public Value getLastKey() {
+        return lastKey;
+    }
+    
+    QualifierInfo getQualifier() {
+        return qualifier;
+    }
+    
+    SortInfo[] getSorting() {
+        return sorting;
+    }
+    
+    EntryListFieldInfo[] getFields() {
+        return fields;
+    }
+    
+    int getChunkSize() {
+        return chunkSize;
+    }
+    
+    int getBlockSize() {
+        return blockSize;
+    }
+    
+    long getKeysetField() {
+        return keysetField;
+    }
+    
+    int getWindowEnd() {
+        return windowEnd;
+    }
+    
+    public String toString() {
+        return form + " at " + position + (lastKey != null ? " after " + lastKey : "");
+    }
+}
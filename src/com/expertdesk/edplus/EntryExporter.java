@@ -0,0 +1,551 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.DataType;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryItem;
+import com.remedy.arsys.api.Timestamp;
+import com.remedy.arsys.api.Value;
+
+/**
+ * Exports the entries of a form to a file, as newline delimited JSON or as CSV. The entries are encoded directly into a reused 
+ * buffer and written through a {@link FileChannel}, optionally compressed with gzip. The entries are exported in request id order, 
+ * and after every checkpoint interval the exporter records the position in the file and the last request id in a checkpoint file
+ * next to the export. When an export fails, calling {@link #export(File)} again continues after the last checkpoint.
+ * <pre>
+ * EntryExporter exporter = new EntryExporter(server, "HPD:Help Desk");
+ * exporter.setFormat(EntryExporter.Format.CSV);
+ * exporter.setFieldIds(1, 3, 7, 8);
+ * exporter.setCompressed(true);
+ * long count = exporter.export(new File("helpdesk.csv.gz"));
+ * </pre>
+ * A JSON line is an object with the field ids as keys, integer, real, decimal and enum values as numbers, times as seconds since
+ * the epoch and all other values, including dates and times of day, as strings. A CSV file starts with a header row of field ids. 
+ * With gzip, every checkpoint starts a new gzip member, the concatenated members form a regular gzip file.
+ * 
+ * @author Hugo Visser
+ */
+public final class EntryExporter {
+    /**
+     * The default number of entries between checkpoints
+     */
+    public final static int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    private final static String CHECKPOINT_SUFFIX = ".checkpoint";
+    // the buffer is written when it is this full, also between checkpoints
+    private final static int FLUSH_SIZE = 1024 * 1024;
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+    private final Server server;
+    private final String form;
+    private String qualification;
+    private long[] fieldIds = new long[0];
+    private Format format = Format.NDJSON;
+    private boolean compressed = false;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private byte[] compressBuffer;
+    
+    /**
+     * The file formats
+     */
+    public enum Format {
+        /**
+         * Newline delimited JSON, one object per entry
+         */
+        NDJSON,
+        /**
+         * Comma separated values, one row per entry
+         */
+        CSV
+    }
+    
+    /**
+     * @param server the server to export from
+     * @param form the form to export
+     */
+    public EntryExporter(Server server, String form) {
+        this.server = server;
+        this.form = form;
+    }
+    
+    /**
+     * @param qualification a qualification to select the entries, or null to export all entries (the default)
+     */
+    public void setQualification(String qualification) {
+        this.qualification = qualification;
+    }
+    
+    /**
+     * @param fieldIds the fields to export, or none to export all fields. CSV exports need the fields to be set.
+     */
+    public void setFieldIds(long... fieldIds) {
+        this.fieldIds = fieldIds.clone();
+    }
+    
+    /**
+     * @param format the format, the default is {@link Format#NDJSON}
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+    
+    /**
+     * @param compressed true to compress the file with gzip
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+    
+    /**
+     * @param interval the number of entries between checkpoints, the default is {@link #DEFAULT_CHECKPOINT_INTERVAL}
+     * @throws IllegalArgumentException if the interval is less than 1
+     */
+    public void setCheckpointInterval(int interval) throws IllegalArgumentException {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval < 1");
+        }
+        this.checkpointInterval = interval;
+    }
+    
+    /**
+     * @param file an export file
+     * @return the checkpoint file of the export file
+     */
+    public static File getCheckpointFile(File file) {
+        return new File(file.getPath() + CHECKPOINT_SUFFIX);
+    }
+    
+    /**
+     * Export the entries. If the checkpoint file of a previous export of the same file exists, the export continues after the last 
+     * checkpoint, otherwise the file is overwritten. The checkpoint file is deleted when the export is complete.
+     * @param file the file
+     * @return the total number of exported entries, including the entries that were exported before the last checkpoint
+     * @throws ARException if the entries cannot be retrieved
+     * @throws IOException if the file cannot be written
+     * @throws IllegalStateException if the format is CSV and no fields are set, or the checkpoint is of a different export
+     */
+    public long export(File file) throws ARException, IOException, IllegalStateException {
+        if (format == Format.CSV && fieldIds.length == 0) {
+            throw new IllegalStateException("A CSV export needs the fields to be set");
+        }
+        File checkpointFile = getCheckpointFile(file);
+        Properties checkpoint = file.exists() && checkpointFile.exists() ? readCheckpoint(checkpointFile) : null;
+        EntryIterator itr = server.newEntryIterator(form);
+        itr.setKeysetField(1);
+        if (qualification != null) {
+            itr.setQualification(qualification);
+        }
+        if (fieldIds.length > 0) {
+            itr.setEntryListFieldInfo(fieldIds);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long count = 0;
+            if (checkpoint != null) {
+                long position = Long.parseLong(checkpoint.getProperty("position"));
+                count = Long.parseLong(checkpoint.getProperty("count"));
+                itr.setKeysetStart(new Value(checkpoint.getProperty("lastEntryId")));
+                // drop what was written after the checkpoint
+                channel.truncate(position);
+                channel.position(position);
+            }
+            else {
+                channel.truncate(0);
+            }
+            buffer.clear();
+            if (checkpoint == null && format == Format.CSV) {
+                writeCsvHeader();
+            }
+            int pending = 0;
+            try {
+                while (itr.hasNext()) {
+                    Entry entry = itr.next();
+                    if (format == Format.CSV) {
+                        writeCsv(entry);
+                    }
+                    else {
+                        writeJson(entry);
+                    }
+                    count++;
+                    if (++pending >= checkpointInterval) {
+                        write(channel);
+                        channel.force(false);
+                        writeCheckpoint(checkpointFile, channel.position(), count, entry.getEntryID().toString());
+                        pending = 0;
+                    }
+                    else if (buffer.position() >= FLUSH_SIZE) {
+                        write(channel);
+                    }
+                }
+            }
+            catch (RuntimeException e) {
+                if (e.getCause() instanceof ARException) {
+                    throw (ARException) e.getCause();
+                }
+                throw e;
+            }
+            write(channel);
+            channel.force(false);
+            checkpointFile.delete();
+            return count;
+        }
+        finally {
+            raf.close();
+        }
+    }
+    
+    private void write(FileChannel channel) throws IOException {
+        buffer.flip();
+        // an empty compressed export still gets a gzip member, so that it is a valid gzip file
+        if (buffer.hasRemaining() || (compressed && channel.position() == 0)) {
+            ByteBuffer out = compressed ? gzip(buffer) : buffer;
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Compress the buffer into a single gzip member.
+     */
+    private ByteBuffer gzip(ByteBuffer data) {
+        int length = data.remaining();
+        int max = length + length / 1000 + 64;
+        if (compressBuffer == null || compressBuffer.length < max) {
+            compressBuffer = new byte[max];
+        }
+        byte[] header = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        System.arraycopy(header, 0, compressBuffer, 0, header.length);
+        int n = header.length;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data.array(), data.arrayOffset() + data.position(), length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                n += deflater.deflate(compressBuffer, n, compressBuffer.length - 8 - n);
+                if (!deflater.finished() && n >= compressBuffer.length - 8) {
+                    byte[] grown = new byte[compressBuffer.length * 2];
+                    System.arraycopy(compressBuffer, 0, grown, 0, n);
+                    compressBuffer = grown;
+                }
+            }
+        }
+        finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), data.arrayOffset() + data.position(), length);
+        n = putIntLE(compressBuffer, n, (int) crc.getValue());
+        n = putIntLE(compressBuffer, n, length);
+        data.position(data.limit());
+        return ByteBuffer.wrap(compressBuffer, 0, n);
+    }
+    
+    private static int putIntLE(byte[] b, int offset, int value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >>> 8);
+        b[offset + 2] = (byte) (value >>> 16);
+        b[offset + 3] = (byte) (value >>> 24);
+        return offset + 4;
+    }
+    
+    private void writeCheckpoint(File checkpointFile, long position, long count, String lastEntryId) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("form", form);
+        checkpoint.setProperty("export", describe());
+        checkpoint.setProperty("position", String.valueOf(position));
+        checkpoint.setProperty("count", String.valueOf(count));
+        checkpoint.setProperty("lastEntryId", lastEntryId);
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            checkpoint.store(out, null);
+        }
+        finally {
+            out.close();
+        }
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            throw new IOException("could not replace " + checkpointFile);
+        }
+        if (!tmp.renameTo(checkpointFile)) {
+            throw new IOException("could not rename " + tmp + " to " + checkpointFile);
+        }
+    }
+    
+    private Properties readCheckpoint(File checkpointFile) throws IOException, IllegalStateException {
+        Properties checkpoint = new Properties();
+        InputStream in = new FileInputStream(checkpointFile);
+        try {
+            checkpoint.load(in);
+        }
+        finally {
+            in.close();
+        }
+        if (!form.equals(checkpoint.getProperty("form")) || !describe().equals(checkpoint.getProperty("export"))) {
+            throw new IllegalStateException("The checkpoint " + checkpointFile + " is of a different export");
+        }
+        return checkpoint;
+    }
+    
+    /**
+     * @return a description of the settings that determine the content of the file
+     */
+    private String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(format).append(compressed ? " gzip" : "").append(" fields");
+        for (long fieldId : fieldIds) {
+            sb.append(' ').append(fieldId);
+        }
+        if (qualification != null) {
+            sb.append(" where ").append(qualification);
+        }
+        return sb.toString();
+    }
+    
+    private void writeCsvHeader() {
+        for (int i=0; i < fieldIds.length; i++) {
+            if (i > 0) {
+                put(',');
+            }
+            putAscii(String.valueOf(fieldIds[i]));
+        }
+        putAscii("\r\n");
+    }
+    
+    private void writeCsv(Entry entry) {
+        EntryItem[] items = getEntryItems(entry);
+        for (int i=0; i < fieldIds.length; i++) {
+            if (i > 0) {
+                put(',');
+            }
+            Value value = findValue(items, i, fieldIds[i]);
+            if (value == null && fieldIds[i] == 1) {
+                putCsvString(entry.getEntryID().toString());
+            }
+            else if (isNumber(value)) {
+                putAscii(numberString(value));
+            }
+            else if (!isNull(value)) {
+                putCsvString(value.getValue().toString());
+            }
+        }
+        putAscii("\r\n");
+    }
+    
+    private void writeJson(Entry entry) {
+        put('{');
+        boolean first = true;
+        boolean hasRequestId = false;
+        for (EntryItem item : getEntryItems(entry)) {
+            long fieldId = item.getFieldID().getValue();
+            hasRequestId |= fieldId == 1;
+            if (!first) {
+                put(',');
+            }
+            first = false;
+            put('"');
+            putAscii(String.valueOf(fieldId));
+            putAscii("\":");
+            Value value = item.getValue();
+            if (isNull(value)) {
+                putAscii("null");
+            }
+            else if (isNumber(value)) {
+                putAscii(numberString(value));
+            }
+            else {
+                putJsonString(value.getValue().toString());
+            }
+        }
+        if (!hasRequestId && (fieldIds.length == 0 || contains(fieldIds, 1))) {
+            if (!first) {
+                put(',');
+            }
+            putAscii("\"1\":");
+            putJsonString(entry.getEntryID().toString());
+        }
+        putAscii("}\n");
+    }
+    
+    private static EntryItem[] getEntryItems(Entry entry) {
+        // an entry without any of the requested fields has no items
+        EntryItem[] items = entry.getEntryItems();
+        return items != null ? items : new EntryItem[0];
+    }
+    
+    private static Value findValue(EntryItem[] items, int index, long fieldId) {
+        // the fields are returned in the requested order, unless the server leaves some out
+        if (index < items.length && items[index].getFieldID().getValue() == fieldId) {
+            return items[index].getValue();
+        }
+        for (EntryItem item : items) {
+            if (item.getFieldID().getValue() == fieldId) {
+                return item.getValue();
+            }
+        }
+        return null;
+    }
+    
+    private static boolean contains(long[] values, long value) {
+        for (long v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isNull(Value value) {
+        return value == null || value.getValue() == null || value.getDataType() == DataType.NULL;
+    }
+    
+    private static boolean isNumber(Value value) {
+        if (isNull(value)) {
+            return false;
+        }
+        DataType type = value.getDataType();
+        return type == DataType.INTEGER || type == DataType.REAL || type == DataType.DECIMAL || type == DataType.ENUM 
+            || type == DataType.TIME || type == DataType.ULONG;
+    }
+    
+    private static String numberString(Value value) {
+        Object v = value.getValue();
+        if (v instanceof Timestamp) {
+            return String.valueOf(((Timestamp) v).getValue());
+        }
+        return v.toString();
+    }
+    
+    private void putCsvString(String s) {
+        boolean quote = false;
+        for (int i=0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            putString(s);
+            return;
+        }
+        put('"');
+        for (int i=0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                put('"');
+            }
+            i = putChar(s, i, c);
+        }
+        put('"');
+    }
+    
+    private void putJsonString(String s) {
+        put('"');
+        for (int i=0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': putAscii("\\\""); break;
+                case '\\': putAscii("\\\\"); break;
+                case '\n': putAscii("\\n"); break;
+                case '\r': putAscii("\\r"); break;
+                case '\t': putAscii("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        putAscii("\\u00");
+                        put((byte) HEX[c >> 4]);
+                        put((byte) HEX[c & 0xf]);
+                    }
+                    else {
+                        i = putChar(s, i, c);
+                    }
+            }
+        }
+        put('"');
+    }
+    
+    private void putString(String s) {
+        for (int i=0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            i = putChar(s, i, c);
+        }
+    }
+    
+    /**
+     * Encode a character as UTF-8, a high surrogate is combined with the next character of the string if that is a low surrogate.
+     * @return the index of the last character that was encoded, i + 1 for a surrogate pair
+     */
+    private int putChar(String s, int i, char c) {
+        if (c < 0x80) {
+            put((byte) c);
+        }
+        else if (c < 0x800) {
+            put((byte) (0xc0 | (c >> 6)));
+            put((byte) (0x80 | (c & 0x3f)));
+        }
+        else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            put((byte) (0xf0 | (cp >> 18)));
+            put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+            put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+            put((byte) (0x80 | (cp & 0x3f)));
+            return i + 1;
+        }
+        else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+            put((byte) '?');
+        }
+        else {
+            put((byte) (0xe0 | (c >> 12)));
+            put((byte) (0x80 | ((c >> 6) & 0x3f)));
+            put((byte) (0x80 | (c & 0x3f)));
+        }
+        return i;
+    }
+    
+    private void putAscii(String s) {
+        for (int i=0; i < s.length(); i++) {
+            put((byte) s.charAt(i));
+        }
+    }
+    
+    private void put(char c) {
+        put((byte) c);
+    }
+    
+    private void put(byte b) {
+        if (!buffer.hasRemaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        buffer.put(b);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.Entry;
+
+/**
+ * Handles the entries of a query that is processed in parallel by {@link Server#forEach(String, String, EntryHandler, long...)}.
+ * The handler is called from several threads at the same time, so implementations must be thread-safe.
+ * 
+ * @author Hugo Visser
+ */
+public interface EntryHandler {
+    /**
+     * Handle an entry
+     * @param entry the entry
+     * @throws ARException to stop processing the query, the exception is thrown by the forEach method
+     */
+    void handle(Entry entry) throws ARException;
+}
@@ -1,348 +1,785 @@
-/*
-*   Copyright 2007 Mansystems Nederland B.V.
-*
-*   Licensed under the Apache License, Version 2.0 (the "License");
-*   you may not use this file except in compliance with the License.
-*   You may obtain a copy of the License at
-*
-*       http://www.apache.org/licenses/LICENSE-2.0
-*
-*   Unless required by applicable law or agreed to in writing, software
-*   distributed under the License is distributed on an "AS IS" BASIS,
-*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-*   See the License for the specific language governing permissions and
-*   limitations under the License.
-*
-*/
-package com.expertdesk.edplus;
-
-import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
-import java.util.Iterator;
-import java.util.List;
-
-import com.remedy.arsys.api.ARException;
-import com.remedy.arsys.api.ARQualifierHelper;
-import com.remedy.arsys.api.ARServerUser;
-import com.remedy.arsys.api.ArithmeticOrRelationalOperand;
-import com.remedy.arsys.api.Constants;
-import com.remedy.arsys.api.Entry;
-import com.remedy.arsys.api.EntryCriteria;
-import com.remedy.arsys.api.EntryFactory;
-import com.remedy.arsys.api.EntryID;
-import com.remedy.arsys.api.EntryKey;
-import com.remedy.arsys.api.EntryListCriteria;
-import com.remedy.arsys.api.EntryListFieldInfo;
-import com.remedy.arsys.api.Field;
-import com.remedy.arsys.api.FieldID;
-import com.remedy.arsys.api.FieldListCriteria;
-import com.remedy.arsys.api.FieldType;
-import com.remedy.arsys.api.NameID;
-import com.remedy.arsys.api.QualifierInfo;
-import com.remedy.arsys.api.RelationalOperationInfo;
-import com.remedy.arsys.api.SortInfo;
-import com.remedy.arsys.api.StatusInfo;
-import com.remedy.arsys.api.Value;
-import com.remedy.arsys.api.View;
-import com.remedy.arsys.api.ViewListCriteria;
-
-/**
- * This class implements an {@link Iterator} and {@link Iterable} to iterate entries in an AR System form.
- * 
- * @author Hugo Visser
- * 
- */
-public class EntryIterator implements Iterator<Entry>, Iterable<Entry> {
-    /**
-     * The default chunk size value
-     */
-    public final static int DEFAULT_CHUNK_SIZE = 10000;
-    private int absoluteIndex;
-    private EntryKey[] entryKeys;
-    private Entry[] entries;
-    private Entry currentEntry;
-    private int entryIndex;
-    private int keyIndex;
-    private ARServerUser context;
-    private QualifierInfo qualifier;
-    private int chunkSize = DEFAULT_CHUNK_SIZE;
-    private int numMatches = -1;
-    private SortInfo[] sorting;
-    private String form;
-    private boolean fastFail = false;
-    private boolean lastChunk = false;
-    private EntryCriteria ec = null;
-
-     
-    /**
-     * @param context the server context
-     * @param form form to query
-     * @param qualifier qualification to use or null to use the default qualification "1=1"
-     */
-    public EntryIterator(ARServerUser context, String form, QualifierInfo qualifier) {
-        this.context = context;
-        this.form = form;
-        if (qualifier != null) {
-            this.qualifier = qualifier;            
-        }
-        else {
-            this.qualifier = new QualifierInfo(new RelationalOperationInfo(RelationalOperationInfo.AR_REL_OP_EQUAL, new ArithmeticOrRelationalOperand(new Value(1)), new ArithmeticOrRelationalOperand(new Value(1))));
-        }
-    }
-    /**
-     * @param context the server context
-     * @param form form to query
-     */
-    public EntryIterator(ARServerUser context, String form) {
-        this(context, form, null);
-    }
-    /**
-     * Set a qualification. Note that when using field names in the qualification, the field names will be matched to the field label on the first
-     * view that matches the locale of the {@link com.remedy.arsys.api.ARServerUser} context.
-     * @param qualification
-     * @throws ARException when the qualification cannot be parsed.
-     */
-    public void setQualification(String qualification) throws ARException {
-        ARQualifierHelper helper = new ARQualifierHelper();
-        FieldListCriteria flc = new FieldListCriteria(new NameID(form), null, FieldType.AR_DATA_FIELD);
-
-        List<Field> fieldList = new ArrayList<Field>();
-        for (Field field : ARObjectIterator.newFieldIterable(context, flc)) {
-            if (field.getFieldOption() != Constants.AR_FIELD_OPTION_DISPLAY) {
-                fieldList.add(field);
-            }
-        }
-        
-        ViewListCriteria vlc = new ViewListCriteria(new NameID(form), null);        
-        
-        View view = null;
-        
-        for (View v : ARObjectIterator.newViewIterable(context, vlc)) {
-            if (view == null) {
-                view = v;
-            }
-            if (context.getLocale() != null) {
-                if (context.getLocale().equals(v.getLocale())) {
-                    view = v;
-                    break;
-                }
-                if (context.getLocale().indexOf("_") > -1 && v.getLocale() != null && v.getLocale().startsWith(context.getLocale().substring(0, context.getLocale().indexOf("_")))) {
-                    view = v;
-                }
-            }
-        }
-        
-        helper.generateFieldMaps(fieldList.toArray(new Field[fieldList.size()]), view.getVUIId().getValue() , "tag", fieldList.toArray(new Field[fieldList.size()]));
-        qualifier = helper.getQualifier(context, qualification);
-    }
-    
-    /**
-     * Reset the iterator, this will perform a new query.
-     */
-    public void reset() {
-        numMatches = -1;
-        entryKeys = null;
-        entries = null;
-        entryIndex = 0;
-        keyIndex = 0;
-        absoluteIndex = 0;
-        lastChunk = false;
-    }
-    /**
-     * Set the chunk size of a single query.
-     * @param size the required chunk size default is {@link #DEFAULT_CHUNK_SIZE}
-     */
-    public void setChunkSize(int size) {
-        this.chunkSize = size;
-    }
-    /**
-     * Set the sorting
-     * @param sorting the sorting
-     */
-    public void setSorting(SortInfo[] sorting) {
-        this.sorting = sorting;
-    }
-    
-    /**
-     * Set the fast failing behaviour of the iterator, default is false. When fast failing is enabled, the iterator will throw a {@link ConcurrentModificationException}
-     * if entries are added to the form or deleted from the form that is being iterated. Basically the number of matching items must not change while iterating 
-     * the form. Using {@link #remove()} or {@link #removeEntry()} is the correct way to remove an entry while iterating the form. Fast failing can impact performance
-     * as the total number of entries is retrieved when a new chunk of data is queried.
-     * @param fastFail set to true for fast failing behaviour, false otherwise.
-     */
-    public void setFastFail(boolean fastFail) {
-        this.fastFail = fastFail;
-    }
-    
-    /**
-     * Get the number of entries that match the query.
-     * @return the number of entries that have matched the query
-     * @throws ARException
-     */
-    public int getNumMatches() throws ARException {
-        prepareEntries();
-        return numMatches;
-    }
-    
-    public boolean hasNext() {
-        try {
-            prepareEntries();
-        }
-        catch (ARException e) {
-            throw new RuntimeException(e);
-        }                
-        return entryIndex < entries.length;
-    }
-
-    public Entry next() {
-        if (!hasNext()) {
-            throw new IllegalStateException("No next entry");
-        }
-        currentEntry = entries[entryIndex];
-        entryIndex++;
-        absoluteIndex++;
-        currentEntry.setContext(context);
-        return currentEntry;
-    }
-
-    /**
-     * Removes the current entry by invoking {@link #removeEntry()} any
-     * exception that occurs is wrapped in a {@link java.lang.RuntimeException}
-     * 
-     * @see #removeEntry()
-     */
-    public void remove() {
-        try {
-            removeEntry();
-        }
-        catch (ARException ex) {
-            throw new RuntimeException(ex);
-        }
-    }
-
-    /**
-     * Removes the current entry
-     * 
-     * @throws ARException if an AR System error occurs
-     * @throws IllegalStateException if an attempt is made to remove the entry twice.
-     */
-    public void removeEntry() throws ARException, IllegalStateException {
-        if (currentEntry == null) {
-            throw new IllegalStateException();
-        }
-        currentEntry.setContext(context);
-        currentEntry.remove();
-        currentEntry = null;
-        absoluteIndex--;
-        numMatches--;
-    }
-    /**
-     * Set the fields that should be returned for each entry or null to return all fields
-     * @param fieldList the fields to return
-     */
-    public void setEntryListFieldInfo(EntryListFieldInfo[] fieldList) {
-        this.ec = new EntryCriteria(fieldList);
-    }
-    
-    /**
-     * Set the fields that should be returned for each entry. This is a convenience method so that you can use
-     * <pre>
-     * EntryIterator itr = ...
-     * itr.setEntryListFieldInfo(1,8);
-     * </pre>
-     * in stead of:
-     * <pre>
-     * EntryIterator itr = ...
-     * itr.setEntryListFieldInfo(new EntryListFieldInfo[] {new EntryListFieldInfo(new FieldID(1)), new EntryListFieldInfo(new FieldID(8))});
-     * </pre>
-     * 
-     * 
-     * @param fieldIds the fields to return
-     * @see #setEntryListFieldInfo(EntryListFieldInfo[])
-     */
-    public void setEntryListFieldInfo(long... fieldIds) {
-        EntryListFieldInfo[] fieldInfo = new EntryListFieldInfo[fieldIds.length];
-        for (int i=0; i < fieldIds.length; i++) {
-            fieldInfo[i] = new EntryListFieldInfo(new FieldID(fieldIds[i]));
-        }
-        setEntryListFieldInfo(fieldInfo);
-    }
-
-    private void prepareEntries() throws ARException {        
-        if (entryKeys == null || keyIndex >= entryKeys.length && !lastChunk && entryIndex >= entries.length) {
-            nextKeyChunk();
-            if (entryKeys.length == 0) {
-                lastChunk = true;                
-            }
-        }
-        
-        if (entries == null || entryIndex >= entries.length) {
-            nextEntryChunk();
-        }
-        
-    }
-
-    private void nextKeyChunk() throws ARException {
-        EntryListCriteria elc = new EntryListCriteria(new NameID(form), qualifier, absoluteIndex, chunkSize, null,
-                sorting, null);
-        Integer matches = null;
-        if (fastFail || numMatches == -1) {
-            matches = new Integer(0);
-        }
-        entryKeys = EntryFactory.find(context, elc, false, matches);
-        if (matches != null && matches.intValue() != numMatches && numMatches > -1 && fastFail) {
-            throw new ConcurrentModificationException();
-        }
-        if (matches != null) {
-            numMatches = matches.intValue();            
-        }
-        if (entryKeys == null) {
-            entryKeys = new EntryKey[0];
-        }
-        if (resultIsLimited(context.getLastStatus())) {
-            chunkSize = entryKeys.length;
-        }
-        keyIndex = 0;
-    }
-
-    private void nextEntryChunk() throws ARException {
-        EntryListCriteria elc = new EntryListCriteria();
-        elc.setSchemaID(new NameID(form));
-        
-        int size = Math.min(100, entryKeys.length - keyIndex);
-        
-        if (size <= 0) {
-            entries = new Entry[0];
-            entryIndex = 0;
-            return;
-        }
-        
-        EntryID[] ids = new EntryID[size];
-        
-        for (int i=keyIndex; i < keyIndex + size; i++) {
-            ids[i-keyIndex] = entryKeys[i].getEntryID();
-        }
-        
-        elc.setEntriesToRetrieve(ids);
-        
-        entries = EntryFactory.findObjects(context, elc, ec, false, null);
-        if (entries == null) {
-            entries = new Entry[0];
-        }
-        entryIndex = 0;
-        keyIndex+=size;
-    }
-
-    private boolean resultIsLimited(StatusInfo[] status) {
-        for (int i = 0; i < status.length; i++) {
-            if (status[i].getMessageNum() == 72)
-                return true;
-        }
-        return false;
-    }
-    
-    public Iterator<Entry> iterator() {
-        return this;
-    }
-
-}
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ArithmeticOrRelationalOperand;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryID;
+import com.remedy.arsys.api.EntryItem;
+import com.remedy.arsys.api.EntryKey;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.EntryListFieldInfo;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.QualifierInfo;
+import com.remedy.arsys.api.RelationalOperationInfo;
+import com.remedy.arsys.api.SortInfo;
+import com.remedy.arsys.api.StatusInfo;
+import com.remedy.arsys.api.Value;
+
+/**
+ * This class implements an {@link Iterator} and {@link Iterable} to iterate entries in an AR System form.
+ * 
+ * @author Hugo Visser
+ * 
+ */
+public class EntryIterator implements Iterator<Entry>, Iterable<Entry> {
+    /**
+     * The default chunk size value
+     */
+    public final static int DEFAULT_CHUNK_SIZE = 10000;
+    /**
+     * The default number of entries retrieved with a single call
+     */
+    public final static int DEFAULT_BLOCK_SIZE = 100;
+    private int absoluteIndex;
+    private EntryKey[] entryKeys;
+    private Entry[] entries;
+    private Entry currentEntry;
+    // the last entry returned by next(), also after it was removed
+    private Entry lastEntry;
+    private int entryIndex;
+    private int keyIndex;
+    private ARServerUser context;
+    private QualifierInfo qualifier;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private AdaptiveChunkSize adaptiveChunkSize;
+    private AdaptiveChunkSize adaptiveBlockSize;
+    private int numMatches = -1;
+    private SortInfo[] sorting;
+    private String form;
+    private boolean fastFail = false;
+    private boolean lastChunk = false;
+    private EntryCriteria ec = null;
+    private EntryListFieldInfo[] fieldList;
+    private int prefetchDepth = 0;
+    private Prefetcher prefetcher;
+    private FormMetadataCache metadataCache;
+    private QualifierCache qualifierCache;
+    private int firstIndex = 0;
+    private int windowEnd = -1;
+    private long keysetField = 0;
+    private Value lastKey;
+    private Value keysetStart;
+    private FactoryAdapter factory = ApiFactoryAdapter.getInstance();
+
+     
+    /**
+     * @param context the server context
+     * @param form form to query
+     * @param qualifier qualification to use or null to use the default qualification "1=1"
+     */
+    public EntryIterator(ARServerUser context, String form, QualifierInfo qualifier) {
+        this.context = context;
+        this.form = form;
+        if (qualifier != null) {
+            this.qualifier = qualifier;            
+        }
+        else {
+            this.qualifier = new QualifierInfo(new RelationalOperationInfo(RelationalOperationInfo.AR_REL_OP_EQUAL, new ArithmeticOrRelationalOperand(new Value(1)), new ArithmeticOrRelationalOperand(new Value(1))));
+        }
+    }
+    /**
+     * @param context the server context
+     * @param form form to query
+     */
+    public EntryIterator(ARServerUser context, String form) {
+        this(context, form, null);
+    }
+    
+    /**
+     * Create an iterator that continues an iteration from a cursor. The query and the chunk and block sizes are taken from the cursor,
+     * other settings such as prefetching must be set again.
+     * @param context the server context
+     * @param cursor the cursor
+     * @see #getCursor()
+     */
+    public EntryIterator(ARServerUser context, EntryCursor cursor) {
+        this(context, cursor.getForm(), cursor.getQualifier());
+        sorting = cursor.getSorting();
+        if (cursor.getFields() != null) {
+            setEntryListFieldInfo(cursor.getFields());
+        }
+        chunkSize = cursor.getChunkSize();
+        blockSize = cursor.getBlockSize();
+        keysetField = cursor.getKeysetField();
+        keysetStart = cursor.getLastKey();
+        firstIndex = cursor.getPosition();
+        windowEnd = cursor.getWindowEnd();
+        reset();
+    }
+    /**
+     * Set a qualification. Note that when using field names in the qualification, the field names will be matched to the field label on the first
+     * view that matches the locale of the {@link com.remedy.arsys.api.ARServerUser} context.
+     * @param qualification
+     * @throws ARException when the qualification cannot be parsed.
+     */
+    public void setQualification(String qualification) throws ARException {
+        setQualification(qualification, new Value[0]);
+    }
+    
+    /**
+     * Set a qualification with parameters. A parameter is a question mark in the qualification, for example <code>'536870913' = ?</code>.
+     * See {@link #setQualification(String)} for the use of field names.
+     * @param qualification the qualification
+     * @param parameters the values of the parameters
+     * @throws ARException when the qualification cannot be parsed.
+     * @throws IllegalArgumentException when the number of parameters does not match the qualification
+     * @see PreparedQualification
+     */
+    public void setQualification(String qualification, Value... parameters) throws ARException, IllegalArgumentException {
+        PreparedQualification prepared;
+        if (qualifierCache != null) {
+            prepared = qualifierCache.get(context, factory, form, qualification, metadataCache);
+        }
+        else {
+            FormMetadata metadata = metadataCache != null ? metadataCache.get(context, factory, form) : FormMetadata.load(context, factory, form);
+            prepared = PreparedQualification.parse(context, metadata, qualification);
+        }
+        setQualification(prepared, parameters);
+    }
+
+    /**
+     * Set a qualification that has already been parsed.
+     * @param prepared the parsed qualification
+     * @param parameters the values of the parameters
+     * @throws IllegalArgumentException when the number of parameters does not match the qualification
+     */
+    public void setQualification(PreparedQualification prepared, Value... parameters) throws IllegalArgumentException {
+        qualifier = prepared.bind(parameters);
+    }
+    
+    /**
+     * Set the cache that is used to look up the fields and views of the form when a qualification is set.
+     * By default no cache is used and the fields and views are retrieved from the server on every call to {@link #setQualification(String)}.
+     * @param cache the cache or null to disable caching
+     */
+    public void setFormMetadataCache(FormMetadataCache cache) {
+        this.metadataCache = cache;
+    }
+    
+    /**
+     * Set the adapter that is used to find the entries. By default the {@link com.remedy.arsys.api.EntryFactory} is called directly.
+     * @param factory the adapter
+     * @throws IllegalArgumentException if factory is null
+     */
+    public void setFactoryAdapter(FactoryAdapter factory) throws IllegalArgumentException {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory is null");
+        }
+        this.factory = factory;
+    }
+    
+    /**
+     * Set the cache that is used to look up parsed qualifications when a qualification is set.
+     * By default no cache is used and the qualification is parsed on every call to {@link #setQualification(String)}.
+     * @param cache the cache or null to disable caching
+     */
+    public void setQualifierCache(QualifierCache cache) {
+        this.qualifierCache = cache;
+    }
+    
+    /**
+     * Reset the iterator, this will perform a new query.
+     */
+    public void reset() {
+        close();
+        numMatches = -1;
+        entryKeys = null;
+        entries = null;
+        entryIndex = 0;
+        keyIndex = 0;
+        absoluteIndex = firstIndex;
+        lastChunk = false;
+        lastKey = keysetStart;
+        lastEntry = null;
+    }
+    /**
+     * Set the chunk size of a single query.
+     * @param size the required chunk size default is {@link #DEFAULT_CHUNK_SIZE}
+     */
+    public void setChunkSize(int size) {
+        this.chunkSize = size;
+    }
+    /**
+     * Limit the iteration to a window of the matching entries. The window starts at the entry with the given index in the (sorted) list 
+     * of matching entries and contains at most maxEntries entries. Windows can be used to page through the results, or to split one query 
+     * over several iterators that each iterate a part of the entries. Use a sorting on a unique field, such as the request id,
+     * so that the server returns the entries in the same order for every window. This resets the iterator.
+     * @param firstIndex the index of the first entry to iterate, starting at 0
+     * @param maxEntries the maximum number of entries to iterate, or -1 to iterate all entries from the first index
+     * @see Server#forEach(String, String, EntryHandler, long...)
+     */
+    public void setWindow(int firstIndex, int maxEntries) {
+        this.firstIndex = firstIndex;
+        this.windowEnd = maxEntries >= 0 ? firstIndex + maxEntries : -1;
+        reset();
+    }
+    
+    /**
+     * Get the chunk size that is used for the next query, which can be lower than the configured size if the server limits the number of results.
+     * @return the chunk size
+     */
+    public int getChunkSize() {
+        return adaptiveChunkSize != null ? adaptiveChunkSize.getSize() : chunkSize;
+    }
+    
+    /**
+     * Set the number of entries that are retrieved with a single call.
+     * @param size the required block size, default is {@link #DEFAULT_BLOCK_SIZE}
+     */
+    public void setBlockSize(int size) {
+        this.blockSize = size;
+    }
+    
+    /**
+     * Get the number of entries that are retrieved with the next call.
+     * @return the block size
+     */
+    public int getBlockSize() {
+        return adaptiveBlockSize != null ? adaptiveBlockSize.getSize() : blockSize;
+    }
+    
+    /**
+     * Let the chunk size adapt to the response times of the server. The chunk size set with {@link #setChunkSize(int)} is not used
+     * while an adaptive chunk size is set.
+     * @param size the adaptive chunk size or null to use a fixed chunk size
+     */
+    public void setAdaptiveChunkSize(AdaptiveChunkSize size) {
+        this.adaptiveChunkSize = size;
+    }
+    
+    /**
+     * Let the block size adapt to the response times of the server and the size of the entries. The block size set with 
+     * {@link #setBlockSize(int)} is not used while an adaptive block size is set.
+     * @param size the adaptive block size or null to use a fixed block size
+     */
+    public void setAdaptiveBlockSize(AdaptiveChunkSize size) {
+        this.adaptiveBlockSize = size;
+    }
+    
+    /**
+     * Set the sorting
+     * @param sorting the sorting
+     */
+    public void setSorting(SortInfo[] sorting) {
+        this.sorting = sorting;
+    }
+    
+    /**
+     * Enable keyset pagination. By default the chunks of keys are retrieved by their position in the list of matching entries, 
+     * which gets slower for every chunk on large forms, and skips or repeats entries when entries are added or deleted while iterating.
+     * With keyset pagination the entries are sorted on the keyset field, and each chunk is retrieved with a qualification that selects
+     * the entries after the last key of the previous chunk, so that every chunk takes the same time and the iteration is not affected by 
+     * changes to the form.
+     * <br />
+     * The keyset field must be unique and must have a value for every entry. The request id (field 1) is the obvious choice. When 
+     * another field is used, it must be retrieved with the entries, see {@link #setEntryListFieldInfo(long...)}.
+     * The sorting set with {@link #setSorting(SortInfo[])} is ignored and fast failing does not apply in keyset mode.
+     * @param fieldId the keyset field, or 0 to use the position of the entries (the default)
+     */
+    public void setKeysetField(long fieldId) {
+        this.keysetField = fieldId;
+    }
+    
+    /**
+     * Start a keyset iteration after a key, for example to continue an iteration that was interrupted.
+     * @param key the last key that should not be returned, or null to start at the first entry
+     */
+    void setKeysetStart(Value key) {
+        this.keysetStart = key;
+        this.lastKey = key;
+    }
+    
+    /**
+     * Set the fast failing behaviour of the iterator, default is false. When fast failing is enabled, the iterator will throw a {@link ConcurrentModificationException}
+     * if entries are added to the form or deleted from the form that is being iterated. Basically the number of matching items must not change while iterating 
+     * the form. Using {@link #remove()} or {@link #removeEntry()} is the correct way to remove an entry while iterating the form. Fast failing can impact performance
+     * as the total number of entries is retrieved when a new chunk of data is queried.
+     * @param fastFail set to true for fast failing behaviour, false otherwise.
+     */
+    public void setFastFail(boolean fastFail) {
+        this.fastFail = fastFail;
+    }
+    
+    /**
+     * Enable or disable prefetching. When prefetching is enabled, a background thread retrieves the next blocks of entries (and the next
+     * chunk of keys) while the current block is being processed, so that the round trips to the server overlap with the work done by the caller.
+     * The depth is the maximum number of blocks that are retrieved ahead of the caller. The default is 0, which disables prefetching.
+     * <p>
+     * The background thread uses the same {@link ARServerUser} context as the iterator, so the context should not be used for other calls
+     * while iterating. Removing entries is not supported while prefetching. Call {@link #close()} when you stop iterating before the end is
+     * reached, to stop the background thread.
+     * @param depth the number of blocks to retrieve ahead, or 0 to disable prefetching
+     * @throws IllegalArgumentException if depth is negative
+     */
+    public void setPrefetchDepth(int depth) throws IllegalArgumentException {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth is negative");
+        }
+        this.prefetchDepth = depth;
+    }
+    
+    /**
+     * Stop prefetching entries in the background. This only has effect when prefetching is enabled and the iterator is abandoned before
+     * all entries have been iterated. The iterator can be used again after calling {@link #reset()}.
+     * @see #setPrefetchDepth(int)
+     */
+    public void close() {
+        if (prefetcher != null) {
+            prefetcher.cancel();
+            prefetcher = null;
+        }
+    }
+    
+    /**
+     * Get the position of the iterator after the last entry returned by {@link #next()}. A new iterator created with the cursor 
+     * continues with the next entry, see {@link EntryCursor}.
+     * @return the cursor
+     * @throws IllegalStateException if the keyset field is not retrieved with the entries
+     */
+    public EntryCursor getCursor() throws IllegalStateException {
+        return new EntryCursor(form, qualifier, sorting, fieldList, chunkSize, blockSize, keysetField, absoluteIndex, windowEnd, 
+            keysetField > 0 ? lastReturnedKey() : null);
+    }
+    
+    /**
+     * @return the keyset key of the last entry returned by {@link #next()}, or the start key if no entry has been returned yet
+     */
+    private Value lastReturnedKey() throws IllegalStateException {
+        if (keysetField > 0 && lastEntry != null) {
+            return keysetField == 1 ? new Value(lastEntry.getEntryID().toString()) : getFieldValue(lastEntry, keysetField);
+        }
+        return keysetStart;
+    }
+    
+    /**
+     * Get the number of entries that match the query. When the iteration has not started yet, only the number of matches is retrieved,
+     * with a query for a single entry key, so counting does not retrieve any entries. The number is kept until the iterator is reset.
+     * The number is the total number of matches of the qualification, it ignores the window set with {@link #setWindow(int, int)}.
+     * @return the number of entries that have matched the query
+     * @throws ARException
+     */
+    public int getNumMatches() throws ARException {
+        if (numMatches == -1) {
+            numMatches = countMatches();
+        }
+        return numMatches;
+    }
+    
+    public boolean hasNext() {
+        try {
+            prepareEntries();
+        }
+        catch (ARException e) {
+            throw new RuntimeException(e);
+        }                
+        return entryIndex < entries.length;
+    }
+
+    public Entry next() {
+        if (!hasNext()) {
+            throw new IllegalStateException("No next entry");
+        }
+        currentEntry = entries[entryIndex];
+        lastEntry = currentEntry;
+        entryIndex++;
+        absoluteIndex++;
+        currentEntry.setContext(context);
+        return currentEntry;
+    }
+
+    /**
+     * Removes the current entry by invoking {@link #removeEntry()} any
+     * exception that occurs is wrapped in a {@link java.lang.RuntimeException}
+     * 
+     * @see #removeEntry()
+     */
+    public void remove() {
+        try {
+            removeEntry();
+        }
+        catch (ARException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Removes the current entry
+     * 
+     * @throws ARException if an AR System error occurs
+     * @throws IllegalStateException if an attempt is made to remove the entry twice.
+     * @throws UnsupportedOperationException if prefetching is enabled
+     */
+    public void removeEntry() throws ARException, IllegalStateException, UnsupportedOperationException {
+        if (prefetchDepth > 0) {
+            throw new UnsupportedOperationException("Entries cannot be removed while prefetching");
+        }
+        if (currentEntry == null) {
+            throw new IllegalStateException();
+        }
+        currentEntry.setContext(context);
+        currentEntry.remove();
+        currentEntry = null;
+        absoluteIndex--;
+        numMatches--;
+        if (windowEnd > -1) {
+            windowEnd--;
+        }
+    }
+    /**
+     * Set the fields that should be returned for each entry or null to return all fields
+     * @param fieldList the fields to return
+     */
+    public void setEntryListFieldInfo(EntryListFieldInfo[] fieldList) {
+        this.fieldList = fieldList;
+        this.ec = new EntryCriteria(fieldList);
+    }
+    
+    /**
+     * Set the fields that should be returned for each entry. This is a convenience method so that you can use
+     * <pre>
+     * EntryIterator itr = ...
+     * itr.setEntryListFieldInfo(1,8);
+     * </pre>
+     * in stead of:
+     * <pre>
+     * EntryIterator itr = ...
+     * itr.setEntryListFieldInfo(new EntryListFieldInfo[] {new EntryListFieldInfo(new FieldID(1)), new EntryListFieldInfo(new FieldID(8))});
+     * </pre>
+     * 
+     * 
+     * @param fieldIds the fields to return
+     * @see #setEntryListFieldInfo(EntryListFieldInfo[])
+     */
+    public void setEntryListFieldInfo(long... fieldIds) {
+        EntryListFieldInfo[] fieldInfo = new EntryListFieldInfo[fieldIds.length];
+        for (int i=0; i < fieldIds.length; i++) {
+            fieldInfo[i] = new EntryListFieldInfo(new FieldID(fieldIds[i]));
+        }
+        setEntryListFieldInfo(fieldInfo);
+    }
+
+    /**
+     * Retrieve the ids of all matching entries, without retrieving the entries. This resets the iterator.
+     * @return the entry ids
+     * @throws ARException
+     */
+    List<EntryID> findEntryIds() throws ARException {
+        reset();
+        List<EntryID> ids = new ArrayList<EntryID>();
+        int matches = nextKeyChunk(0, -1);
+        while (entryKeys.length > 0) {
+            for (EntryKey key : entryKeys) {
+                ids.add(key.getEntryID());
+            }
+            if (ids.size() >= matches) {
+                break;
+            }
+            matches = nextKeyChunk(ids.size(), matches);
+        }
+        reset();
+        return ids;
+    }
+
+    private void prepareEntries() throws ARException {        
+        if (prefetchDepth > 0) {
+            prepareEntriesFromPrefetcher();
+            return;
+        }
+        if (entryKeys == null || keyIndex >= entryKeys.length && !lastChunk && entryIndex >= entries.length) {
+            numMatches = nextKeyChunk(absoluteIndex, numMatches);
+            if (entryKeys.length == 0) {
+                lastChunk = true;                
+            }
+        }
+        
+        if (entries == null || entryIndex >= entries.length) {
+            entries = nextEntryChunk();
+            entryIndex = 0;
+        }
+        
+    }
+
+    private void prepareEntriesFromPrefetcher() throws ARException {
+        if (entries != null && (entryIndex < entries.length || lastChunk)) {
+            return;
+        }
+        if (prefetcher == null) {
+            if (keysetField > 0) {
+                // a prefetcher that failed has moved the last key to the end of its chunk, continue after the last returned entry
+                lastKey = lastReturnedKey();
+            }
+            prefetcher = new Prefetcher(absoluteIndex, numMatches, prefetchDepth);
+            prefetcher.start();
+        }
+        EntryBlock block = prefetcher.take();
+        if (block.error != null) {
+            // the prefetcher has stopped, a next attempt will start a new one at the current position
+            prefetcher = null;
+        }
+        if (block.error instanceof ARException) {
+            throw (ARException) block.error;
+        }
+        if (block.error instanceof RuntimeException) {
+            throw (RuntimeException) block.error;
+        }
+        numMatches = block.numMatches;
+        entries = block.entries;
+        entryIndex = 0;
+        if (entries.length == 0) {
+            lastChunk = true;
+            prefetcher = null;
+        }
+    }
+
+    private int countMatches() throws ARException {
+        // the matches are counted over the whole query, without a sort order, and the single key that is retrieved is not used
+        EntryListCriteria elc = new EntryListCriteria(new NameID(form), qualifier, 0, 1, null, null, null);
+        Integer matches = new Integer(0);
+        factory.findEntryKeys(context, elc, matches);
+        return matches.intValue();
+    }
+
+    private int nextKeyChunk(int offset, int matchCount) throws ARException {
+        int size = getChunkSize();
+        if (windowEnd > -1) {
+            size = Math.min(size, windowEnd - offset);
+            if (size <= 0) {
+                entryKeys = new EntryKey[0];
+                keyIndex = 0;
+                return matchCount;
+            }
+        }
+        QualifierInfo q = qualifier;
+        SortInfo[] sort = sorting;
+        boolean countMatches = fastFail || matchCount == -1;
+        if (keysetField > 0) {
+            sort = new SortInfo[] {new SortInfo(new FieldID(keysetField), SortInfo.AR_SORT_ASCENDING)};
+            if (lastKey != null) {
+                // the window offset only applies to the first chunk, after that the qualification does the paging
+                offset = 0;
+                q = new QualifierInfo(QualifierInfo.AR_COND_OP_AND, qualifier, new QualifierInfo(new RelationalOperationInfo(RelationalOperationInfo.AR_REL_OP_GREATER, 
+                        new ArithmeticOrRelationalOperand(new FieldID(keysetField)), new ArithmeticOrRelationalOperand(lastKey))));
+            }
+            countMatches = matchCount == -1 && lastKey == null;
+        }
+        EntryListCriteria elc = new EntryListCriteria(new NameID(form), q, offset, size, null,
+                sort, null);
+        Integer matches = null;
+        if (countMatches) {
+            matches = new Integer(0);
+        }
+        long start = System.nanoTime();
+        entryKeys = factory.findEntryKeys(context, elc, matches);
+        long elapsed = System.nanoTime() - start;
+        if (matches != null && matches.intValue() != matchCount && matchCount > -1 && fastFail && keysetField == 0) {
+            throw new ConcurrentModificationException();
+        }
+        if (entryKeys == null) {
+            entryKeys = new EntryKey[0];
+        }
+        if (resultIsLimited(context.getLastStatus())) {
+            chunkSize = entryKeys.length;
+            if (adaptiveChunkSize != null) {
+                adaptiveChunkSize.limitMaxSize(entryKeys.length);
+            }
+        }
+        else if (adaptiveChunkSize != null) {
+            adaptiveChunkSize.update(size, entryKeys.length, entryKeys.length, elapsed);
+        }
+        if (keysetField == 1 && entryKeys.length > 0) {
+            lastKey = new Value(entryKeys[entryKeys.length - 1].getEntryID().toString());
+        }
+        keyIndex = 0;
+        return matches != null ? matches.intValue() : matchCount;
+    }
+
+    private Entry[] nextEntryChunk() throws ARException {
+        EntryListCriteria elc = new EntryListCriteria();
+        elc.setSchemaID(new NameID(form));
+        
+        int size = Math.min(getBlockSize(), entryKeys.length - keyIndex);
+        
+        if (size <= 0) {
+            return new Entry[0];
+        }
+        
+        EntryID[] ids = new EntryID[size];
+        
+        for (int i=keyIndex; i < keyIndex + size; i++) {
+            ids[i-keyIndex] = entryKeys[i].getEntryID();
+        }
+        
+        elc.setEntriesToRetrieve(ids);
+        
+        long start = System.nanoTime();
+        Entry[] result = factory.findEntries(context, elc, ec);
+        long elapsed = System.nanoTime() - start;
+        if (result == null) {
+            result = new Entry[0];
+        }
+        if (adaptiveBlockSize != null) {
+            int values = 0;
+            for (Entry entry : result) {
+                values += entry.getEntryItems().length;
+            }
+            adaptiveBlockSize.update(size, result.length, values, elapsed);
+        }
+        keyIndex+=size;
+        if (keysetField > 1 && keyIndex >= entryKeys.length && result.length > 0) {
+            lastKey = getFieldValue(result[result.length - 1], keysetField);
+        }
+        return result;
+    }
+
+    private Value getFieldValue(Entry entry, long fieldId) throws IllegalStateException {
+        for (EntryItem item : entry.getEntryItems()) {
+            if (item.getFieldID().getValue() == fieldId) {
+                return item.getValue();
+            }
+        }
+        throw new IllegalStateException("The keyset field " + fieldId + " is not retrieved");
+    }
+
+    private boolean resultIsLimited(StatusInfo[] status) {
+        if (status == null) {
+            return false;
+        }
+        for (int i = 0; i < status.length; i++) {
+            if (status[i].getMessageNum() == 72)
+                return true;
+        }
+        return false;
+    }
+    
+    public Iterator<Entry> iterator() {
+        return this;
+    }
+
+    /**
+     * A block of entries retrieved by the {@link Prefetcher}. A block without entries marks the end of the results.
+     */
+    private static final class EntryBlock {
+        private final Entry[] entries;
+        private final int numMatches;
+        private final Throwable error;
+        
+        EntryBlock(Entry[] entries, int numMatches, Throwable error) {
+            this.entries = entries;
+            this.numMatches = numMatches;
+            this.error = error;
+        }
+    }
+    
+    /**
+     * Retrieves the keys and entries in a background thread and hands them over to the iterator. While prefetching, the key chunk
+     * fields of the iterator are only used by this thread.
+     */
+    private final class Prefetcher implements Runnable {
+        private final BlockingQueue<EntryBlock> queue;
+        private Thread thread;
+        private volatile boolean cancelled = false;
+        private int offset;
+        private int matches;
+        
+        Prefetcher(int offset, int matches, int depth) {
+            this.offset = offset;
+            this.matches = matches;
+            this.queue = new ArrayBlockingQueue<EntryBlock>(depth);
+        }
+        
+        void start() {
+            thread = new Thread(this, "edplus-prefetch-" + form);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        public void run() {
+            try {
+                while (!cancelled) {
+                    matches = nextKeyChunk(offset, matches);
+                    if (entryKeys.length == 0) {
+                        break;
+                    }
+                    while (keyIndex < entryKeys.length && !cancelled) {
+                        Entry[] block = nextEntryChunk();
+                        offset += block.length;
+                        if (block.length > 0) {
+                            put(new EntryBlock(block, matches, null));
+                        }
+                    }
+                }
+                put(new EntryBlock(new Entry[0], matches, null));
+            }
+            catch (ARException e) {
+                put(new EntryBlock(new Entry[0], matches, e));
+            }
+            catch (RuntimeException e) {
+                put(new EntryBlock(new Entry[0], matches, e));
+            }
+        }
+        
+        private void put(EntryBlock block) {
+            try {
+                while (!cancelled && !queue.offer(block, 1, TimeUnit.SECONDS)) {
+                    // wait for the iterator to take the next block
+                }
+            }
+            catch (InterruptedException e) {
+                cancelled = true;
+            }
+        }
+        
+        EntryBlock take() {
+            try {
+                return queue.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        
+        /**
+         * Cancel prefetching and wait for the thread to finish, so that the iterator can safely use its key chunk fields again.
+         */
+        void cancel() {
+            cancelled = true;
+            queue.clear();
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.ActiveLinkCriteria;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.ContainerCriteria;
+import com.remedy.arsys.api.ContainerListCriteria;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryKey;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.EscalationCriteria;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldCriteria;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.FilterCriteria;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.MenuCriteria;
+import com.remedy.arsys.api.MenuListCriteria;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.SchemaCriteria;
+import com.remedy.arsys.api.SchemaListCriteria;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewCriteria;
+import com.remedy.arsys.api.ViewID;
+import com.remedy.arsys.api.ViewListCriteria;
+import com.remedy.arsys.api.WorkflowObjectListCriteria;
+
+/**
+ * The calls to the find and findObjects methods of the AR System API factories that the iterators make. By default the iterators call the 
+ * factories directly through {@link ApiFactoryAdapter}. Another adapter can be set with {@link Server#setFactoryAdapter(FactoryAdapter)}, 
+ * for instance to measure the calls or to run the iterators against a simulated server in a benchmark. 
+ * 
+ * @author Hugo Visser
+ */
+public interface FactoryAdapter {
+    /**
+     * @see com.remedy.arsys.api.EntryFactory#find(ARServerUser, EntryListCriteria, boolean, Integer)
+     */
+    EntryKey[] findEntryKeys(ARServerUser context, EntryListCriteria criteria, Integer matches) throws ARException;
+    
+    /**
+     * @see com.remedy.arsys.api.EntryFactory#findObjects(ARServerUser, EntryListCriteria, EntryCriteria, boolean, Integer)
+     */
+    Entry[] findEntries(ARServerUser context, EntryListCriteria listCriteria, EntryCriteria criteria) throws ARException;
+    
+    NameID[] findActiveLinkNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException;
+    
+    ActiveLink[] findActiveLinks(ARServerUser context, WorkflowObjectListCriteria listCriteria, ActiveLinkCriteria criteria) throws ARException;
+    
+    NameID[] findFilterNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException;
+    
+    Filter[] findFilters(ARServerUser context, WorkflowObjectListCriteria listCriteria, FilterCriteria criteria) throws ARException;
+    
+    NameID[] findEscalationNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException;
+    
+    Escalation[] findEscalations(ARServerUser context, WorkflowObjectListCriteria listCriteria, EscalationCriteria criteria) throws ARException;
+    
+    NameID[] findSchemaNames(ARServerUser context, SchemaListCriteria criteria) throws ARException;
+    
+    Schema[] findSchemas(ARServerUser context, SchemaListCriteria listCriteria, SchemaCriteria criteria) throws ARException;
+    
+    NameID[] findMenuNames(ARServerUser context, MenuListCriteria criteria) throws ARException;
+    
+    Menu[] findMenus(ARServerUser context, MenuListCriteria listCriteria, MenuCriteria criteria) throws ARException;
+    
+    NameID[] findContainerNames(ARServerUser context, ContainerListCriteria criteria) throws ARException;
+    
+    Container[] findContainers(ARServerUser context, ContainerListCriteria listCriteria, ContainerCriteria criteria) throws ARException;
+    
+    FieldID[] findFieldIds(ARServerUser context, FieldListCriteria criteria) throws ARException;
+    
+    Field[] findFields(ARServerUser context, FieldListCriteria listCriteria, FieldCriteria criteria) throws ARException;
+    
+    ViewID[] findViewIds(ARServerUser context, ViewListCriteria criteria) throws ARException;
+    
+    View[] findViews(ARServerUser context, ViewListCriteria listCriteria, ViewCriteria criteria) throws ARException;
+}
@@ -0,0 +1,245 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.remedy.arsys.api.Value;
+
+/**
+ * A map of field id, value pairs that stores the field ids as primitive longs in an open addressing hash table. Unlike a 
+ * <code>HashMap&lt;Long, Value&gt;</code> it does not allocate a key object or a node for each field, and it can be iterated without 
+ * allocating an iterator:
+ * <pre>
+ * FieldValueMap map = ...
+ * for (int i = map.nextIndex(-1); i &gt;= 0; i = map.nextIndex(i)) {
+ *     long fieldId = map.keyAt(i);
+ *     Value value = map.valueAt(i);
+ * }
+ * </pre>
+ * When many entries are converted, the same map can be reused by calling {@link #clear()}, which keeps the allocated capacity.
+ * This class is not thread-safe.
+ * 
+ * @author Hugo Visser
+ * @see EntryUtil#toEntryMap(com.remedy.arsys.api.Entry, FieldValueMap)
+ */
+public final class FieldValueMap {
+    private final static int MIN_CAPACITY = 16;
+    private long[] keys;
+    private Value[] values;
+    private int size;
+    private int mask;
+    
+    /**
+     * Create an empty map
+     */
+    public FieldValueMap() {
+        this(MIN_CAPACITY / 2);
+    }
+    
+    /**
+     * Create an empty map that can hold the expected number of fields without resizing.
+     * @param expectedSize the expected number of fields
+     */
+    public FieldValueMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+    
+    /**
+     * @param fieldId the field id
+     * @return the value of the field or null if the map does not contain the field
+     */
+    public Value get(long fieldId) {
+        int i = indexOf(fieldId);
+        return i >= 0 ? values[i] : null;
+    }
+    
+    /**
+     * @param fieldId the field id
+     * @return true if the map contains the field
+     */
+    public boolean containsKey(long fieldId) {
+        return indexOf(fieldId) >= 0;
+    }
+    
+    /**
+     * Set the value of a field.
+     * @param fieldId the field id
+     * @param value the value
+     * @return the previous value of the field or null
+     * @throws IllegalArgumentException if value is null, use a {@link Value} with {@link com.remedy.arsys.api.DataType#NULL} for an empty value
+     */
+    public Value put(long fieldId, Value value) throws IllegalArgumentException {
+        if (value == null) {
+            throw new IllegalArgumentException("value is null");
+        }
+        int i = slot(fieldId);
+        while (values[i] != null) {
+            if (keys[i] == fieldId) {
+                Value old = values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = fieldId;
+        values[i] = value;
+        if (++size * 4 > keys.length * 3) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+    
+    /**
+     * Remove a field.
+     * @param fieldId the field id
+     * @return the value of the removed field or null if the map does not contain the field
+     */
+    public Value remove(long fieldId) {
+        int i = indexOf(fieldId);
+        if (i < 0) {
+            return null;
+        }
+        Value old = values[i];
+        // shift the following entries of the probe sequence back, so that no tombstones are needed
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (values[j] != null) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+        return old;
+    }
+    
+    /**
+     * @return the number of fields in the map
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @return true if the map contains no fields
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Remove all fields, keeping the allocated capacity.
+     */
+    public void clear() {
+        if (size > 0) {
+            for (int i=0; i < values.length; i++) {
+                values[i] = null;
+            }
+            size = 0;
+        }
+    }
+    
+    /**
+     * Get the index of the next field, for iterating the map. Start with an index of -1.
+     * @param index the current index, or -1 to get the first index
+     * @return the next index or -1 if there are no more fields
+     */
+    public int nextIndex(int index) {
+        for (int i=index + 1; i < values.length; i++) {
+            if (values[i] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @param index an index returned by {@link #nextIndex(int)}
+     * @return the field id at the index
+     */
+    public long keyAt(int index) {
+        return keys[index];
+    }
+    
+    /**
+     * @param index an index returned by {@link #nextIndex(int)}
+     * @return the value at the index
+     */
+    public Value valueAt(int index) {
+        return values[index];
+    }
+    
+    /**
+     * Copy the fields to a {@link Map}.
+     * @return a new map with the same field id, value pairs
+     */
+    public Map<Long, Value> toMap() {
+        Map<Long, Value> map = new HashMap<Long, Value>(size * 4 / 3 + 1);
+        for (int i = nextIndex(-1); i >= 0; i = nextIndex(i)) {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+    
+    private int indexOf(long fieldId) {
+        int i = slot(fieldId);
+        while (values[i] != null) {
+            if (keys[i] == fieldId) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+    
+    private int slot(long fieldId) {
+        int h = (int) (fieldId ^ (fieldId >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Value[capacity];
+        mask = capacity - 1;
+    }
+    
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Value[] oldValues = values;
+        allocate(capacity);
+        for (int i=0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.Constants;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.FieldType;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewListCriteria;
+
+/**
+ * The data fields and views of a form, as needed to parse a qualification.
+ * 
+ * @author Hugo Visser
+ */
+final class FormMetadata {
+    private final Field[] fields;
+    private final View[] views;
+    
+    private FormMetadata(Field[] fields, View[] views) {
+        this.fields = fields;
+        this.views = views;
+    }
+    
+    /**
+     * Retrieve the data fields and views of a form from the server.
+     * @param context the server context
+     * @param factory the adapter that is used to find the fields and views
+     * @param form the form
+     * @return the metadata
+     * @throws ARException
+     */
+    static FormMetadata load(ARServerUser context, FactoryAdapter factory, String form) throws ARException {
+        FieldListCriteria flc = new FieldListCriteria(new NameID(form), null, FieldType.AR_DATA_FIELD);
+        List<Field> fieldList = new ArrayList<Field>();
+        List<View> viewList = new ArrayList<View>();
+        try {
+            ARObjectIterator<Field> fields = (ARObjectIterator<Field>) ARObjectIterator.newFieldIterable(context, flc);
+            fields.setFactoryAdapter(factory);
+            for (Field field : fields) {
+                if (field.getFieldOption() != Constants.AR_FIELD_OPTION_DISPLAY) {
+                    fieldList.add(field);
+                }
+            }
+            ViewListCriteria vlc = new ViewListCriteria(new NameID(form), null);        
+            ARObjectIterator<View> views = (ARObjectIterator<View>) ARObjectIterator.newViewIterable(context, vlc);
+            views.setFactoryAdapter(factory);
+            for (View v : views) {
+                viewList.add(v);
+            }
+        }
+        catch (RuntimeException e) {
+            // the iterators wrap the ARException
+            if (e.getCause() instanceof ARException) {
+                throw (ARException) e.getCause();
+            }
+            throw e;
+        }
+        return new FormMetadata(fieldList.toArray(new Field[fieldList.size()]), viewList.toArray(new View[viewList.size()]));
+    }
+    
+    /**
+     * @return a copy of the data fields that are not display only
+     */
+    Field[] getFields() {
+        Field[] copy = new Field[fields.length];
+        System.arraycopy(fields, 0, copy, 0, fields.length);
+        return copy;
+    }
+    
+    /**
+     * Find the view that matches a locale. This is the view with the same locale, or else the last view with the same language,
+     * or else the first view.
+     * @param locale the locale, may be null
+     * @return the view or null if the form has no views
+     */
+    View getView(String locale) {
+        View view = null;
+        
+        for (View v : views) {
+            if (view == null) {
+                view = v;
+            }
+            if (locale != null) {
+                if (locale.equals(v.getLocale())) {
+                    view = v;
+                    break;
+                }
+                if (locale.indexOf("_") > -1 && v.getLocale() != null && v.getLocale().startsWith(locale.substring(0, locale.indexOf("_")))) {
+                    view = v;
+                }
+            }
+        }
+        return view;
+    }
+}
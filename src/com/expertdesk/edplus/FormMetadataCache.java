@@ -0,0 +1,176 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+
+/**
+ * A thread-safe cache of the fields and views of forms, used by {@link EntryIterator#setQualification(String)} to parse qualifications
+ * without retrieving the form definition every time. The cache is keyed by server, form and locale, entries expire after the time to live
+ * and the least recently used entries are removed when the cache is full. 
+ * <br />
+ * A cache can be shared by any number of {@link Server} objects and iterators, even when they use different servers:
+ * <pre>
+ * Server server = ...
+ * server.setFormMetadataCache(FormMetadataCache.getSharedInstance());
+ * </pre>
+ * When a form definition is changed, the cached entries of the form can be removed with {@link #invalidate(String, String)}.
+ * 
+ * @author Hugo Visser
+ */
+public class FormMetadataCache {
+    /**
+     * The default maximum number of cached forms
+     */
+    public final static int DEFAULT_MAX_SIZE = 1000;
+    /**
+     * The default time to live of a cached form in milliseconds
+     */
+    public final static long DEFAULT_TTL = 600000;
+    
+    private static FormMetadataCache sharedInstance;
+    
+    private final LruCache<Key, FormMetadata> cache;
+    private volatile long ttl;
+    
+    /**
+     * Create a cache with the default size and time to live
+     */
+    public FormMetadataCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+    
+    /**
+     * Create a cache
+     * @param maxSize the maximum number of cached forms
+     * @param ttl the time to live of a cached form in milliseconds, or 0 to keep forms until they are removed or invalidated
+     */
+    public FormMetadataCache(int maxSize, long ttl) {
+        this.cache = new LruCache<Key, FormMetadata>(maxSize);
+        this.ttl = ttl;
+    }
+    
+    /**
+     * Get the cache that is shared by the whole application.
+     * @return the shared cache
+     */
+    public static synchronized FormMetadataCache getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new FormMetadataCache();
+        }
+        return sharedInstance;
+    }
+    
+    /**
+     * Set the maximum number of cached forms
+     * @param maxSize the maximum number of cached forms
+     */
+    public void setMaxSize(int maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+    
+    /**
+     * Set the time to live for forms that are added to the cache.
+     * @param ttl the time to live of a cached form in milliseconds, or 0 to keep forms until they are removed or invalidated
+     */
+    public void setTimeToLive(long ttl) {
+        this.ttl = ttl;
+    }
+    
+    /**
+     * Remove a form from the cache for all locales.
+     * @param server the server name, as returned by {@link ARServerUser#getServer()}
+     * @param form the form
+     */
+    public void invalidate(String server, String form) {
+        for (Key key : cache.keys()) {
+            if (key.server.equals(server) && key.form.equals(form)) {
+                cache.remove(key);
+            }
+        }
+    }
+    
+    /**
+     * Remove all forms of a server from the cache.
+     * @param server the server name, as returned by {@link ARServerUser#getServer()}
+     */
+    public void invalidate(String server) {
+        for (Key key : cache.keys()) {
+            if (key.server.equals(server)) {
+                cache.remove(key);
+            }
+        }
+    }
+    
+    /**
+     * Remove all forms from the cache.
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+    
+    /**
+     * @return the number of cached forms
+     */
+    public int size() {
+        return cache.size();
+    }
+    
+    /**
+     * Get the metadata of a form, retrieving it from the server if it is not cached. Concurrent requests for a form that is not cached
+     * may all retrieve the form.
+     * @param context the server context
+     * @param factory the adapter that is used to retrieve the form if it is not cached
+     * @param form the form
+     * @return the metadata
+     * @throws ARException
+     */
+    FormMetadata get(ARServerUser context, FactoryAdapter factory, String form) throws ARException {
+        Key key = new Key(context.getServer(), form, context.getLocale());
+        FormMetadata metadata = cache.get(key);
+        if (metadata == null) {
+            metadata = FormMetadata.load(context, factory, form);
+            cache.put(key, metadata, ttl);
+        }
+        return metadata;
+    }
+    
+    private static final class Key {
+        private final String server;
+        private final String form;
+        private final String locale;
+        
+        Key(String server, String form, String locale) {
+            this.server = server;
+            this.form = form;
+            this.locale = locale;
+        }
+        
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return server.equals(other.server) && form.equals(other.form) && (locale == null ? other.locale == null : locale.equals(other.locale));
+        }
+        
+        public int hashCode() {
+            return server.hashCode() * 31 * 31 + form.hashCode() * 31 + (locale != null ? locale.hashCode() : 0);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.ActiveLinkCriteria;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.ContainerCriteria;
+import com.remedy.arsys.api.ContainerListCriteria;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryKey;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.EscalationCriteria;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldCriteria;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.FilterCriteria;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.MenuCriteria;
+import com.remedy.arsys.api.MenuListCriteria;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.SchemaCriteria;
+import com.remedy.arsys.api.SchemaListCriteria;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewCriteria;
+import com.remedy.arsys.api.ViewID;
+import com.remedy.arsys.api.ViewListCriteria;
+import com.remedy.arsys.api.WorkflowObjectListCriteria;
+
+
+/**
+ * A {@link FactoryAdapter} that runs the calls of another adapter within the limits of a {@link ConcurrencyGovernor}.
+ * 
+ * @author Hugo Visser
+ */
+class GovernedFactoryAdapter implements FactoryAdapter {
+    private final FactoryAdapter delegate;
+    private final ConcurrencyGovernor governor;
+    
+    GovernedFactoryAdapter(FactoryAdapter delegate, ConcurrencyGovernor governor) {
+        this.delegate = delegate;
+        this.governor = governor;
+    }
+    
+    public EntryKey[] findEntryKeys(ARServerUser context, EntryListCriteria criteria, Integer matches) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findEntryKeys(context, criteria, matches);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findEntryKeys", start, error, failed);
+        }
+    }
+
+    public Entry[] findEntries(ARServerUser context, EntryListCriteria listCriteria, EntryCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findEntries(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findEntries", start, error, failed);
+        }
+    }
+
+    public NameID[] findActiveLinkNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findActiveLinkNames(context, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findActiveLinkNames", start, error, failed);
+        }
+    }
+
+    public ActiveLink[] findActiveLinks(ARServerUser context, WorkflowObjectListCriteria listCriteria, ActiveLinkCriteria criteria) 
+        throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findActiveLinks(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findActiveLinks", start, error, failed);
+        }
+    }
+
+    public NameID[] findFilterNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findFilterNames(context, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findFilterNames", start, error, failed);
+        }
+    }
+
+    public Filter[] findFilters(ARServerUser context, WorkflowObjectListCriteria listCriteria, FilterCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findFilters(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findFilters", start, error, failed);
+        }
+    }
+
+    public NameID[] findEscalationNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findEscalationNames(context, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findEscalationNames", start, error, failed);
+        }
+    }
+
+    public Escalation[] findEscalations(ARServerUser context, WorkflowObjectListCriteria listCriteria, EscalationCriteria criteria) 
+        throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findEscalations(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findEscalations", start, error, failed);
+        }
+    }
+
+    public NameID[] findSchemaNames(ARServerUser context, SchemaListCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findSchemaNames(context, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findSchemaNames", start, error, failed);
+        }
+    }
+
+    public Schema[] findSchemas(ARServerUser context, SchemaListCriteria listCriteria, SchemaCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findSchemas(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findSchemas", start, error, failed);
+        }
+    }
+
+    public NameID[] findMenuNames(ARServerUser context, MenuListCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findMenuNames(context, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findMenuNames", start, error, failed);
+        }
+    }
+
+    public Menu[] findMenus(ARServerUser context, MenuListCriteria listCriteria, MenuCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findMenus(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findMenus", start, error, failed);
+        }
+    }
+
+    public NameID[] findContainerNames(ARServerUser context, ContainerListCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findContainerNames(context, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findContainerNames", start, error, failed);
+        }
+    }
+
+    public Container[] findContainers(ARServerUser context, ContainerListCriteria listCriteria, ContainerCriteria criteria) 
+        throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findContainers(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findContainers", start, error, failed);
+        }
+    }
+
+    public FieldID[] findFieldIds(ARServerUser context, FieldListCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findFieldIds(context, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findFieldIds", start, error, failed);
+        }
+    }
+
+    public Field[] findFields(ARServerUser context, FieldListCriteria listCriteria, FieldCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findFields(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findFields", start, error, failed);
+        }
+    }
+
+    public ViewID[] findViewIds(ARServerUser context, ViewListCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findViewIds(context, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findViewIds", start, error, failed);
+        }
+    }
+
+    public View[] findViews(ARServerUser context, ViewListCriteria listCriteria, ViewCriteria criteria) throws ARException {
+        long start = governor.acquire();
+        ARException error = null;
+        boolean failed = false;
+        try {
+            return delegate.findViews(context, listCriteria, criteria);
+        }
+        catch (ARException e) {
+            error = e;
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        finally {
+            release("findViews", start, error, failed);
+        }
+    }
+
+    /**
+     * Release the slot of a call. A call that failed with a runtime exception did not reach the server, or broke off,
+     * so its latency says nothing about the load of the server and the limit is not adapted.
+     */
+    private void release(String operation, long start, ARException error, boolean failed) {
+        if (failed) {
+            governor.release();
+        }
+        else {
+            governor.release(operation, start, error);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A thread-safe map with a maximum size that removes the least recently used entries when it is full. Entries can have a time to live,
+ * expired entries are removed when they are requested. Entries can also have a weight, the least recently used entries are then also
+ * removed when the total weight is more than the maximum weight.
+ * 
+ * @author Hugo Visser
+ */
+final class LruCache<K, V> {
+    private final LinkedHashMap<K, CacheEntry<V>> map;
+    private int maxSize;
+    private long maxWeight = Long.MAX_VALUE;
+    private long weight = 0;
+    private long evictions = 0;
+    
+    /**
+     * @param maxSize the maximum number of entries
+     */
+    LruCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    weight -= eldest.getValue().weight;
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * @param key the key
+     * @return the value or null if there is no value or the value has expired
+     */
+    synchronized V get(K key) {
+        CacheEntry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires > 0 && entry.expires < System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+    
+    /**
+     * @param key the key
+     * @param value the value
+     * @param ttl the time to live in milliseconds, or 0 if the value does not expire
+     */
+    synchronized void put(K key, V value, long ttl) {
+        put(key, value, ttl, 0);
+    }
+    
+    /**
+     * @param key the key
+     * @param value the value
+     * @param ttl the time to live in milliseconds, or 0 if the value does not expire
+     * @param weight the weight of the value
+     */
+    synchronized void put(K key, V value, long ttl, long weight) {
+        CacheEntry<V> old = map.put(key, new CacheEntry<V>(value, ttl > 0 ? System.currentTimeMillis() + ttl : 0, weight));
+        if (old != null) {
+            this.weight -= old.weight;
+        }
+        this.weight += weight;
+        evictByWeight();
+    }
+    
+    synchronized V remove(K key) {
+        CacheEntry<V> entry = map.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        weight -= entry.weight;
+        return entry.value;
+    }
+    
+    synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+    
+    synchronized int size() {
+        return map.size();
+    }
+    
+    synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        while (map.size() > maxSize) {
+            remove(map.keySet().iterator().next());
+            evictions++;
+        }
+    }
+    
+    /**
+     * @param maxWeight the maximum total weight of the values
+     */
+    synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evictByWeight();
+    }
+    
+    private void evictByWeight() {
+        while (weight > maxWeight && !map.isEmpty()) {
+            remove(map.keySet().iterator().next());
+            evictions++;
+        }
+    }
+    
+    /**
+     * @return the total weight of the values
+     */
+    synchronized long weight() {
+        return weight;
+    }
+    
+    /**
+     * @return the number of values that were removed because the cache was full
+     */
+    synchronized long evictions() {
+        return evictions;
+    }
+    
+    /**
+     * @return a copy of the keys in the cache
+     */
+    synchronized List<K> keys() {
+        return new ArrayList<K>(map.keySet());
+    }
+    
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long expires;
+        private final long weight;
+        
+        CacheEntry(V value, long expires, long weight) {
+            this.value = value;
+            this.expires = expires;
+            this.weight = weight;
+        }
+    }
+}
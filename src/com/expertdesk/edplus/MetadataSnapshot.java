@@ -0,0 +1,446 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.View;
+
+/**
+ * A snapshot of the metadata of a server in a local file: the schemas with their fields and views, the active links, filters, escalations,
+ * menus and containers. A snapshot is exported once with {@link Server#exportSnapshot(File)} and can then be read without contacting the 
+ * server:
+ * <pre>
+ * MetadataSnapshot snapshot = MetadataSnapshot.open(new File("metadata.snapshot"));
+ * for (Schema schema: snapshot.getSchemas()) {
+ *     for (Field field: snapshot.getFields(schema.getName().getValue())) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * The file is memory mapped and the objects are read lazily while they are iterated, so only the objects that are used are in memory.
+ * To keep workflow up to date after startup, a {@link WorkflowCache} can be filled from the snapshot with 
+ * {@link WorkflowCache#load(MetadataSnapshot)}, the next sync then only retrieves the changes since the export.
+ * <br />
+ * The objects are stored with Java serialization, so a snapshot can only be read with the same version of the AR System API. The objects
+ * that are read have no context. A snapshot can not be larger than 2 GB.
+ * 
+ * @author Hugo Visser
+ */
+public final class MetadataSnapshot {
+    private final static int MAGIC = 0x45445053;
+    private final static int VERSION = 1;
+    // the interval at which the object streams are reset, so that the writer and readers do not keep references to all objects
+    private final static int RESET_INTERVAL = 100;
+    
+    private final static int SCHEMA = 0;
+    private final static int FIELD = 1;
+    private final static int VIEW = 2;
+    private final static int ACTIVE_LINK = 3;
+    private final static int FILTER = 4;
+    private final static int ESCALATION = 5;
+    private final static int MENU = 6;
+    private final static int CONTAINER = 7;
+    
+    private final ByteBuffer buffer;
+    private final long created;
+    private final long exportMillis;
+    private final List<Section> sections;
+    
+    private MetadataSnapshot(ByteBuffer buffer, long created, long exportMillis, List<Section> sections) {
+        this.buffer = buffer;
+        this.created = created;
+        this.exportMillis = exportMillis;
+        this.sections = sections;
+    }
+    
+    /**
+     * Retrieve the metadata of a server and write it to a file. The file is first written to a temporary file in the same directory, 
+     * an existing snapshot is only replaced when the export succeeds.
+     * @param server the server
+     * @param file the file
+     * @return the snapshot
+     * @throws ARException if the metadata could not be retrieved
+     * @throws IOException if the file could not be written
+     */
+    static MetadataSnapshot export(Server server, File file) throws ARException, IOException {
+        long start = System.currentTimeMillis();
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+        boolean exported = false;
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(start);
+            // the duration of the export is not known yet, see below
+            out.writeLong(0);
+            
+            List<Section> sections = new ArrayList<Section>();
+            List<String> forms = new ArrayList<String>();
+            
+            int offset = out.size();
+            ObjectOutputStream oos = newSection(out);
+            int count = 0;
+            try {
+                for (Schema schema: server.getSchemas()) {
+                    forms.add(schema.getName().getValue());
+                    count = write(oos, schema, count);
+                }
+                oos.flush();
+                checkSize(out);
+                sections.add(new Section(SCHEMA, null, count, offset, out.size() - offset));
+                for (String form: forms) {
+                    sections.add(writeSection(out, FIELD, form, server.getFields(form)));
+                    sections.add(writeSection(out, VIEW, form, server.getViews(form)));
+                }
+                sections.add(writeSection(out, ACTIVE_LINK, null, server.getActiveLinks()));
+                sections.add(writeSection(out, FILTER, null, server.getFilters()));
+                sections.add(writeSection(out, ESCALATION, null, server.getEscalations()));
+                sections.add(writeSection(out, MENU, null, server.getMenus()));
+                sections.add(writeSection(out, CONTAINER, null, server.getContainers()));
+            }
+            catch (RuntimeException e) {
+                // the iterators wrap the ARException
+                if (e.getCause() instanceof ARException) {
+                    throw (ARException) e.getCause();
+                }
+                throw e;
+            }
+            
+            checkSize(out);
+            int indexOffset = out.size();
+            out.writeInt(sections.size());
+            for (Section section: sections) {
+                out.writeByte(section.type);
+                out.writeUTF(section.form != null ? section.form : "");
+                out.writeInt(section.count);
+                out.writeInt(section.offset);
+                out.writeInt(section.length);
+            }
+            out.writeLong(indexOffset);
+            checkSize(out);
+            out.close();
+            out = null;
+            
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                raf.seek(16);
+                raf.writeLong(System.currentTimeMillis() - start);
+            }
+            finally {
+                raf.close();
+            }
+            if (file.exists() && !file.delete()) {
+                throw new IOException("could not replace " + file);
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("could not rename " + tmp + " to " + file);
+            }
+            exported = true;
+        }
+        finally {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            }
+            finally {
+                if (!exported) {
+                    tmp.delete();
+                }
+            }
+        }
+        return open(file);
+    }
+    
+    private static ObjectOutputStream newSection(DataOutputStream out) throws IOException {
+        out.flush();
+        // the object stream is flushed but never closed, because closing it would close the file
+        return new ObjectOutputStream(out);
+    }
+    
+    private static int write(ObjectOutputStream oos, Object object, int count) throws IOException {
+        oos.writeObject(object);
+        count++;
+        if (count % RESET_INTERVAL == 0) {
+            oos.reset();
+        }
+        return count;
+    }
+    
+    private static Section writeSection(DataOutputStream out, int type, String form, Iterable<?> objects) throws IOException {
+        checkSize(out);
+        int offset = out.size();
+        ObjectOutputStream oos = newSection(out);
+        int count = 0;
+        for (Object object: objects) {
+            count = write(oos, object, count);
+        }
+        oos.flush();
+        checkSize(out);
+        return new Section(type, form, count, offset, out.size() - offset);
+    }
+    
+    private static void checkSize(DataOutputStream out) throws IOException {
+        if (out.size() == Integer.MAX_VALUE) {
+            // the size stops counting at 2 GB, so the offsets of the sections would be wrong
+            throw new IOException("the snapshot is larger than 2 GB");
+        }
+    }
+    
+    /**
+     * Open a snapshot that was exported before.
+     * @param file the file
+     * @return the snapshot
+     * @throws IOException if the file could not be read or is not a snapshot
+     */
+    public static MetadataSnapshot open(File file) throws IOException {
+        ByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            // the mapping stays valid after the file is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            raf.close();
+        }
+        
+        if (buffer.capacity() < 32 || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " has an unsupported version " + buffer.getInt(4));
+        }
+        long created = buffer.getLong(8);
+        long exportMillis = buffer.getLong(16);
+        int indexOffset = (int) buffer.getLong(buffer.capacity() - 8);
+        
+        DataInputStream in = new DataInputStream(new BufferInputStream(buffer, indexOffset, buffer.capacity() - 8 - indexOffset));
+        int size = in.readInt();
+        List<Section> sections = new ArrayList<Section>(size);
+        for (int i = 0; i < size; i++) {
+            int type = in.readByte();
+            String form = in.readUTF();
+            sections.add(new Section(type, form.length() > 0 ? form : null, in.readInt(), in.readInt(), in.readInt()));
+        }
+        return new MetadataSnapshot(buffer, created, exportMillis, Collections.unmodifiableList(sections));
+    }
+    
+    /**
+     * @return the time the export started, in milliseconds since the epoch
+     */
+    public long getCreated() {
+        return created;
+    }
+    
+    /**
+     * @return the duration of the export in milliseconds
+     */
+    public long getExportMillis() {
+        return exportMillis;
+    }
+    
+    /**
+     * @return the schemas
+     */
+    public Iterable<Schema> getSchemas() {
+        return objects(SCHEMA, null);
+    }
+    
+    /**
+     * @param form the name of the form
+     * @return the fields of the form, or no fields if the form is not in the snapshot
+     */
+    public Iterable<Field> getFields(String form) {
+        return objects(FIELD, form);
+    }
+    
+    /**
+     * @param form the name of the form
+     * @return the views of the form, or no views if the form is not in the snapshot
+     */
+    public Iterable<View> getViews(String form) {
+        return objects(VIEW, form);
+    }
+    
+    /**
+     * @return the active links
+     */
+    public Iterable<ActiveLink> getActiveLinks() {
+        return objects(ACTIVE_LINK, null);
+    }
+    
+    /**
+     * @return the filters
+     */
+    public Iterable<Filter> getFilters() {
+        return objects(FILTER, null);
+    }
+    
+    /**
+     * @return the escalations
+     */
+    public Iterable<Escalation> getEscalations() {
+        return objects(ESCALATION, null);
+    }
+    
+    /**
+     * @return the menus
+     */
+    public Iterable<Menu> getMenus() {
+        return objects(MENU, null);
+    }
+    
+    /**
+     * @return the containers
+     */
+    public Iterable<Container> getContainers() {
+        return objects(CONTAINER, null);
+    }
+    
+    private <T> Iterable<T> objects(int type, String form) {
+        for (final Section section: sections) {
+            if (section.type == type && (form == null ? section.form == null : form.equals(section.form))) {
+                return new Iterable<T>() {
+                    public Iterator<T> iterator() {
+                        return new SectionIterator<T>(buffer, section);
+                    }
+                };
+            }
+        }
+        return Collections.emptyList();
+    }
+    
+    /**
+     * The objects of one type, or the fields or views of one form
+     */
+    private final static class Section {
+        final int type;
+        final String form;
+        final int count;
+        final int offset;
+        final int length;
+        
+        Section(int type, String form, int count, int offset, int length) {
+            this.type = type;
+            this.form = form;
+            this.count = count;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+    
+    /**
+     * Reads the objects of a section. Each iterator has its own view of the buffer, so several threads can read the snapshot at the same time.
+     */
+    private final static class SectionIterator<T> implements Iterator<T> {
+        private final ByteBuffer buffer;
+        private final Section section;
+        private ObjectInputStream in;
+        private int read = 0;
+        
+        SectionIterator(ByteBuffer buffer, Section section) {
+            this.buffer = buffer;
+            this.section = section;
+        }
+        
+        public boolean hasNext() {
+            return read < section.count;
+        }
+        
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new IllegalStateException();
+            }
+            try {
+                if (in == null) {
+                    in = new ObjectInputStream(new BufferInputStream(buffer, section.offset, section.length));
+                }
+                read++;
+                return (T) in.readObject();
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    /**
+     * An input stream that reads a range of a buffer
+     */
+    private final static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        
+        BufferInputStream(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer.duplicate();
+            this.buffer.position(offset);
+            this.buffer.limit(offset + length);
+        }
+        
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+        
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+        
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.ActiveLinkCriteria;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.ContainerCriteria;
+import com.remedy.arsys.api.ContainerListCriteria;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryKey;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.EscalationCriteria;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldCriteria;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.FilterCriteria;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.MenuCriteria;
+import com.remedy.arsys.api.MenuListCriteria;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.SchemaCriteria;
+import com.remedy.arsys.api.SchemaListCriteria;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewCriteria;
+import com.remedy.arsys.api.ViewID;
+import com.remedy.arsys.api.ViewListCriteria;
+import com.remedy.arsys.api.WorkflowObjectListCriteria;
+
+
+/**
+ * A {@link FactoryAdapter} that measures the calls of another adapter and reports them to a {@link MetricsListener}.
+ * 
+ * @author Hugo Visser
+ */
+class MeteredFactoryAdapter implements FactoryAdapter {
+    private final FactoryAdapter delegate;
+    private final MetricsListener listener;
+    
+    MeteredFactoryAdapter(FactoryAdapter delegate, MetricsListener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+    
+    private <T> T[] completed(String operation, NameID form, long start, T[] result) {
+        listener.callCompleted(operation, form != null ? form.getValue() : null, System.nanoTime() - start, result != null ? result.length : 0, null);
+        return result;
+    }
+    
+    private ARException failed(String operation, NameID form, long start, ARException e) {
+        listener.callCompleted(operation, form != null ? form.getValue() : null, System.nanoTime() - start, 0, e);
+        return e;
+    }
+    
+    public EntryKey[] findEntryKeys(ARServerUser context, EntryListCriteria criteria, Integer matches) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findEntryKeys", criteria.getSchemaID(), start, delegate.findEntryKeys(context, criteria, matches));
+        }
+        catch (ARException e) {
+            throw failed("findEntryKeys", criteria.getSchemaID(), start, e);
+        }
+    }
+
+    public Entry[] findEntries(ARServerUser context, EntryListCriteria listCriteria, EntryCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findEntries", listCriteria.getSchemaID(), start, delegate.findEntries(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findEntries", listCriteria.getSchemaID(), start, e);
+        }
+    }
+
+    public NameID[] findActiveLinkNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findActiveLinkNames", null, start, delegate.findActiveLinkNames(context, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findActiveLinkNames", null, start, e);
+        }
+    }
+
+    public ActiveLink[] findActiveLinks(ARServerUser context, WorkflowObjectListCriteria listCriteria, ActiveLinkCriteria criteria) 
+        throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findActiveLinks", null, start, delegate.findActiveLinks(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findActiveLinks", null, start, e);
+        }
+    }
+
+    public NameID[] findFilterNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findFilterNames", null, start, delegate.findFilterNames(context, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findFilterNames", null, start, e);
+        }
+    }
+
+    public Filter[] findFilters(ARServerUser context, WorkflowObjectListCriteria listCriteria, FilterCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findFilters", null, start, delegate.findFilters(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findFilters", null, start, e);
+        }
+    }
+
+    public NameID[] findEscalationNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findEscalationNames", null, start, delegate.findEscalationNames(context, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findEscalationNames", null, start, e);
+        }
+    }
+
+    public Escalation[] findEscalations(ARServerUser context, WorkflowObjectListCriteria listCriteria, EscalationCriteria criteria) 
+        throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findEscalations", null, start, delegate.findEscalations(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findEscalations", null, start, e);
+        }
+    }
+
+    public NameID[] findSchemaNames(ARServerUser context, SchemaListCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findSchemaNames", null, start, delegate.findSchemaNames(context, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findSchemaNames", null, start, e);
+        }
+    }
+
+    public Schema[] findSchemas(ARServerUser context, SchemaListCriteria listCriteria, SchemaCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findSchemas", null, start, delegate.findSchemas(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findSchemas", null, start, e);
+        }
+    }
+
+    public NameID[] findMenuNames(ARServerUser context, MenuListCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findMenuNames", null, start, delegate.findMenuNames(context, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findMenuNames", null, start, e);
+        }
+    }
+
+    public Menu[] findMenus(ARServerUser context, MenuListCriteria listCriteria, MenuCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findMenus", null, start, delegate.findMenus(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findMenus", null, start, e);
+        }
+    }
+
+    public NameID[] findContainerNames(ARServerUser context, ContainerListCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findContainerNames", null, start, delegate.findContainerNames(context, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findContainerNames", null, start, e);
+        }
+    }
+
+    public Container[] findContainers(ARServerUser context, ContainerListCriteria listCriteria, ContainerCriteria criteria) 
+        throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findContainers", null, start, delegate.findContainers(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findContainers", null, start, e);
+        }
+    }
+
+    public FieldID[] findFieldIds(ARServerUser context, FieldListCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findFieldIds", criteria.getSchemaID(), start, delegate.findFieldIds(context, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findFieldIds", criteria.getSchemaID(), start, e);
+        }
+    }
+
+    public Field[] findFields(ARServerUser context, FieldListCriteria listCriteria, FieldCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findFields", listCriteria.getSchemaID(), start, delegate.findFields(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findFields", listCriteria.getSchemaID(), start, e);
+        }
+    }
+
+    public ViewID[] findViewIds(ARServerUser context, ViewListCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findViewIds", criteria.getSchemaID(), start, delegate.findViewIds(context, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findViewIds", criteria.getSchemaID(), start, e);
+        }
+    }
+
+    public View[] findViews(ARServerUser context, ViewListCriteria listCriteria, ViewCriteria criteria) throws ARException {
+        long start = System.nanoTime();
+        try {
+            return completed("findViews", listCriteria.getSchemaID(), start, delegate.findViews(context, listCriteria, criteria));
+        }
+        catch (ARException e) {
+            throw failed("findViews", listCriteria.getSchemaID(), start, e);
+        }
+    }
+}
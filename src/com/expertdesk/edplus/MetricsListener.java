@@ -0,0 +1,48 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+/**
+ * Receives a notification of every call that the iterators of a {@link Server} make to the AR System API factories, see 
+ * {@link Server#setMetricsListener(MetricsListener)}. {@link ServerMetrics} is a listener that aggregates the calls and publishes them 
+ * as JMX MBeans.
+ * <br />
+ * The listener is called by the thread that made the call, which may be a prefetch or pool thread, so it must be thread-safe and fast.
+ * 
+ * @author Hugo Visser
+ */
+public interface MetricsListener {
+    /**
+     * Called after a call has completed or failed.
+     * @param operation the operation, the name of the {@link FactoryAdapter} method such as "findEntries"
+     * @param form the form of the call, or null if the call is not for a form
+     * @param elapsedNanos the duration of the call in nanoseconds
+     * @param rows the number of entries, keys or objects that the call returned
+     * @param error the exception if the call failed, otherwise null
+     */
+    void callCompleted(String operation, String form, long elapsedNanos, int rows, Exception error);
+    
+    /**
+     * Called when a failed call is retried, see {@link Server#setRetryPolicy(RetryPolicy)}. The failed attempt itself is also reported 
+     * to {@link #callCompleted(String, String, long, int, Exception)}.
+     * @param operation the operation
+     * @param form the form of the call, or null if the call is not for a form
+     * @param attempt the attempt that failed, starting at 1
+     * @param error the error of the failed attempt
+     */
+    void callRetried(String operation, String form, int attempt, Exception error);
+}
@@ -0,0 +1,91 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.Set;
+
+/**
+ * The properties of server objects that can be retrieved, for instance with {@link Server#getFilters(ObjectProperty...)}. 
+ * Retrieving only the properties that are needed is much faster than retrieving complete objects, for instance when only the names and 
+ * owners of the filters are listed:
+ * <pre>
+ * for (Filter filter: server.getFilters(ObjectProperty.NAME, ObjectProperty.OWNER)) {
+ *     System.out.println(filter.getName() + " " + filter.getOwner());
+ * }
+ * </pre>
+ * The properties of workflow objects are ignored for the other object types.
+ * 
+ * @author Hugo Visser
+ */
+public enum ObjectProperty {
+    NAME,
+    /**
+     * The last changed timestamp
+     */
+    TIMESTAMP,
+    OWNER,
+    /**
+     * The user that last changed the object
+     */
+    LAST_CHANGED,
+    HELP_TEXT,
+    CHANGE_DIARY,
+    /**
+     * The run if qualification of a workflow object
+     */
+    QUALIFICATION,
+    /**
+     * The if actions of a workflow object
+     */
+    ACTIONS,
+    /**
+     * The else actions of a workflow object
+     */
+    ELSE_ACTIONS,
+    /**
+     * The enabled state of a workflow object
+     */
+    ENABLE,
+    /**
+     * The execution order of a workflow object
+     */
+    ORDER,
+    /**
+     * The forms that a workflow object is attached to
+     */
+    FORMS,
+    /**
+     * The permissions of an active link
+     */
+    PERMISSIONS;
+    
+    /**
+     * Combine the flags of the properties.
+     * @param properties the properties
+     * @param flags the flag of each property in the order of the properties, 0 for a property that does not apply
+     * @return the combined flags
+     */
+    static int toFlags(Set<ObjectProperty> properties, int[] flags) {
+        int result = 0;
+        for (ObjectProperty property: properties) {
+            if (property.ordinal() < flags.length) {
+                result |= flags[property.ordinal()];
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The metrics of one operation on one form: the number of calls, errors and retries, the number of rows that were returned and a 
+ * latency histogram. The counters are updated without locking.
+ * 
+ * @author Hugo Visser
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final static long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+    
+    private final String operation;
+    private final String form;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BOUNDS.length + 1);
+    
+    OperationMetrics(String operation, String form) {
+        this.operation = operation;
+        this.form = form;
+    }
+    
+    void record(long elapsedNanos, int rowCount, boolean failed) {
+        calls.incrementAndGet();
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        rows.addAndGet(rowCount);
+        totalNanos.addAndGet(elapsedNanos);
+        long max = maxNanos.get();
+        while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+            max = maxNanos.get();
+        }
+        long millis = elapsedNanos / 1000000;
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis >= BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+    
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+    
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the form or null if the operation is not for a form
+     */
+    public String getForm() {
+        return form;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    public double getRowsPerCall() {
+        long c = calls.get();
+        return c > 0 ? (double) rows.get() / c : 0;
+    }
+
+    public double getAverageMillis() {
+        long c = calls.get();
+        return c > 0 ? totalNanos.get() / 1000000.0 / c : 0;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1000000.0;
+    }
+
+    public long[] getHistogramBounds() {
+        return BOUNDS.clone();
+    }
+
+    public long[] getLatencyHistogram() {
+        long[] result = new long[histogram.length()];
+        for (int i=0; i < result.length; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Set all counters to 0. Calls that complete during the reset may be counted partially.
+     */
+    public void reset() {
+        calls.set(0);
+        errors.set(0);
+        retries.set(0);
+        rows.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        for (int i=0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+    }
+    
+    public String toString() {
+        return operation + (form != null ? " " + form : "") + ": " + getCalls() + " calls, " + getErrors() + " errors, " + getRetries() + " retries, " + getRows() + " rows, " 
+            + String.format("%.1f", getAverageMillis()) + " ms average";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+/**
+ * The JMX interface of {@link OperationMetrics}.
+ * 
+ * @author Hugo Visser
+ */
+public interface OperationMetricsMBean {
+    String getOperation();
+    
+    String getForm();
+    
+    long getCalls();
+    
+    long getErrors();
+    
+    /**
+     * @return the number of failed calls that were retried
+     */
+    long getRetries();
+    
+    long getRows();
+    
+    double getRowsPerCall();
+    
+    double getAverageMillis();
+    
+    double getMaxMillis();
+    
+    /**
+     * @return the upper bounds of the latency histogram buckets in milliseconds, the last bucket has no upper bound
+     */
+    long[] getHistogramBounds();
+    
+    /**
+     * @return the number of calls in each latency bucket
+     */
+    long[] getLatencyHistogram();
+    
+    void reset();
+}
@@ -0,0 +1,182 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.QualifierInfo;
+import com.remedy.arsys.api.SortInfo;
+
+/**
+ * Processes the entries of a query with a number of worker threads. The matching entries are split into windows of key chunks,
+ * each worker repeatedly takes the next window and iterates it with its own server context.
+ * 
+ * @author Hugo Visser
+ */
+final class ParallelReader {
+    private final static int MIN_WINDOW_SIZE = 100;
+    private final String form;
+    private final QualifierInfo qualifier;
+    private final long[] fieldIds;
+    private final EntryHandler handler;
+    private final FactoryAdapter factory;
+    private int windowSize;
+    private int windowCount;
+    private int nextWindow = 0;
+    private int processed = 0;
+    private Exception error;
+    
+    /**
+     * @param form the form
+     * @param qualifier the qualifier or null to iterate all entries
+     * @param fieldIds the fields to retrieve, or an empty array for all fields
+     * @param handler the handler
+     */
+    ParallelReader(String form, QualifierInfo qualifier, long[] fieldIds, EntryHandler handler, FactoryAdapter factory) {
+        this.form = form;
+        this.factory = factory;
+        this.qualifier = qualifier;
+        this.fieldIds = fieldIds;
+        this.handler = handler;
+    }
+    
+    /**
+     * Get the number of workers needed to process a number of entries, so that each worker has at least one window.
+     * @param numMatches the number of matching entries
+     * @param maxWorkers the maximum number of workers
+     * @return the number of workers
+     */
+    static int workersFor(int numMatches, int maxWorkers) {
+        return Math.max(1, Math.min(maxWorkers, (numMatches + MIN_WINDOW_SIZE - 1) / MIN_WINDOW_SIZE));
+    }
+    
+    /**
+     * Process all entries. The workers have always stopped when this method returns, also when the calling thread is interrupted,
+     * so the contexts can be used again.
+     * @param servers the servers, one worker is started for each server
+     * @param numMatches the number of matching entries
+     * @return the number of entries that were processed
+     * @throws ARException when retrieving the entries fails or the handler throws an exception
+     */
+    int run(List<Server> servers, int numMatches) throws ARException {
+        // a few windows per worker keeps the workers busy when some windows take longer than others
+        windowSize = Math.max(MIN_WINDOW_SIZE, Math.min(EntryIterator.DEFAULT_CHUNK_SIZE, numMatches / (servers.size() * 4) + 1));
+        windowCount = (numMatches + windowSize - 1) / windowSize;
+        
+        if (servers.size() == 1) {
+            work(servers.get(0));
+        }
+        else {
+            List<Thread> workers = new ArrayList<Thread>();
+            for (int i=0; i < servers.size(); i++) {
+                final Server server = servers.get(i);
+                Thread worker = new Thread("edplus-reader-" + form + "-" + i) {
+                    public void run() {
+                        work(server);
+                    }
+                };
+                worker.setDaemon(true);
+                worker.start();
+                workers.add(worker);
+            }
+            // the workers must have stopped before their contexts are returned, so an interrupt only stops them
+            boolean interrupted = false;
+            for (Thread worker : workers) {
+                while (worker.isAlive()) {
+                    try {
+                        worker.join();
+                    }
+                    catch (InterruptedException e) {
+                        fail(e);
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        synchronized (this) {
+            if (error instanceof ARException) {
+                throw (ARException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error != null) {
+                throw new RuntimeException(error);
+            }
+            return processed;
+        }
+    }
+    
+    private void work(Server server) {
+        try {
+            for (int window = takeWindow(); window >= 0; window = takeWindow()) {
+                EntryIterator itr = new EntryIterator(server.getContext(), form, qualifier);
+                // the windows must see the entries in the same order
+                itr.setSorting(new SortInfo[] {new SortInfo(new FieldID(1), SortInfo.AR_SORT_ASCENDING)});
+                if (fieldIds.length > 0) {
+                    itr.setEntryListFieldInfo(fieldIds);
+                }
+                itr.setWindow(window * windowSize, windowSize);
+                itr.setFactoryAdapter(factory);
+                int count = 0;
+                while (itr.hasNext()) {
+                    Entry entry = itr.next();
+                    handler.handle(entry);
+                    count++;
+                    if (count % 100 == 0 && isFailed()) {
+                        return;
+                    }
+                }
+                synchronized (this) {
+                    processed += count;
+                }
+            }
+        }
+        catch (ARException e) {
+            fail(e);
+        }
+        catch (RuntimeException e) {
+            // hasNext() wraps the ARException
+            fail(e.getCause() instanceof ARException ? (ARException) e.getCause() : e);
+        }
+    }
+    
+    private synchronized int takeWindow() {
+        if (error != null || nextWindow >= windowCount) {
+            return -1;
+        }
+        return nextWindow++;
+    }
+    
+    private synchronized boolean isFailed() {
+        return error != null;
+    }
+    
+    private synchronized void fail(Exception e) {
+        if (error == null) {
+            error = e;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARQualifierHelper;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ArithmeticOperationInfo;
+import com.remedy.arsys.api.ArithmeticOrRelationalOperand;
+import com.remedy.arsys.api.DataType;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.QualifierInfo;
+import com.remedy.arsys.api.RelationalOperationInfo;
+import com.remedy.arsys.api.Value;
+import com.remedy.arsys.api.View;
+
+/**
+ * A parsed qualification that can contain parameters. A parameter is a question mark outside a string or field reference, for example:
+ * <pre>
+ * '536870913' = ? AND '8' LIKE ?
+ * </pre>
+ * The values of the parameters are substituted with {@link #bind(Value...)}, which does not parse the qualification again. 
+ * A parameter can only be compared with a character field. The qualification is parsed with a character string in place of each parameter, 
+ * while the parser converts the values of selection, date, time and numeric fields to the type of the field, so use a literal value
+ * in the qualification for those fields.
+ * <br />
+ * A prepared qualification is immutable and can be used by multiple threads.
+ * 
+ * @author Hugo Visser
+ * @see Server#prepare(String, String)
+ * @see QualifierCache
+ */
+public final class PreparedQualification {
+    private final static String PARAMETER_PREFIX = "#edplus-parameter-";
+    private final String qualification;
+    private final QualifierInfo qualifier;
+    private final int parameterCount;
+    
+    private PreparedQualification(String qualification, QualifierInfo qualifier, int parameterCount) {
+        this.qualification = qualification;
+        this.qualifier = qualifier;
+        this.parameterCount = parameterCount;
+    }
+    
+    /**
+     * Parse a qualification.
+     * @param context the server context, the locale of the context is used to resolve field labels
+     * @param metadata the fields and views of the form
+     * @param qualification the qualification
+     * @return the prepared qualification
+     * @throws ARException when the qualification cannot be parsed.
+     * @throws IllegalArgumentException when a parameter is used where no value is allowed, or is not compared with a character field
+     */
+    static PreparedQualification parse(ARServerUser context, FormMetadata metadata, String qualification) throws ARException, IllegalArgumentException {
+        StringBuilder parsed = new StringBuilder(qualification.length());
+        int parameterCount = 0;
+        char quote = 0;
+        for (int i=0; i < qualification.length(); i++) {
+            char c = qualification.charAt(i);
+            if (quote == 0 && c == '?') {
+                parsed.append('"').append(PARAMETER_PREFIX).append(parameterCount++).append('"');
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                if (quote == 0) {
+                    quote = c;
+                }
+                else if (quote == c) {
+                    quote = 0;
+                }
+            }
+            parsed.append(c);
+        }
+        
+        ARQualifierHelper helper = new ARQualifierHelper();
+        View view = metadata.getView(context.getLocale());
+        helper.generateFieldMaps(metadata.getFields(), view.getVUIId().getValue() , "tag", metadata.getFields());
+        QualifierInfo qualifier = helper.getQualifier(context, parameterCount > 0 ? parsed.toString() : qualification);
+        
+        PreparedQualification prepared = new PreparedQualification(qualification, qualifier, parameterCount);
+        if (parameterCount > 0) {
+            // binding the parameters to themselves tells us if the parser kept all of them as values
+            boolean[] found = new boolean[parameterCount];
+            prepared.bind(qualifier, null, found);
+            for (int i=0; i < parameterCount; i++) {
+                if (!found[i]) {
+                    throw new IllegalArgumentException("Parameter " + (i + 1) + " is not used as a value in: " + qualification);
+                }
+            }
+            prepared.checkParameters(qualifier, metadata.getFields());
+        }
+        return prepared;
+    }
+    
+    /**
+     * @return the qualification text that this qualification was prepared from
+     */
+    public String getQualification() {
+        return qualification;
+    }
+    
+    /**
+     * @return the number of parameters in the qualification
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+    
+    /**
+     * Substitute the parameters in the qualification.
+     * @param values the values of the parameters, in the order in which the parameters appear in the qualification
+     * @return a new qualifier with the values, or the prepared qualifier if the qualification has no parameters
+     * @throws IllegalArgumentException if the number of values does not match the number of parameters
+     */
+    public QualifierInfo bind(Value... values) throws IllegalArgumentException {
+        if (values.length != parameterCount) {
+            throw new IllegalArgumentException("Expected " + parameterCount + " parameters, got " + values.length);
+        }
+        if (parameterCount == 0) {
+            return qualifier;
+        }
+        return bind(qualifier, values, null);
+    }
+    
+    private QualifierInfo bind(QualifierInfo q, Value[] values, boolean[] found) {
+        if (q == null) {
+            return null;
+        }
+        int operation = q.getOperation();
+        if (operation == QualifierInfo.AR_COND_OP_AND || operation == QualifierInfo.AR_COND_OP_OR || operation == QualifierInfo.AR_COND_OP_NOT) {
+            return new QualifierInfo(operation, bind(q.getOperand1(), values, found), bind(q.getOperand2(), values, found));
+        }
+        if (operation == QualifierInfo.AR_COND_OP_REL_OP) {
+            RelationalOperationInfo rel = q.getRelationalOperationInfo();
+            return new QualifierInfo(new RelationalOperationInfo(rel.getOperation(), bind(rel.getOperand1(), values, found), bind(rel.getOperand2(), values, found)));
+        }
+        return q;
+    }
+    
+    private ArithmeticOrRelationalOperand bind(ArithmeticOrRelationalOperand operand, Value[] values, boolean[] found) {
+        if (operand == null) {
+            return null;
+        }
+        ArithmeticOperationInfo arithmetic = operand.getArithmeticOperation();
+        if (arithmetic != null) {
+            return new ArithmeticOrRelationalOperand(new ArithmeticOperationInfo(arithmetic.getOperation(), 
+                    bind(arithmetic.getOperand1(), values, found), bind(arithmetic.getOperand2(), values, found)));
+        }
+        int index = parameterIndex(operand.getValue());
+        if (index < 0) {
+            return operand;
+        }
+        if (found != null) {
+            found[index] = true;
+            return operand;
+        }
+        return new ArithmeticOrRelationalOperand(values[index]);
+    }
+    
+    private void checkParameters(QualifierInfo q, Field[] fields) throws IllegalArgumentException {
+        if (q == null) {
+            return;
+        }
+        int operation = q.getOperation();
+        if (operation == QualifierInfo.AR_COND_OP_AND || operation == QualifierInfo.AR_COND_OP_OR || operation == QualifierInfo.AR_COND_OP_NOT) {
+            checkParameters(q.getOperand1(), fields);
+            checkParameters(q.getOperand2(), fields);
+        }
+        else if (operation == QualifierInfo.AR_COND_OP_REL_OP) {
+            RelationalOperationInfo rel = q.getRelationalOperationInfo();
+            checkParameter(rel.getOperand1(), rel.getOperand2(), fields);
+            checkParameter(rel.getOperand2(), rel.getOperand1(), fields);
+        }
+    }
+    
+    private void checkParameter(ArithmeticOrRelationalOperand operand, ArithmeticOrRelationalOperand other, Field[] fields) 
+        throws IllegalArgumentException {
+        int index = firstParameter(operand);
+        if (index < 0) {
+            return;
+        }
+        if (operand.getArithmeticOperation() != null || !isCharacterField(other, fields)) {
+            throw new IllegalArgumentException("Parameter " + (index + 1) + " is not compared with a character field in: " + qualification);
+        }
+    }
+    
+    private int firstParameter(ArithmeticOrRelationalOperand operand) {
+        if (operand == null) {
+            return -1;
+        }
+        ArithmeticOperationInfo arithmetic = operand.getArithmeticOperation();
+        if (arithmetic != null) {
+            int index = firstParameter(arithmetic.getOperand1());
+            return index >= 0 ? index : firstParameter(arithmetic.getOperand2());
+        }
+        return parameterIndex(operand.getValue());
+    }
+    
+    private static boolean isCharacterField(ArithmeticOrRelationalOperand operand, Field[] fields) {
+        if (operand == null || operand.getArithmeticOperation() != null || operand.getFieldID() == null) {
+            return false;
+        }
+        long fieldId = operand.getFieldID().getValue();
+        for (Field field : fields) {
+            if (field.getFieldID().getValue() == fieldId) {
+                return field.getDataType() == DataType.CHAR || field.getDataType() == DataType.DIARY;
+            }
+        }
+        return false;
+    }
+    
+    private int parameterIndex(Value value) {
+        if (value == null || value.getDataType() != DataType.CHAR) {
+            return -1;
+        }
+        String s = value.toString();
+        if (!s.startsWith(PARAMETER_PREFIX)) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(s.substring(PARAMETER_PREFIX.length()));
+            return index < parameterCount ? index : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+
+/**
+ * A thread-safe cache of parsed qualifications, keyed by server, form, locale and qualification text. When the cache is full, the least
+ * recently used qualifications are removed.
+ * <br />
+ * The cache is most effective for qualifications with parameters, which are the same text for every query:
+ * <pre>
+ * Server server = ...
+ * server.setQualifierCache(QualifierCache.getSharedInstance());
+ * for (Entry e : server.query("User", "'101' = ?", new Value(login))) {
+ *      // do something with e
+ * }
+ * </pre>
+ * A parsed qualification refers to the fields of the form as they were when it was parsed. When a form definition is changed, 
+ * invalidate the form with {@link #invalidate(String, String)}.
+ * 
+ * @author Hugo Visser
+ * @see PreparedQualification
+ */
+public class QualifierCache {
+    /**
+     * The default maximum number of cached qualifications
+     */
+    public final static int DEFAULT_MAX_SIZE = 2000;
+    
+    private static QualifierCache sharedInstance;
+    
+    private final LruCache<Key, PreparedQualification> cache;
+    
+    /**
+     * Create a cache with the default size
+     */
+    public QualifierCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a cache
+     * @param maxSize the maximum number of cached qualifications
+     */
+    public QualifierCache(int maxSize) {
+        this.cache = new LruCache<Key, PreparedQualification>(maxSize);
+    }
+    
+    /**
+     * Get the cache that is shared by the whole application.
+     * @return the shared cache
+     */
+    public static synchronized QualifierCache getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new QualifierCache();
+        }
+        return sharedInstance;
+    }
+    
+    /**
+     * Set the maximum number of cached qualifications
+     * @param maxSize the maximum number of cached qualifications
+     */
+    public void setMaxSize(int maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+    
+    /**
+     * Remove all qualifications for a form from the cache.
+     * @param server the server name, as returned by {@link ARServerUser#getServer()}
+     * @param form the form
+     */
+    public void invalidate(String server, String form) {
+        for (Key key : cache.keys()) {
+            if (key.server.equals(server) && key.form.equals(form)) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Remove all qualifications from the cache.
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+    
+    /**
+     * @return the number of cached qualifications
+     */
+    public int size() {
+        return cache.size();
+    }
+    
+    /**
+     * Get a parsed qualification, parsing it if it is not cached.
+     * @param context the server context
+     * @param factory the adapter that is used to retrieve the form fields and views
+     * @param form the form
+     * @param qualification the qualification
+     * @param metadataCache the cache to look up the form fields and views, or null to retrieve them from the server
+     * @return the parsed qualification
+     * @throws ARException when the form cannot be retrieved or the qualification cannot be parsed.
+     */
+    PreparedQualification get(ARServerUser context, FactoryAdapter factory, String form, String qualification, FormMetadataCache metadataCache) throws ARException {
+        Key key = new Key(context.getServer(), form, context.getLocale(), qualification);
+        PreparedQualification prepared = cache.get(key);
+        if (prepared == null) {
+            FormMetadata metadata = metadataCache != null ? metadataCache.get(context, factory, form) : FormMetadata.load(context, factory, form);
+            prepared = PreparedQualification.parse(context, metadata, qualification);
+            cache.put(key, prepared, 0);
+        }
+        return prepared;
+    }
+    
+    private static final class Key {
+        private final String server;
+        private final String form;
+        private final String locale;
+        private final String qualification;
+        
+        Key(String server, String form, String locale, String qualification) {
+            this.server = server;
+            this.form = form;
+            this.locale = locale;
+            this.qualification = qualification;
+        }
+        
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return server.equals(other.server) && form.equals(other.form) && qualification.equals(other.qualification) 
+                && (locale == null ? other.locale == null : locale.equals(other.locale));
+        }
+        
+        public int hashCode() {
+            int hash = server.hashCode();
+            hash = hash * 31 + form.hashCode();
+            hash = hash * 31 + qualification.hashCode();
+            return hash * 31 + (locale != null ? locale.hashCode() : 0);
+        }
+    }
+}
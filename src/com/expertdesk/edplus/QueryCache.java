@@ -0,0 +1,371 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryItem;
+import com.remedy.arsys.api.SortInfo;
+import com.remedy.arsys.api.Value;
+
+/**
+ * A thread-safe cache of query results, for forms with reference data that is queried far more often than it changes. The results are
+ * keyed by server, user, locale, form, qualification, parameters, fields and sorting. 
+ * <pre>
+ * QueryCache cache = new QueryCache();
+ * cache.setTimeToLive("CTM:Support Group", 300000);
+ * server.setQueryCache(cache);
+ * for (Entry group : server.query("CTM:Support Group", "'Status' = \"Enabled\"")) {
+ *     ...
+ * }
+ * </pre>
+ * A result is cached when it has been iterated to the end and has no more than the maximum result size entries, larger results are 
+ * not cached. The weight of a result is the number of field values in it, the least recently used results are removed when the total 
+ * weight is more than the maximum weight.
+ * <br />
+ * The cached entries are shared by all queries that get them from the cache, they should not be modified. The cache does not notice 
+ * changes on the server, changed results are returned until they expire or are invalidated. {@link Server#store(String, Map)},
+ * {@link Server#storeAll(String, Iterable)} and {@link Server#modifyWhere(String, String, Map)} invalidate the form they change.
+ * 
+ * @author Hugo Visser
+ */
+public class QueryCache {
+    /**
+     * The default maximum total weight, the number of cached field values
+     */
+    public final static long DEFAULT_MAX_WEIGHT = 1000000;
+    /**
+     * The default time to live of a result in milliseconds
+     */
+    public final static long DEFAULT_TTL = 60000;
+    /**
+     * The default maximum number of entries of a result that is cached
+     */
+    public final static int DEFAULT_MAX_RESULT_SIZE = 1000;
+    
+    private final LruCache<Key, List<Entry>> cache;
+    private final Map<String, Long> formTtl = new ConcurrentHashMap<String, Long>();
+    private volatile long ttl;
+    private volatile int maxResultSize = DEFAULT_MAX_RESULT_SIZE;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // incremented on every invalidation, so that a result that was retrieved before is not cached
+    private final AtomicLong generation = new AtomicLong();
+    
+    /**
+     * Create a cache with the default maximum weight and time to live
+     */
+    public QueryCache() {
+        this(DEFAULT_MAX_WEIGHT, DEFAULT_TTL);
+    }
+    
+    /**
+     * Create a cache
+     * @param maxWeight the maximum number of cached field values
+     * @param ttl the default time to live of a result in milliseconds, or 0 to keep results until they are removed or invalidated
+     */
+    public QueryCache(long maxWeight, long ttl) {
+        this.cache = new LruCache<Key, List<Entry>>(Integer.MAX_VALUE);
+        this.cache.setMaxWeight(maxWeight);
+        this.ttl = ttl;
+    }
+    
+    /**
+     * @param maxWeight the maximum number of cached field values
+     */
+    public void setMaxWeight(long maxWeight) {
+        cache.setMaxWeight(maxWeight);
+    }
+    
+    /**
+     * @param maxSize the maximum number of cached results
+     */
+    public void setMaxSize(int maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+    
+    /**
+     * @param maxResultSize the maximum number of entries of a result that is cached
+     */
+    public void setMaxResultSize(int maxResultSize) {
+        this.maxResultSize = maxResultSize;
+    }
+    
+    /**
+     * Set the default time to live, this applies to results that are cached after this call.
+     * @param ttl the time to live of a result in milliseconds, or 0 to keep results until they are removed or invalidated
+     */
+    public void setTimeToLive(long ttl) {
+        this.ttl = ttl;
+    }
+    
+    /**
+     * Set the time to live of the results of a form, this applies to results that are cached after this call.
+     * @param form the form
+     * @param ttl the time to live in milliseconds, 0 to keep results until they are removed or invalidated, 
+     * or -1 to use the default time to live
+     */
+    public void setTimeToLive(String form, long ttl) {
+        if (ttl < 0) {
+            formTtl.remove(form);
+        }
+        else {
+            formTtl.put(form, ttl);
+        }
+    }
+    
+    private long getTimeToLive(String form) {
+        Long t = formTtl.get(form);
+        return t != null ? t.longValue() : ttl;
+    }
+    
+    /**
+     * Remove all results for a form from the cache.
+     * @param server the server name, as returned by {@link ARServerUser#getServer()}
+     * @param form the form
+     */
+    public void invalidate(String server, String form) {
+        generation.incrementAndGet();
+        for (Key key : cache.keys()) {
+            if (equals(key.server, server) && key.form.equals(form)) {
+                cache.remove(key);
+            }
+        }
+    }
+    
+    /**
+     * Remove all results from the cache.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+    
+    /**
+     * @return the number of cached results
+     */
+    public int size() {
+        return cache.size();
+    }
+    
+    /**
+     * @return the number of cached field values
+     */
+    public long getWeight() {
+        return cache.weight();
+    }
+    
+    /**
+     * @return the number of queries that were answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    /**
+     * @return the number of queries that were not in the cache
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    /**
+     * @return the fraction of the queries that were answered from the cache
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0;
+    }
+    
+    /**
+     * @return the number of results that were removed because the cache was full
+     */
+    public long getEvictionCount() {
+        return cache.evictions();
+    }
+    
+    /**
+     * Set the hit and miss counts to 0
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+    
+    public String toString() {
+        return size() + " results, " + getWeight() + " values, " + getHitCount() + " hits, " + getMissCount() + " misses";
+    }
+    
+    /**
+     * Create the key of a query.
+     */
+    static Key key(ARServerUser context, String form, String qualification, Value[] parameters, long[] fieldIds, SortInfo[] sorting) {
+        StringBuilder sb = new StringBuilder();
+        if (qualification != null) {
+            sb.append(qualification);
+        }
+        sb.append('\u0000');
+        if (parameters != null) {
+            for (Value parameter : parameters) {
+                if (parameter != null && parameter.getDataType() != null) {
+                    sb.append(parameter.getDataType().toInt()).append(':').append(parameter.getValue());
+                }
+                sb.append(',');
+            }
+        }
+        sb.append('\u0000');
+        if (fieldIds != null) {
+            for (long fieldId : fieldIds) {
+                sb.append(fieldId).append(',');
+            }
+        }
+        sb.append('\u0000');
+        if (sorting != null) {
+            for (SortInfo sort : sorting) {
+                sb.append(sort.getFieldID().getValue()).append(':').append(sort.getSortOrder()).append(',');
+            }
+        }
+        return new Key(context.getServer(), context.getUser(), context.getLocale(), form, sb.toString());
+    }
+    
+    /**
+     * @param key the key of the query
+     * @return the cached result or null if the result is not cached
+     */
+    List<Entry> get(Key key) {
+        List<Entry> result = cache.get(key);
+        if (result != null) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+        }
+        return result;
+    }
+    
+    /**
+     * Wrap the entries of a query that was not in the cache, so that the result is cached when it has been iterated.
+     * @param key the key of the query
+     * @param entries the entries
+     * @return the entries
+     */
+    Iterable<Entry> record(Key key, Iterable<Entry> entries) {
+        return new RecordingIterator(key, entries.iterator());
+    }
+    
+    private void put(Key key, List<Entry> entries, long startGeneration) {
+        if (generation.get() != startGeneration) {
+            return;
+        }
+        long weight = 0;
+        for (Entry entry : entries) {
+            EntryItem[] items = entry.getEntryItems();
+            weight += items != null ? Math.max(items.length, 1) : 1;
+        }
+        cache.put(key, Collections.unmodifiableList(entries), getTimeToLive(key.form), Math.max(weight, 1));
+    }
+    
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+    
+    /**
+     * Collects the entries while they are iterated and caches them at the end
+     */
+    private final class RecordingIterator implements Iterator<Entry>, Iterable<Entry> {
+        private final Key key;
+        private final Iterator<Entry> source;
+        private final long startGeneration = generation.get();
+        private List<Entry> entries = new ArrayList<Entry>();
+        
+        RecordingIterator(Key key, Iterator<Entry> source) {
+            this.key = key;
+            this.source = source;
+        }
+        
+        public boolean hasNext() {
+            boolean hasNext = source.hasNext();
+            if (!hasNext && entries != null) {
+                put(key, entries, startGeneration);
+                entries = null;
+            }
+            return hasNext;
+        }
+
+        public Entry next() {
+            Entry entry = source.next();
+            if (entries != null) {
+                entries.add(entry);
+                if (entries.size() > maxResultSize) {
+                    entries = null;
+                }
+            }
+            return entry;
+        }
+
+        public void remove() {
+            source.remove();
+            entries = null;
+        }
+        
+        public Iterator<Entry> iterator() {
+            return this;
+        }
+    }
+    
+    static final class Key {
+        private final String server;
+        private final String user;
+        private final String locale;
+        private final String form;
+        private final String query;
+        
+        Key(String server, String user, String locale, String form, String query) {
+            this.server = server;
+            this.user = user;
+            this.locale = locale;
+            this.form = form;
+            this.query = query;
+        }
+        
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return form.equals(other.form) && query.equals(other.query) && QueryCache.equals(server, other.server) 
+                && QueryCache.equals(user, other.user) && QueryCache.equals(locale, other.locale);
+        }
+        
+        public int hashCode() {
+            int hash = form.hashCode();
+            hash = hash * 31 + query.hashCode();
+            hash = hash * 31 + (server != null ? server.hashCode() : 0);
+            hash = hash * 31 + (user != null ? user.hashCode() : 0);
+            return hash * 31 + (locale != null ? locale.hashCode() : 0);
+        }
+    }
+}
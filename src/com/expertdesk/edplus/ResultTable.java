@@ -0,0 +1,449 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.remedy.arsys.api.DataType;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryItem;
+import com.remedy.arsys.api.Timestamp;
+import com.remedy.arsys.api.Value;
+
+/**
+ * The result of a query, stored by column instead of by entry. Integer, enum and time fields are stored in primitive long arrays, 
+ * real and decimal fields in primitive double arrays, and all other fields, including date and time of day fields, as codes into 
+ * a dictionary of distinct strings. This takes a fraction of the memory of a list of entries or entry maps, and scanning a column is fast:
+ * <pre>
+ * ResultTable table = server.queryTable("HPD:Help Desk", "'Status' = \"Closed\"", 1000000161, 1000000564);
+ * ResultTable.Column group = table.getColumn(1000000161);
+ * ResultTable.Column effort = table.getColumn(1000000564);
+ * for (int row=0; row &lt; table.getRowCount(); row++) {
+ *     if (!effort.isNull(row)) {
+ *         total[group.getCode(row)] += effort.getLong(row);
+ *     }
+ * }
+ * </pre>
+ * The type of a column is taken from the first value that is not null. Decimal values are stored as doubles, which are exact up to 
+ * 15 significant digits. This class is not thread-safe.
+ * 
+ * @author Hugo Visser
+ * @see Server#queryTable(String, String, long...)
+ */
+public final class ResultTable {
+    private final static int MIN_CAPACITY = 16;
+    private final List<Column> columns = new ArrayList<Column>();
+    private final Map<Long, Column> columnsByFieldId = new HashMap<Long, Column>();
+    private final boolean allFields;
+    private String[] entryIds = new String[MIN_CAPACITY];
+    private int rowCount = 0;
+    
+    /**
+     * @param fieldIds the fields of the table, or an empty array to add a column for every field that is found in the entries
+     */
+    ResultTable(long... fieldIds) {
+        this.allFields = fieldIds.length == 0;
+        for (long fieldId : fieldIds) {
+            column(fieldId);
+        }
+    }
+    
+    /**
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    /**
+     * @param row the row
+     * @return the entry id of the row
+     */
+    public String getEntryId(int row) {
+        checkRow(row);
+        return entryIds[row];
+    }
+    
+    /**
+     * @return the columns, in the order of the field ids of the query
+     */
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+    
+    /**
+     * @param fieldId the field id
+     * @return the column of the field or null if the table has no column for the field
+     */
+    public Column getColumn(long fieldId) {
+        return columnsByFieldId.get(fieldId);
+    }
+    
+    /**
+     * Add an entry as the next row. The fields that are not in the entry are null in the row.
+     * @param entry the entry
+     */
+    void add(Entry entry) {
+        if (rowCount == entryIds.length) {
+            String[] grown = new String[entryIds.length * 2];
+            System.arraycopy(entryIds, 0, grown, 0, rowCount);
+            entryIds = grown;
+        }
+        entryIds[rowCount] = entry.getEntryID() != null ? entry.getEntryID().toString() : null;
+        EntryItem[] items = entry.getEntryItems();
+        if (items != null) {
+            for (int i=0; i < items.length; i++) {
+                long fieldId = items[i].getFieldID().getValue();
+                // the fields are usually returned in the same order for every entry
+                Column column = i < columns.size() && columns.get(i).fieldId == fieldId ? columns.get(i) : columnsByFieldId.get(fieldId);
+                if (column == null && allFields) {
+                    column = column(fieldId);
+                }
+                if (column != null) {
+                    column.set(rowCount, items[i].getValue());
+                }
+            }
+        }
+        rowCount++;
+        for (Column column : columns) {
+            column.fill(rowCount);
+        }
+    }
+    
+    private Column column(long fieldId) {
+        Column column = columnsByFieldId.get(fieldId);
+        if (column == null) {
+            column = new Column(this, fieldId);
+            column.fill(rowCount);
+            columns.add(column);
+            columnsByFieldId.put(fieldId, column);
+        }
+        return column;
+    }
+    
+    private void checkRow(int row) throws IndexOutOfBoundsException {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row " + row + ", row count " + rowCount);
+        }
+    }
+    
+    public String toString() {
+        return rowCount + " rows, " + columns.size() + " columns";
+    }
+    
+    /**
+     * A column of a {@link ResultTable}, the values of one field for all rows.
+     */
+    public static final class Column {
+        private final static int NONE = 0, LONG = 1, DOUBLE = 2, STRING = 3;
+        private final ResultTable table;
+        private final long fieldId;
+        private DataType dataType;
+        private int kind = NONE;
+        private int size = 0;
+        private long[] nulls = new long[1];
+        private long[] longs;
+        private double[] doubles;
+        private int[] codes;
+        private List<String> dictionary;
+        private Map<String, Integer> dictionaryCodes;
+        
+        Column(ResultTable table, long fieldId) {
+            this.table = table;
+            this.fieldId = fieldId;
+        }
+        
+        /**
+         * @return the field id
+         */
+        public long getFieldId() {
+            return fieldId;
+        }
+        
+        /**
+         * @return the data type of the values, or null if all values are null
+         */
+        public DataType getDataType() {
+            return dataType;
+        }
+        
+        /**
+         * @return true if the values are stored as longs, see {@link #getLong(int)}
+         */
+        public boolean isLong() {
+            return kind == LONG;
+        }
+        
+        /**
+         * @return true if the values are stored as doubles, see {@link #getDouble(int)}
+         */
+        public boolean isDouble() {
+            return kind == DOUBLE;
+        }
+        
+        /**
+         * @return true if the values are stored as dictionary codes, see {@link #getCode(int)}
+         */
+        public boolean isString() {
+            return kind == STRING;
+        }
+        
+        /**
+         * @param row the row
+         * @return true if the value is null
+         */
+        public boolean isNull(int row) {
+            table.checkRow(row);
+            return (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+        
+        /**
+         * Get a value of an integer, enum or time field. Times are in seconds since the epoch.
+         * @param row the row
+         * @return the value or 0 if the value is null
+         * @throws IllegalStateException if the values are not stored as longs
+         */
+        public long getLong(int row) throws IllegalStateException {
+            table.checkRow(row);
+            if (kind == NONE) {
+                return 0;
+            }
+            if (kind != LONG) {
+                throw new IllegalStateException("field " + fieldId + " is not an integer field");
+            }
+            return longs[row];
+        }
+        
+        /**
+         * Get a numeric value.
+         * @param row the row
+         * @return the value or 0 if the value is null
+         * @throws IllegalStateException if the values are not numeric
+         */
+        public double getDouble(int row) throws IllegalStateException {
+            table.checkRow(row);
+            switch (kind) {
+                case NONE: return 0;
+                case LONG: return longs[row];
+                case DOUBLE: return doubles[row];
+                default: throw new IllegalStateException("field " + fieldId + " is not a numeric field");
+            }
+        }
+        
+        /**
+         * Get the dictionary code of a value. Equal values have the same code, the codes are numbered from 0 in the order in which 
+         * the values were first found.
+         * @param row the row
+         * @return the code or -1 if the value is null
+         * @throws IllegalStateException if the values are not stored as dictionary codes
+         */
+        public int getCode(int row) throws IllegalStateException {
+            table.checkRow(row);
+            if (kind == NONE) {
+                return -1;
+            }
+            if (kind != STRING) {
+                throw new IllegalStateException("field " + fieldId + " is not a character field");
+            }
+            return codes[row];
+        }
+        
+        /**
+         * @return the distinct values of a column that is stored as dictionary codes, indexed by code
+         */
+        public List<String> getDictionary() {
+            return dictionary != null ? Collections.unmodifiableList(dictionary) : Collections.<String>emptyList();
+        }
+        
+        /**
+         * Get a value as a string, for any type of column.
+         * @param row the row
+         * @return the value or null if the value is null
+         */
+        public String getString(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            switch (kind) {
+                case LONG: return String.valueOf(longs[row]);
+                case DOUBLE: return String.valueOf(doubles[row]);
+                default: return dictionary.get(codes[row]);
+            }
+        }
+        
+        /**
+         * @return the sum of the values that are not null
+         * @throws IllegalStateException if the values are not numeric
+         */
+        public double sum() throws IllegalStateException {
+            int rows = table.rowCount;
+            double sum = 0;
+            switch (kind) {
+                case NONE: 
+                    return 0;
+                case LONG:
+                    for (int row=0; row < rows; row++) {
+                        sum += longs[row];
+                    }
+                    return sum;
+                case DOUBLE:
+                    for (int row=0; row < rows; row++) {
+                        sum += doubles[row];
+                    }
+                    return sum;
+                default: 
+                    throw new IllegalStateException("field " + fieldId + " is not a numeric field");
+            }
+        }
+        
+        /**
+         * @return the number of values that are null
+         */
+        public int getNullCount() {
+            int count = 0;
+            for (int i=0; i < nulls.length; i++) {
+                count += Long.bitCount(nulls[i]);
+            }
+            return count;
+        }
+        
+        public String toString() {
+            return fieldId + " (" + (kind == LONG ? "long" : kind == DOUBLE ? "double" : kind == STRING ? "string" : "null") + ")";
+        }
+        
+        /**
+         * Set the value of a row, the rows before it that were not set are null.
+         */
+        void set(int row, Value value) {
+            fill(row);
+            Object v = value != null ? value.getValue() : null;
+            DataType type = value != null ? value.getDataType() : null;
+            if (v == null || type == null || type == DataType.NULL) {
+                fill(row + 1);
+                return;
+            }
+            if (kind == NONE) {
+                init(type);
+            }
+            ensureCapacity(row + 1);
+            switch (kind) {
+                case LONG: 
+                    longs[row] = toLong(v);
+                    break;
+                case DOUBLE:
+                    doubles[row] = v instanceof Number ? ((Number) v).doubleValue() : new BigDecimal(v.toString()).doubleValue();
+                    break;
+                default:
+                    codes[row] = code(v.toString());
+            }
+            size = row + 1;
+        }
+        
+        /**
+         * Set the rows up to the given size that were not set to null.
+         */
+        void fill(int newSize) {
+            if (newSize <= size) {
+                return;
+            }
+            ensureCapacity(newSize);
+            for (int row=size; row < newSize; row++) {
+                nulls[row >>> 6] |= 1L << row;
+                if (kind == STRING) {
+                    codes[row] = -1;
+                }
+            }
+            size = newSize;
+        }
+        
+        private long toLong(Object v) throws IllegalStateException {
+            if (v instanceof Number) {
+                return ((Number) v).longValue();
+            }
+            if (v instanceof Timestamp) {
+                return ((Timestamp) v).getValue();
+            }
+            throw new IllegalStateException("field " + fieldId + " has a value that is not an integer: " + v);
+        }
+        
+        private int code(String s) {
+            Integer code = dictionaryCodes.get(s);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(s);
+                dictionaryCodes.put(s, code);
+            }
+            return code;
+        }
+        
+        private void init(DataType type) {
+            dataType = type;
+            int capacity = Math.max(MIN_CAPACITY, nulls.length * 64);
+            // the values of date and time of day fields are objects of the API, which are stored by their string value
+            if (type == DataType.INTEGER || type == DataType.ENUM || type == DataType.TIME || type == DataType.ULONG) {
+                kind = LONG;
+                longs = new long[capacity];
+            }
+            else if (type == DataType.REAL || type == DataType.DECIMAL) {
+                kind = DOUBLE;
+                doubles = new double[capacity];
+            }
+            else {
+                kind = STRING;
+                codes = new int[capacity];
+                // the rows before the first value are null
+                for (int i=0; i < size; i++) {
+                    codes[i] = -1;
+                }
+                dictionary = new ArrayList<String>();
+                dictionaryCodes = new HashMap<String, Integer>();
+            }
+        }
+        
+        private void ensureCapacity(int capacity) {
+            if (capacity > nulls.length * 64) {
+                long[] grown = new long[Math.max(nulls.length * 2, (capacity + 63) >>> 6)];
+                System.arraycopy(nulls, 0, grown, 0, nulls.length);
+                nulls = grown;
+            }
+            int length = kind == LONG ? longs.length : kind == DOUBLE ? doubles.length : kind == STRING ? codes.length : Integer.MAX_VALUE;
+            if (capacity > length) {
+                int newLength = Math.max(length * 2, capacity);
+                if (kind == LONG) {
+                    long[] grown = new long[newLength];
+                    System.arraycopy(longs, 0, grown, 0, size);
+                    longs = grown;
+                }
+                else if (kind == DOUBLE) {
+                    double[] grown = new double[newLength];
+                    System.arraycopy(doubles, 0, grown, 0, size);
+                    doubles = grown;
+                }
+                else {
+                    int[] grown = new int[newLength];
+                    System.arraycopy(codes, 0, grown, 0, size);
+                    codes = grown;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.StatusInfo;
+
+/**
+ * Decides which failed calls are retried and how long to wait before the next attempt. A call is retried when the error has one of 
+ * the retryable AR System message numbers, by default the network and timeout errors 90 to 94, until the maximum number of attempts 
+ * is reached. The delay starts at the initial delay and is multiplied for every attempt up to the maximum delay, with a random part 
+ * so that many clients that failed at the same time do not retry at the same time.
+ * <pre>
+ * RetryPolicy policy = new RetryPolicy();
+ * policy.setMaxAttempts(6);
+ * server.setRetryPolicy(policy);
+ * </pre>
+ * Only the calls that retrieve data are retried, an iterator continues at the same position after a retried call. A policy is 
+ * thread-safe and can be shared by several servers.
+ * 
+ * @author Hugo Visser
+ * @see Server#setRetryPolicy(RetryPolicy)
+ */
+public class RetryPolicy {
+    /**
+     * The default retryable errors: cannot establish a network connection (90), RPC call failed (91), timeout during database 
+     * update (92), timeout during data retrieval (93) and timeout during database query (94)
+     */
+    public final static long[] DEFAULT_RETRYABLE_ERRORS = {90, 91, 92, 93, 94};
+    private volatile long[] retryableErrors = DEFAULT_RETRYABLE_ERRORS.clone();
+    private volatile int maxAttempts = 4;
+    private volatile long initialDelay = 200;
+    private volatile long maxDelay = 10000;
+    private volatile double multiplier = 2;
+    private volatile double jitter = 0.5;
+    private final Random random = new Random();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    
+    /**
+     * @param attempts the maximum number of attempts of a call, including the first attempt. The default is 4, 1 disables retries.
+     * @throws IllegalArgumentException if attempts is less than 1
+     */
+    public void setMaxAttempts(int attempts) throws IllegalArgumentException {
+        if (attempts < 1) {
+            throw new IllegalArgumentException("attempts < 1");
+        }
+        this.maxAttempts = attempts;
+    }
+    
+    /**
+     * @param delay the delay before the first retry in milliseconds, the default is 200
+     * @param maxDelay the maximum delay in milliseconds, the default is 10000
+     * @param multiplier the factor by which the delay grows for every attempt, the default is 2
+     * @throws IllegalArgumentException if a delay is negative or the multiplier is less than 1
+     */
+    public void setDelay(long delay, long maxDelay, double multiplier) throws IllegalArgumentException {
+        if (delay < 0 || maxDelay < 0 || multiplier < 1) {
+            throw new IllegalArgumentException("delay < 0, maxDelay < 0 or multiplier < 1");
+        }
+        this.initialDelay = delay;
+        this.maxDelay = maxDelay;
+        this.multiplier = multiplier;
+    }
+    
+    /**
+     * @param jitter the fraction of the delay that is random, from 0 for a fixed delay to 1 for a delay between 0 and the computed 
+     * delay. The default is 0.5.
+     * @throws IllegalArgumentException if the jitter is not between 0 and 1
+     */
+    public void setJitter(double jitter) throws IllegalArgumentException {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.jitter = jitter;
+    }
+    
+    /**
+     * @param errors the AR System message numbers of the errors that are retried
+     * @see #DEFAULT_RETRYABLE_ERRORS
+     */
+    public void setRetryableErrors(long... errors) {
+        this.retryableErrors = errors.clone();
+    }
+    
+    /**
+     * @param error an error
+     * @return true if the error has one of the retryable message numbers
+     */
+    public boolean isRetryable(ARException error) {
+        return hasMessage(error, retryableErrors);
+    }
+    
+    /**
+     * @param error an error
+     * @param numbers message numbers
+     * @return true if the error has one of the message numbers
+     */
+    static boolean hasMessage(ARException error, long[] numbers) {
+        StatusInfo[] status = error.getLastStatus();
+        if (status == null) {
+            return false;
+        }
+        for (StatusInfo info : status) {
+            for (long number : numbers) {
+                if (info.getMessageNum() == number) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Decide whether a failed call is retried.
+     * @param attempt the attempt that failed, starting at 1
+     * @param error the error
+     * @return the delay in milliseconds before the next attempt, or -1 if the call should not be retried
+     */
+    long nextDelay(int attempt, ARException error) {
+        if (!isRetryable(error)) {
+            return -1;
+        }
+        if (attempt >= maxAttempts) {
+            exhausted.incrementAndGet();
+            return -1;
+        }
+        retries.incrementAndGet();
+        double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt - 1));
+        double r;
+        synchronized (random) {
+            r = random.nextDouble();
+        }
+        return (long) (delay * (1 - jitter * r));
+    }
+    
+    /**
+     * Wrap an adapter so that its calls are retried with this policy, for iterators that are not created by a {@link Server}:
+     * <pre>
+     * itr.setFactoryAdapter(policy.wrap(ApiFactoryAdapter.getInstance()));
+     * </pre>
+     * @param adapter the adapter
+     * @return the retrying adapter
+     */
+    public FactoryAdapter wrap(FactoryAdapter adapter) {
+        return new RetryingFactoryAdapter(adapter, this, null);
+    }
+    
+    /**
+     * @return the number of calls that were retried
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+    
+    /**
+     * @return the number of calls that failed with a retryable error after the maximum number of attempts
+     */
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+    
+    public String toString() {
+        return maxAttempts + " attempts, " + getRetryCount() + " retries, " + getExhaustedCount() + " exhausted";
+    }
+}
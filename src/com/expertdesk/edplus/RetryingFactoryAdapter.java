@@ -0,0 +1,294 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.ActiveLinkCriteria;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.ContainerCriteria;
+import com.remedy.arsys.api.ContainerListCriteria;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryKey;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.EscalationCriteria;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldCriteria;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.FilterCriteria;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.MenuCriteria;
+import com.remedy.arsys.api.MenuListCriteria;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.SchemaCriteria;
+import com.remedy.arsys.api.SchemaListCriteria;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewCriteria;
+import com.remedy.arsys.api.ViewID;
+import com.remedy.arsys.api.ViewListCriteria;
+import com.remedy.arsys.api.WorkflowObjectListCriteria;
+
+
+/**
+ * A {@link FactoryAdapter} that retries the calls of another adapter that fail with a transient error, according to a {@link RetryPolicy}.
+ * The iterators only advance after a call has succeeded, so a retried call continues the iteration at the same position.
+ * 
+ * @author Hugo Visser
+ */
+class RetryingFactoryAdapter implements FactoryAdapter {
+    private final FactoryAdapter delegate;
+    private final RetryPolicy policy;
+    private final MetricsListener listener;
+    
+    /**
+     * @param delegate the adapter that makes the calls
+     * @param policy the retry policy
+     * @param listener the listener that is notified of retries, or null
+     */
+    RetryingFactoryAdapter(FactoryAdapter delegate, RetryPolicy policy, MetricsListener listener) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.listener = listener;
+    }
+    
+    /**
+     * Wait before the next attempt of a failed call, or throw the error if the call should not be retried.
+     */
+    private void retry(String operation, NameID form, int attempt, ARException error) throws ARException {
+        long delay = policy.nextDelay(attempt, error);
+        if (delay < 0) {
+            throw error;
+        }
+        if (listener != null) {
+            listener.callRetried(operation, form != null ? form.getValue() : null, attempt, error);
+        }
+        try {
+            Thread.sleep(delay);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw error;
+        }
+    }
+    
+    public EntryKey[] findEntryKeys(ARServerUser context, EntryListCriteria criteria, Integer matches) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findEntryKeys(context, criteria, matches);
+            }
+            catch (ARException e) {
+                retry("findEntryKeys", criteria.getSchemaID(), attempt, e);
+            }
+        }
+    }
+
+    public Entry[] findEntries(ARServerUser context, EntryListCriteria listCriteria, EntryCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findEntries(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findEntries", listCriteria.getSchemaID(), attempt, e);
+            }
+        }
+    }
+
+    public NameID[] findActiveLinkNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findActiveLinkNames(context, criteria);
+            }
+            catch (ARException e) {
+                retry("findActiveLinkNames", null, attempt, e);
+            }
+        }
+    }
+
+    public ActiveLink[] findActiveLinks(ARServerUser context, WorkflowObjectListCriteria listCriteria, ActiveLinkCriteria criteria) 
+        throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findActiveLinks(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findActiveLinks", null, attempt, e);
+            }
+        }
+    }
+
+    public NameID[] findFilterNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findFilterNames(context, criteria);
+            }
+            catch (ARException e) {
+                retry("findFilterNames", null, attempt, e);
+            }
+        }
+    }
+
+    public Filter[] findFilters(ARServerUser context, WorkflowObjectListCriteria listCriteria, FilterCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findFilters(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findFilters", null, attempt, e);
+            }
+        }
+    }
+
+    public NameID[] findEscalationNames(ARServerUser context, WorkflowObjectListCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findEscalationNames(context, criteria);
+            }
+            catch (ARException e) {
+                retry("findEscalationNames", null, attempt, e);
+            }
+        }
+    }
+
+    public Escalation[] findEscalations(ARServerUser context, WorkflowObjectListCriteria listCriteria, EscalationCriteria criteria) 
+        throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findEscalations(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findEscalations", null, attempt, e);
+            }
+        }
+    }
+
+    public NameID[] findSchemaNames(ARServerUser context, SchemaListCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findSchemaNames(context, criteria);
+            }
+            catch (ARException e) {
+                retry("findSchemaNames", null, attempt, e);
+            }
+        }
+    }
+
+    public Schema[] findSchemas(ARServerUser context, SchemaListCriteria listCriteria, SchemaCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findSchemas(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findSchemas", null, attempt, e);
+            }
+        }
+    }
+
+    public NameID[] findMenuNames(ARServerUser context, MenuListCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findMenuNames(context, criteria);
+            }
+            catch (ARException e) {
+                retry("findMenuNames", null, attempt, e);
+            }
+        }
+    }
+
+    public Menu[] findMenus(ARServerUser context, MenuListCriteria listCriteria, MenuCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findMenus(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findMenus", null, attempt, e);
+            }
+        }
+    }
+
+    public NameID[] findContainerNames(ARServerUser context, ContainerListCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findContainerNames(context, criteria);
+            }
+            catch (ARException e) {
+                retry("findContainerNames", null, attempt, e);
+            }
+        }
+    }
+
+    public Container[] findContainers(ARServerUser context, ContainerListCriteria listCriteria, ContainerCriteria criteria) 
+        throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findContainers(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findContainers", null, attempt, e);
+            }
+        }
+    }
+
+    public FieldID[] findFieldIds(ARServerUser context, FieldListCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findFieldIds(context, criteria);
+            }
+            catch (ARException e) {
+                retry("findFieldIds", criteria.getSchemaID(), attempt, e);
+            }
+        }
+    }
+
+    public Field[] findFields(ARServerUser context, FieldListCriteria listCriteria, FieldCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findFields(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findFields", listCriteria.getSchemaID(), attempt, e);
+            }
+        }
+    }
+
+    public ViewID[] findViewIds(ARServerUser context, ViewListCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findViewIds(context, criteria);
+            }
+            catch (ARException e) {
+                retry("findViewIds", criteria.getSchemaID(), attempt, e);
+            }
+        }
+    }
+
+    public View[] findViews(ARServerUser context, ViewListCriteria listCriteria, ViewCriteria criteria) throws ARException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.findViews(context, listCriteria, criteria);
+            }
+            catch (ARException e) {
+                retry("findViews", listCriteria.getSchemaID(), attempt, e);
+            }
+        }
+    }
+}
@@ -1,249 +1,1307 @@
-/*
-*   Copyright 2007 Mansystems Nederland B.V.
-*
-*   Licensed under the Apache License, Version 2.0 (the "License");
-*   you may not use this file except in compliance with the License.
-*   You may obtain a copy of the License at
-*
-*       http://www.apache.org/licenses/LICENSE-2.0
-*
-*   Unless required by applicable law or agreed to in writing, software
-*   distributed under the License is distributed on an "AS IS" BASIS,
-*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-*   See the License for the specific language governing permissions and
-*   limitations under the License.
-*
-*/
-package com.expertdesk.edplus;
-
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.remedy.arsys.api.ARException;
-import com.remedy.arsys.api.ARServerUser;
-import com.remedy.arsys.api.ActiveLink;
-import com.remedy.arsys.api.Container;
-import com.remedy.arsys.api.Entry;
-import com.remedy.arsys.api.Escalation;
-import com.remedy.arsys.api.Field;
-import com.remedy.arsys.api.FieldListCriteria;
-import com.remedy.arsys.api.FieldType;
-import com.remedy.arsys.api.Filter;
-import com.remedy.arsys.api.Menu;
-import com.remedy.arsys.api.NameID;
-import com.remedy.arsys.api.Schema;
-import com.remedy.arsys.api.Util;
-import com.remedy.arsys.api.View;
-import com.remedy.arsys.api.ViewListCriteria;
-
-/**
- * The server object wraps a connection to the AR System, and is a starting point for common tasks.
- * 
- * @author Hugo Visser
- * 
- */
-public class Server {
-    private ARServerUser context;
-    private final static String LOGIN_REGEX = "(.*?)(?::(.*?))?@(.*?)(?::([0-9]+){1}(?::([0-9]+))?)?";
-    
-    /**
-     * Create a new Server object, wrapping an existing {@link ARServerUser} object
-     * @param context the context to wrap
-     */
-    public Server(ARServerUser context) {
-        this.context = context;
-    }
-    
-    /**
-     * Create a new Server from a login string. The login string must have the following format: user[:password]@server[:tcpPort[:rpcNum]].
-     * To login as user Demo on server "test" with no password use "Demo@test"
-     * @param login the login string
-     * @throws IllegalArgumentException if the login string does not match the format.
-     */
-    public Server(String login) throws IllegalArgumentException {
-        Pattern p = Pattern.compile(LOGIN_REGEX);
-        Matcher m = p.matcher(login);
-        if (!m.matches()) {
-            throw new IllegalArgumentException();
-        }
-        String user = m.group(1);
-        String pass = m.group(2);
-        String server = m.group(3);
-        int tcpPort = m.group(4) != null ? Integer.parseInt(m.group(4)) : 0;
-        int rpcNum = m.group(5) != null ? Integer.parseInt(m.group(5)) : 0;
-        this.context = new ARServerUser(user, pass, Locale.getDefault().toString(), server);
-        setPortAndQueue(tcpPort, rpcNum);
-    }
-    
-    /**
-     * Create a new Server
-     * @param user username
-     * @param password password
-     * @param authentication authentication 
-     * @param locale locale
-     * @param server server to login to
-     * @param tcpPort the tcp port or 0 to use the portmapper
-     * @param rpcNum the rpc number or 0 to use the default rpc number
-     */
-    public Server(String user, String password, String authentication, Locale locale, String server, int tcpPort, int rpcNum)
-    {
-        this.context = new ARServerUser(user, password, locale.toString(), server);
-        context.setAuthentication(authentication);
-        if (tcpPort > 0 || rpcNum > 0) {
-           setPortAndQueue(tcpPort, rpcNum);
-        }
-    }
-    /**
-     * Create a new Server for the given user, password and server combination
-     * @param user username
-     * @param password password
-     * @param server server to login to
-     */
-    public Server(String user, String password, String server) {
-        this(user, password, null, Locale.getDefault(), server, 0, 0);
-    }
-    
-    /**
-     * A convienence method to set the locale.
-     * @param locale the locale to set
-     * @see ARServerUser#setLocale(String)
-     */
-    public void setLocale(Locale locale) {
-        context.setLocale(locale.toString());
-    }
-    
-    /**
-     * A convenience method to set the authentication string.
-     * @param authentication the authentication string to set
-     * @see ARServerUser#setAuthentication(String)
-     */
-    public void setAuthentication(String authentication) {
-        context.setAuthentication(authentication);
-    }
-    
-    /**
-     * Set the TCP port number and the RPC program number for this server
-     * @param tcpPort the TCP port number
-     * @param rpcNum the RPC program or queue number
-     */
-    public void setPortAndQueue(int tcpPort, int rpcNum) {
-        try {
-            Util.ARSetServerPort(context, new NameID(context.getServer()), tcpPort, rpcNum);
-        }
-        catch (ARException e) {
-            // I've never seen an exception being thrown here
-            // So for now we wrap it in a RuntimeException
-            throw new RuntimeException(e);
-        }
-    }
-    /**
-     * Set the TCP port number for this server
-     * @param tcpPort the TCP port number
-     */
-    public void setPort(int tcpPort) {
-        setPortAndQueue(tcpPort, 0);
-    }
-        
-    /**
-     * Perform a query
-     * @param form the form to query
-     * @param qualification a qualification to use or null for no qualification
-     * @return an {@link Iterable} to iterate the entries
-     * @throws ARException
-     * @see EntryIterator
-     */
-    public Iterable<Entry> query(String form, String qualification) throws ARException {
-        EntryIterator itr = new EntryIterator(context, form, null);
-        if (qualification != null) {
-            itr.setQualification(qualification);            
-        }
-        return itr;
-    }
-
-    /**
-     * Perform a query
-     * @param form the form to query
-     * @return an {@link Iterable} to iterate the entries
-     * @throws ARException
-     */
-    public Iterable<Entry> query(String form) throws ARException {
-        return query(form, null);
-    }
-
-    /**
-     * Get a list of all active links on this server
-     * @return an {@link Iterable} that can be used to iterate the active links
-     */
-    public Iterable<ActiveLink> getActiveLinks() {
-        return ARObjectIterator.newActiveLinkIterable(context, null);
-    }
-
-    
-    /**
-     * Get a list of all filters on this server
-     * @return an {@link Iterable} that can be used to iterate the filters
-     */
-    public Iterable<Filter> getFilters() {
-        return ARObjectIterator.newFilterIterable(context, null);
-    }
-
-    /**
-     * Get a list of all escalations on this server
-     * @return an {@link Iterable} that can be used to iterate the escalations
-     */
-    public Iterable<Escalation> getEscalations() {
-        return ARObjectIterator.newEscalationIterable(context, null);        
-    }
-    
-    /**
-     * Get a list of all menus on this server
-     * @return an {@link Iterable} that can be used to iterate the menus
-     */
-    public Iterable<Menu> getMenus() {
-        return ARObjectIterator.newMenuIterable(context, null);        
-    }
-    
-    /**
-     * Get a list of all schemas (forms) on this server
-     * @return an {@link Iterable} that can be used to iterate the schemas
-     */
-    public Iterable<Schema> getSchemas() {
-        return ARObjectIterator.newSchemaIterable(context, null);        
-    }
-
-    /**
-     * Get a list of all containers (guides, packing lists, webservices etc) on this server
-     * @return an {@link Iterable} that can be used to iterate the containers
-     */
-    public Iterable<Container> getContainers() {
-        return ARObjectIterator.newContainerIterable(context, null);        
-    }
-    
-    /**
-     * Get a list of all fields on the specified form.
-     * @param form the form to return the fields for.
-     * @return an {@link Iterable} that can be used to iterate the fields
-     */
-    public Iterable<Field> getFields(String form) {
-        FieldListCriteria flc = new FieldListCriteria(new NameID(form), null, FieldType.AR_ALL_FIELD);
-        return ARObjectIterator.newFieldIterable(context, flc);
-    }
-    /**
-     * Get a list of all views on the specified form
-     * @param form the form to return the views for.
-     * @return an {@link Iterable} that can be used to iterate the views
-     */
-    public Iterable<View> getViews(String form) {
-        ViewListCriteria vlc = new ViewListCriteria(new NameID(form), null);
-        return ARObjectIterator.newViewIterable(context, vlc);
-    }
-    
-    /**
-     * Get the {@link ARServerUser} context that this server wraps.
-     * @return the {@link ARServerUser} for this server
-     */
-    public ARServerUser getContext() {
-        return context;
-    }
-}
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.Container;
+import com.remedy.arsys.api.DataType;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryID;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.Field;
+import com.remedy.arsys.api.FieldListCriteria;
+import com.remedy.arsys.api.FieldType;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.Menu;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.QualifierInfo;
+import com.remedy.arsys.api.Schema;
+import com.remedy.arsys.api.SortInfo;
+import com.remedy.arsys.api.Util;
+import com.remedy.arsys.api.Value;
+import com.remedy.arsys.api.View;
+import com.remedy.arsys.api.ViewListCriteria;
+
+/**
+ * The server object wraps a connection to the AR System, and is a starting point for common tasks.
+ * 
+ * @author Hugo Visser
+ * 
+ */
+public class Server {
+    private ARServerUser context;
+    private int prefetchDepth = 0;
+    private long keysetField = 0;
+    private FormMetadataCache metadataCache;
+    private QualifierCache qualifierCache;
+    private QueryCache queryCache;
+    private EntryBatcher batcher = new EntryBatcher();
+    // without a pool the asynchronous calls share the context of this server, so they run one at a time
+    private final AsyncExecutor async = new AsyncExecutor(1);
+    private int asyncLimit = AsyncExecutor.DEFAULT_LIMIT;
+    private ServerPool pool;
+    private int parallelism = 0;
+    private boolean ordered = true;
+    private WorkflowCache workflowCache;
+    private FactoryAdapter baseFactory = ApiFactoryAdapter.getInstance();
+    private MetricsListener metricsListener;
+    private RetryPolicy retryPolicy;
+    private ConcurrencyGovernor governor;
+    // the adapter that is used, the base adapter wrapped for metrics if a listener is set
+    private FactoryAdapter factory = baseFactory;
+    private final static String LOGIN_REGEX = "(.*?)(?::(.*?))?@(.*?)(?::([0-9]+){1}(?::([0-9]+))?)?";
+    
+    /**
+     * Create a new Server object, wrapping an existing {@link ARServerUser} object
+     * @param context the context to wrap
+     */
+    public Server(ARServerUser context) {
+        this.context = context;
+    }
+    
+    /**
+     * Create a server for a context of a pool, that combines the entries of {@link #get(String, String, long...)} with the other
+     * servers of the pool.
+     * @param context the context to wrap
+     * @param batcher the batcher of the pool
+     */
+    Server(ARServerUser context, EntryBatcher batcher) {
+        this.context = context;
+        this.batcher = batcher;
+    }
+    
+    /**
+     * Create a server that uses another context with the caches, factory adapter and query settings of a server, 
+     * to run an asynchronous call on a context that was leased from the pool.
+     * @param server the server to copy the settings from
+     * @param context the context to use
+     */
+    private Server(Server server, ARServerUser context) {
+        this.context = context;
+        this.prefetchDepth = server.prefetchDepth;
+        this.keysetField = server.keysetField;
+        this.metadataCache = server.metadataCache;
+        this.qualifierCache = server.qualifierCache;
+        this.queryCache = server.queryCache;
+        this.batcher = server.batcher;
+        this.workflowCache = server.workflowCache;
+        this.baseFactory = server.baseFactory;
+        this.metricsListener = server.metricsListener;
+        this.retryPolicy = server.retryPolicy;
+        this.governor = server.governor;
+        this.factory = server.factory;
+    }
+    
+    /**
+     * Create a new Server from a login string. The login string must have the following format: user[:password]@server[:tcpPort[:rpcNum]].
+     * To login as user Demo on server "test" with no password use "Demo@test"
+     * @param login the login string
+     * @throws IllegalArgumentException if the login string does not match the format.
+     */
+    public Server(String login) throws IllegalArgumentException {
+        this.context = createContext(login);
+    }
+    
+    /**
+     * Check a login string.
+     * @param login the login string, see {@link #Server(String)}
+     * @return true if the login string matches the format
+     */
+    static boolean isValidLogin(String login) {
+        return Pattern.matches(LOGIN_REGEX, login);
+    }
+    
+    /**
+     * Create a new {@link ARServerUser} context from a login string.
+     * @param login the login string, see {@link #Server(String)}
+     * @return the context
+     * @throws IllegalArgumentException if the login string does not match the format.
+     */
+    static ARServerUser createContext(String login) throws IllegalArgumentException {
+        Pattern p = Pattern.compile(LOGIN_REGEX);
+        Matcher m = p.matcher(login);
+        if (!m.matches()) {
+            throw new IllegalArgumentException();
+        }
+        String user = m.group(1);
+        String pass = m.group(2);
+        String server = m.group(3);
+        int tcpPort = m.group(4) != null ? Integer.parseInt(m.group(4)) : 0;
+        int rpcNum = m.group(5) != null ? Integer.parseInt(m.group(5)) : 0;
+        ARServerUser context = new ARServerUser(user, pass, Locale.getDefault().toString(), server);
+        setPortAndQueue(context, tcpPort, rpcNum);
+        return context;
+    }
+    
+    /**
+     * Create a new Server
+     * @param user username
+     * @param password password
+     * @param authentication authentication 
+     * @param locale locale
+     * @param server server to login to
+     * @param tcpPort the tcp port or 0 to use the portmapper
+     * @param rpcNum the rpc number or 0 to use the default rpc number
+     */
+    public Server(String user, String password, String authentication, Locale locale, String server, int tcpPort, int rpcNum)
+    {
+        this.context = new ARServerUser(user, password, locale.toString(), server);
+        context.setAuthentication(authentication);
+        if (tcpPort > 0 || rpcNum > 0) {
+           setPortAndQueue(tcpPort, rpcNum);
+        }
+    }
+    /**
+     * Create a new Server for the given user, password and server combination
+     * @param user username
+     * @param password password
+     * @param server server to login to
+     */
+    public Server(String user, String password, String server) {
+        this(user, password, null, Locale.getDefault(), server, 0, 0);
+    }
+    
+    /**
+     * A convienence method to set the locale.
+     * @param locale the locale to set
+     * @see ARServerUser#setLocale(String)
+     */
+    public void setLocale(Locale locale) {
+        context.setLocale(locale.toString());
+    }
+    
+    /**
+     * A convenience method to set the authentication string.
+     * @param authentication the authentication string to set
+     * @see ARServerUser#setAuthentication(String)
+     */
+    public void setAuthentication(String authentication) {
+        context.setAuthentication(authentication);
+    }
+    
+    /**
+     * Set the TCP port number and the RPC program number for this server
+     * @param tcpPort the TCP port number
+     * @param rpcNum the RPC program or queue number
+     */
+    public void setPortAndQueue(int tcpPort, int rpcNum) {
+        setPortAndQueue(context, tcpPort, rpcNum);
+    }
+    
+    private static void setPortAndQueue(ARServerUser context, int tcpPort, int rpcNum) {
+        try {
+            Util.ARSetServerPort(context, new NameID(context.getServer()), tcpPort, rpcNum);
+        }
+        catch (ARException e) {
+            // I've never seen an exception being thrown here
+            // So for now we wrap it in a RuntimeException
+            throw new RuntimeException(e);
+        }
+    }
+    /**
+     * Set the TCP port number for this server
+     * @param tcpPort the TCP port number
+     */
+    public void setPort(int tcpPort) {
+        setPortAndQueue(tcpPort, 0);
+    }
+        
+    /**
+     * Set the number of entry blocks that iterators returned by the query methods retrieve ahead in a background thread.
+     * @param depth the number of blocks to retrieve ahead, or 0 to disable prefetching (the default)
+     * @throws IllegalArgumentException if depth is negative
+     * @see EntryIterator#setPrefetchDepth(int)
+     */
+    public void setPrefetchDepth(int depth) throws IllegalArgumentException {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth is negative");
+        }
+        this.prefetchDepth = depth;
+    }
+    
+    /**
+     * Set the keyset field that iterators returned by the query methods use for paging.
+     * @param fieldId the keyset field, for example 1 for the request id, or 0 to page by position (the default)
+     * @see EntryIterator#setKeysetField(long)
+     */
+    public void setKeysetField(long fieldId) {
+        this.keysetField = fieldId;
+    }
+    
+    /**
+     * Set the cache that is used to look up the fields and views of a form when a query with a qualification is performed.
+     * @param cache the cache or null to retrieve the fields and views for every query (the default)
+     * @see FormMetadataCache#getSharedInstance()
+     */
+    public void setFormMetadataCache(FormMetadataCache cache) {
+        this.metadataCache = cache;
+    }
+    
+    /**
+     * Set the cache that is used to look up parsed qualifications when a query with a qualification is performed.
+     * @param cache the cache or null to parse the qualification for every query (the default)
+     * @see QualifierCache#getSharedInstance()
+     */
+    public void setQualifierCache(QualifierCache cache) {
+        this.qualifierCache = cache;
+    }
+    
+    /**
+     * Set the cache that the results of {@link #query(String, String, Value...)} and the other query methods are looked up in.
+     * Results that are not in the cache are cached when they have been iterated to the end. {@link #store(String, Map)}, 
+     * {@link #storeAll(String, Iterable)} and {@link #modifyWhere(String, String, Map)} invalidate the results of the form they change,
+     * other changes are not noticed.
+     * @param cache the cache or null to always query the server (the default)
+     * @see QueryCache
+     */
+    public void setQueryCache(QueryCache cache) {
+        this.queryCache = cache;
+    }
+    
+    /**
+     * Parse a qualification, so that it can be used for multiple queries. If a qualifier cache is set, the qualification is looked up in the cache.
+     * @param form the form that the qualification is for
+     * @param qualification the qualification, which may contain parameters
+     * @return the parsed qualification
+     * @throws ARException when the qualification cannot be parsed.
+     * @see PreparedQualification
+     */
+    public PreparedQualification prepare(String form, String qualification) throws ARException {
+        if (qualifierCache != null) {
+            return qualifierCache.get(context, factory, form, qualification, metadataCache);
+        }
+        FormMetadata metadata = metadataCache != null ? metadataCache.get(context, factory, form) : FormMetadata.load(context, factory, form);
+        return PreparedQualification.parse(context, metadata, qualification);
+    }
+    
+    /**
+     * Perform a query
+     * @param form the form to query
+     * @param qualification a qualification to use or null for no qualification
+     * @return an {@link Iterable} to iterate the entries
+     * @throws ARException
+     * @see EntryIterator
+     */
+    public Iterable<Entry> query(String form, String qualification) throws ARException {
+        return query(form, qualification, new Value[0]);
+    }
+
+    /**
+     * Perform a query with a qualification that contains parameters, for example:
+     * <pre>
+     * server.query("User", "'101' = ?", new Value("Bob"));
+     * </pre>
+     * @param form the form to query
+     * @param qualification a qualification to use or null for no qualification
+     * @param parameters the values of the parameters in the qualification
+     * @return an {@link Iterable} to iterate the entries
+     * @throws ARException
+     * @see PreparedQualification
+     */
+    public Iterable<Entry> query(String form, String qualification, Value... parameters) throws ARException {
+        return query(form, qualification, null, null, parameters);
+    }
+
+    /**
+     * Perform a query that retrieves some fields of the entries in a specific order.
+     * @param form the form to query
+     * @param qualification a qualification to use or null for no qualification
+     * @param fieldIds the ids of the fields to retrieve or null to retrieve all fields
+     * @param sorting the sort order or null for the default order of the form
+     * @param parameters the values of the parameters in the qualification
+     * @return an {@link Iterable} to iterate the entries
+     * @throws ARException
+     * @see #setQueryCache(QueryCache)
+     */
+    public Iterable<Entry> query(String form, String qualification, long[] fieldIds, SortInfo[] sorting, Value... parameters) throws ARException {
+        QueryCache.Key key = null;
+        if (queryCache != null) {
+            key = QueryCache.key(context, form, qualification, parameters, fieldIds, sorting);
+            List<Entry> cached = queryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        EntryIterator itr = newEntryIterator(form);
+        if (qualification != null) {
+            itr.setQualification(qualification, parameters);            
+        }
+        if (fieldIds != null) {
+            itr.setEntryListFieldInfo(fieldIds);
+        }
+        if (sorting != null) {
+            itr.setSorting(sorting);
+        }
+        return key != null ? queryCache.record(key, itr) : itr;
+    }
+
+    /**
+     * Count the entries that match a qualification. Only the number of matches is retrieved, not the entries themselves.
+     * @param form the form to query
+     * @param qualification a qualification to use or null to count all entries
+     * @param parameters the values of the parameters in the qualification
+     * @return the number of matching entries
+     * @throws ARException if the qualification cannot be parsed or the count fails
+     * @see EntryIterator#getNumMatches()
+     */
+    public int count(String form, String qualification, Value... parameters) throws ARException {
+        EntryIterator itr = newEntryIterator(form);
+        if (qualification != null) {
+            itr.setQualification(qualification, parameters);
+        }
+        return itr.getNumMatches();
+    }
+
+    /**
+     * Perform a query with a parsed qualification
+     * @param form the form to query
+     * @param qualification the parsed qualification
+     * @param parameters the values of the parameters in the qualification
+     * @return an {@link Iterable} to iterate the entries
+     * @see #prepare(String, String)
+     */
+    public Iterable<Entry> query(String form, PreparedQualification qualification, Value... parameters) {
+        QueryCache.Key key = null;
+        if (queryCache != null) {
+            key = QueryCache.key(context, form, qualification.getQualification(), parameters, null, null);
+            List<Entry> cached = queryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        EntryIterator itr = newEntryIterator(form);
+        itr.setQualification(qualification, parameters);
+        return key != null ? queryCache.record(key, itr) : itr;
+    }
+    
+    /**
+     * Get an entry by its id. Concurrent calls for the same form and fields are combined, the first caller waits for the batch delay
+     * and then retrieves the entries of all callers in one call. This makes many threads that each get single entries much cheaper.
+     * The calls are combined per server object, except that the servers leased from the same {@link ServerPool} share their batches,
+     * so request threads that each lease a server from the pool are combined as well.
+     * <pre>
+     * Entry entry = server.get("HPD:Help Desk", "INC000000000123", 1, 7, 8);
+     * </pre>
+     * @param form the form
+     * @param id the entry id
+     * @param fieldIds the fields to retrieve, or none to retrieve all fields
+     * @return the entry or null if the entry does not exist
+     * @throws ARException if the entry could not be retrieved
+     * @see #setBatchDelay(long)
+     */
+    public Entry get(String form, String id, long... fieldIds) throws ARException {
+        return batcher.get(context, factory, form, new EntryID(id), fieldIds);
+    }
+    
+    /**
+     * Get entries by their ids, in batches of at most 100 entries.
+     * @param form the form
+     * @param ids the entry ids
+     * @param fieldIds the fields to retrieve, or none to retrieve all fields
+     * @return the entries in the order of the ids, with null for the entries that do not exist
+     * @throws ARException if the entries could not be retrieved
+     */
+    public List<Entry> getMany(String form, List<String> ids, long... fieldIds) throws ARException {
+        List<EntryID> entryIds = new ArrayList<EntryID>(ids.size());
+        for (String id : ids) {
+            entryIds.add(new EntryID(id));
+        }
+        return EntryBatcher.getAll(context, factory, form, entryIds, fieldIds);
+    }
+    
+    /**
+     * Set how long the first caller of {@link #get(String, String, long...)} waits for other callers to join its batch. The servers
+     * leased from a pool share the delay, see {@link ServerPool#setBatchDelay(long)}.
+     * @param delay the delay in milliseconds, or 0 to retrieve each batch immediately. The default is 2.
+     * @throws IllegalArgumentException if the delay is negative
+     */
+    public void setBatchDelay(long delay) throws IllegalArgumentException {
+        batcher.setDelay(delay);
+    }
+    
+    /**
+     * Set the executor that runs the asynchronous methods, such as {@link #queryAsync(String, String, Value...)}. On Java 21 and later 
+     * the calls can run on virtual threads:
+     * <pre>
+     * server.setPool(new ServerPool("Demo:demopass@myserver", 64));
+     * server.setAsyncExecutor(Executors.newVirtualThreadPerTaskExecutor());
+     * server.setAsyncLimit(64);
+     * </pre>
+     * @param executor the executor or null to use a shared pool of daemon threads (the default)
+     * @see #setAsyncLimit(int)
+     */
+    public void setAsyncExecutor(Executor executor) {
+        async.setExecutor(executor);
+    }
+    
+    /**
+     * Set the maximum number of asynchronous calls of this server that run at the same time. Calls over the limit wait in a queue,
+     * without using a thread, until a running call finishes. A context must not be used by several threads at the same time, so 
+     * each call leases its own context from the pool and at most the size of the pool calls run at the same time. Without a pool 
+     * the calls run one at a time on the context of this server.
+     * @param limit the limit, the default is 8
+     * @throws IllegalArgumentException if the limit is less than 1
+     * @see #setPool(ServerPool)
+     */
+    public void setAsyncLimit(int limit) throws IllegalArgumentException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit < 1");
+        }
+        this.asyncLimit = limit;
+        updateAsyncLimit();
+    }
+    
+    private void updateAsyncLimit() {
+        ServerPool p = pool;
+        async.setLimit(p != null ? Math.min(asyncLimit, p.getMaxSize()) : 1);
+    }
+    
+    /**
+     * Run a call asynchronously, on a context from the pool if a pool is set.
+     * @param call the call
+     * @return the future result of the call
+     */
+    private <T> Future<T> submit(final AsyncCall<T> call) {
+        return async.submit(new Callable<T>() {
+            public T call() throws ARException {
+                ServerPool p = pool;
+                if (p == null) {
+                    return call.call(Server.this);
+                }
+                Server leased = p.lease();
+                try {
+                    return call.call(new Server(Server.this, leased.getContext()));
+                }
+                finally {
+                    p.release(leased);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Perform a query asynchronously, see {@link #query(String, String, Value...)}.
+     * @param form the form to query
+     * @param qualification a qualification to use or null for no qualification
+     * @param parameters the values of the parameters in the qualification
+     * @return the future list of matching entries
+     */
+    public Future<List<Entry>> queryAsync(final String form, final String qualification, final Value... parameters) {
+        return submit(new AsyncCall<List<Entry>>() {
+            List<Entry> call(Server server) throws ARException {
+                return toList(server.query(form, qualification, parameters));
+            }
+        });
+    }
+    
+    /**
+     * Count the entries that match a qualification asynchronously, see {@link #count(String, String, Value...)}.
+     * @param form the form to query
+     * @param qualification a qualification to use or null to count all entries
+     * @param parameters the values of the parameters in the qualification
+     * @return the future number of matching entries
+     */
+    public Future<Integer> countAsync(final String form, final String qualification, final Value... parameters) {
+        return submit(new AsyncCall<Integer>() {
+            Integer call(Server server) throws ARException {
+                return server.count(form, qualification, parameters);
+            }
+        });
+    }
+    
+    /**
+     * Count the entries that match each of the qualifications. When a pool is set, the counts are retrieved at the same time, each on 
+     * its own context from the pool, up to the limit of asynchronous calls. Without a pool they are retrieved one after the other.
+     * <pre>
+     * int[] counts = server.countAll("HPD:Help Desk", "'Status' = \"New\"", "'Status' = \"Assigned\"");
+     * </pre>
+     * @param form the form to query
+     * @param qualifications the qualifications, a null qualification counts all entries
+     * @return the number of matching entries for each qualification, in the same order
+     * @throws ARException if a qualification cannot be parsed or a count fails
+     * @see #setPool(ServerPool)
+     * @see #setAsyncLimit(int)
+     */
+    public int[] countAll(String form, String... qualifications) throws ARException {
+        if (pool == null) {
+            int[] counts = new int[qualifications.length];
+            for (int i=0; i < counts.length; i++) {
+                counts[i] = count(form, qualifications[i]);
+            }
+            return counts;
+        }
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(qualifications.length);
+        for (String qualification : qualifications) {
+            futures.add(countAsync(form, qualification));
+        }
+        int[] counts = new int[qualifications.length];
+        try {
+            for (int i=0; i < counts.length; i++) {
+                counts[i] = futures.get(i).get().intValue();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof ARException) {
+                throw (ARException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return counts;
+    }
+    
+    /**
+     * Get an entry by its id asynchronously, see {@link #get(String, String, long...)}. Concurrent calls are batched in the same way.
+     * @param form the form
+     * @param id the entry id
+     * @param fieldIds the fields to retrieve, or none to retrieve all fields
+     * @return the future entry, which is null if the entry does not exist
+     */
+    public Future<Entry> getAsync(final String form, final String id, final long... fieldIds) {
+        return submit(new AsyncCall<Entry>() {
+            Entry call(Server server) throws ARException {
+                return server.get(form, id, fieldIds);
+            }
+        });
+    }
+    
+    /**
+     * Store an entry asynchronously, see {@link #store(String, Map)}.
+     * @param form the form
+     * @param entry the entry, as a map of field id, value pairs
+     * @return the future id of the entry
+     */
+    public Future<String> storeAsync(final String form, final Map<Long, Value> entry) {
+        return submit(new AsyncCall<String>() {
+            String call(Server server) throws ARException {
+                return server.store(form, entry);
+            }
+        });
+    }
+    
+    /**
+     * Retrieve all active links asynchronously, see {@link #getActiveLinks()}.
+     * @return the future list of active links
+     */
+    public Future<List<ActiveLink>> getActiveLinksAsync() {
+        return submit(new AsyncCall<List<ActiveLink>>() {
+            List<ActiveLink> call(Server server) {
+                return toList(server.getActiveLinks());
+            }
+        });
+    }
+    
+    /**
+     * Retrieve all filters asynchronously, see {@link #getFilters()}.
+     * @return the future list of filters
+     */
+    public Future<List<Filter>> getFiltersAsync() {
+        return submit(new AsyncCall<List<Filter>>() {
+            List<Filter> call(Server server) {
+                return toList(server.getFilters());
+            }
+        });
+    }
+    
+    /**
+     * Retrieve all escalations asynchronously, see {@link #getEscalations()}.
+     * @return the future list of escalations
+     */
+    public Future<List<Escalation>> getEscalationsAsync() {
+        return submit(new AsyncCall<List<Escalation>>() {
+            List<Escalation> call(Server server) {
+                return toList(server.getEscalations());
+            }
+        });
+    }
+    
+    /**
+     * A call of {@link #submit(AsyncCall)}
+     */
+    private static abstract class AsyncCall<T> {
+        /**
+         * @param server the server to use, with a context from the pool if a pool is set
+         * @return the result
+         * @throws ARException
+         */
+        abstract T call(Server server) throws ARException;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        if (iterable instanceof List) {
+            return (List<T>) iterable;
+        }
+        List<T> list = new ArrayList<T>();
+        for (T object : iterable) {
+            list.add(object);
+        }
+        return list;
+    }
+    
+    /**
+     * Continue an iteration from a cursor, with the prefetch depth, caches and factory adapter of this server.
+     * @param cursor the cursor, see {@link EntryIterator#getCursor()}
+     * @return the iterator, positioned after the entry at which the cursor was taken
+     */
+    public EntryIterator resume(EntryCursor cursor) {
+        EntryIterator itr = new EntryIterator(context, cursor);
+        itr.setPrefetchDepth(prefetchDepth);
+        itr.setFormMetadataCache(metadataCache);
+        itr.setQualifierCache(qualifierCache);
+        itr.setFactoryAdapter(factory);
+        return itr;
+    }
+    
+    EntryIterator newEntryIterator(String form) {
+        EntryIterator itr = new EntryIterator(context, form, null);
+        itr.setPrefetchDepth(prefetchDepth);
+        itr.setKeysetField(keysetField);
+        itr.setFormMetadataCache(metadataCache);
+        itr.setQualifierCache(qualifierCache);
+        itr.setFactoryAdapter(factory);
+        return itr;
+    }
+
+    /**
+     * Perform a query
+     * @param form the form to query
+     * @return an {@link Iterable} to iterate the entries
+     * @throws ARException
+     */
+    public Iterable<Entry> query(String form) throws ARException {
+        return query(form, null);
+    }
+
+    /**
+     * Perform a query and store the result by column, see {@link ResultTable}. The entries are added to the table as they are retrieved,
+     * so only the current block of entries is kept in memory next to the table.
+     * @param form the form to query
+     * @param qualification a qualification to use or null for no qualification
+     * @param fieldIds the fields to retrieve, or none to retrieve all fields
+     * @return the table
+     * @throws ARException if the qualification cannot be parsed or the entries cannot be retrieved
+     */
+    public ResultTable queryTable(String form, String qualification, long... fieldIds) throws ARException {
+        EntryIterator itr = newEntryIterator(form);
+        if (qualification != null) {
+            itr.setQualification(qualification);
+        }
+        if (fieldIds.length > 0) {
+            itr.setEntryListFieldInfo(fieldIds);
+        }
+        ResultTable table = new ResultTable(fieldIds);
+        try {
+            while (itr.hasNext()) {
+                table.add(itr.next());
+            }
+        }
+        catch (RuntimeException e) {
+            if (e.getCause() instanceof ARException) {
+                throw (ARException) e.getCause();
+            }
+            throw e;
+        }
+        return table;
+    }
+    
+    /**
+     * Process all entries that match a qualification in parallel. The matching entries are split into windows, which are retrieved
+     * and handled at the same time on several contexts from the pool. The entries are sorted by request id within a window, but
+     * the handler is called from several threads, in no particular order. The windows are based on the number of matches when the
+     * method is called, entries that are added while the query is processed may not be handled.
+     * <pre>
+     * server.setPool(new ServerPool("Demo:demopass@myserver", 4));
+     * final AtomicInteger open = new AtomicInteger();
+     * server.forEach("HPD:Help Desk", "'Status' &lt; \"Resolved\"", new EntryHandler() {
+     *     public void handle(Entry entry) {
+     *         open.incrementAndGet();
+     *     }
+     * }, 1, 7);
+     * </pre>
+     * @param form the form to query
+     * @param qualification a qualification to use or null for no qualification
+     * @param handler the handler, which must be thread-safe
+     * @param fieldIds the fields to retrieve for each entry, or none to retrieve all fields
+     * @return the number of entries that have been handled
+     * @throws ARException if the query fails or the handler throws an exception, this stops all workers
+     * @see #setPool(ServerPool)
+     * @see EntryIterator#setWindow(int, int)
+     */
+    public int forEach(String form, String qualification, EntryHandler handler, long... fieldIds) throws ARException {
+        QualifierInfo qualifier = qualification != null ? prepare(form, qualification).bind() : null;
+        EntryIterator probe = new EntryIterator(context, form, qualifier);
+        probe.setWindow(0, 1);
+        probe.setFactoryAdapter(factory);
+        int numMatches = probe.getNumMatches();
+        if (numMatches <= 0) {
+            return 0;
+        }
+        List<Server> servers = leaseServers(ParallelReader.workersFor(numMatches, getParallelism()));
+        try {
+            return new ParallelReader(form, qualifier, fieldIds, handler, factory).run(servers, numMatches);
+        }
+        finally {
+            releaseServers(servers);
+        }
+    }
+    
+    /**
+     * Set the pool that operations which use several contexts at the same time, such as {@link #storeAll(String, Iterable)}, lease their contexts from.
+     * Without a pool these operations use the context of this server only.
+     * @param pool the pool or null to use only the context of this server
+     */
+    public void setPool(ServerPool pool) {
+        this.pool = pool;
+        updateAsyncLimit();
+    }
+    
+    /**
+     * @return the pool that is used for parallel operations, or null
+     */
+    public ServerPool getPool() {
+        return pool;
+    }
+    
+    /**
+     * Set the maximum number of contexts that a parallel operation uses. The default is the maximum size of the pool.
+     * @param parallelism the maximum number of contexts, or 0 to use the maximum size of the pool
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * @return the number of contexts that a parallel operation uses, which is 1 if no pool is set
+     */
+    public int getParallelism() {
+        if (pool == null) {
+            return 1;
+        }
+        return parallelism > 0 ? Math.min(parallelism, pool.getMaxSize()) : pool.getMaxSize();
+    }
+    
+    /**
+     * Set if workflow objects that are retrieved in parallel are returned in the order of their names. When false, a block of objects
+     * is returned as soon as it is retrieved, which is faster when some blocks take longer than others. The default is true.
+     * @param ordered true to return the objects in the order of their names
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+    
+    /**
+     * Set the adapter that the iterators of this server use to find entries and objects. By default the factories of the 
+     * AR System API are called directly.
+     * @param factory the adapter
+     * @throws IllegalArgumentException if factory is null
+     */
+    public void setFactoryAdapter(FactoryAdapter factory) throws IllegalArgumentException {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory is null");
+        }
+        this.baseFactory = factory;
+        updateFactory();
+    }
+    
+    /**
+     * @return the adapter that the iterators of this server use, which measures, limits and retries the calls when a metrics listener,
+     * a concurrency governor or a retry policy is set
+     */
+    public FactoryAdapter getFactoryAdapter() {
+        return factory;
+    }
+    
+    /**
+     * Set the listener that is notified of every call that the iterators of this server make to find entries and objects, 
+     * for instance a {@link ServerMetrics} to publish the metrics over JMX. Without a listener the calls are not measured at all.
+     * @param listener the listener or null to stop measuring
+     */
+    public void setMetricsListener(MetricsListener listener) {
+        this.metricsListener = listener;
+        updateFactory();
+    }
+    
+    /**
+     * @return the metrics listener or null
+     */
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+    
+    /**
+     * Set the policy for retrying calls that fail with a transient error, such as a network error or a timeout. The calls of the 
+     * iterators of this server that find entries and objects are retried, an iteration continues at the same position after a retried 
+     * call. Every retry is reported to the metrics listener.
+     * @param policy the policy or null to not retry calls (the default)
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+        updateFactory();
+    }
+    
+    /**
+     * @return the retry policy or null
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+    
+    /**
+     * Set the governor that limits the number of calls of this server that run at the same time: the calls of the iterators, the
+     * form metadata lookups and the entries stored by {@link #store(String, Map)} and {@link #storeAll(String, Iterable)}. Share the 
+     * governor between the servers, including the servers of the pool, that connect to the same AR System server.
+     * @param governor the governor or null to not limit the calls (the default)
+     * @see ConcurrencyGovernor
+     */
+    public void setConcurrencyGovernor(ConcurrencyGovernor governor) {
+        this.governor = governor;
+        updateFactory();
+    }
+    
+    /**
+     * @return the concurrency governor or null
+     */
+    public ConcurrencyGovernor getConcurrencyGovernor() {
+        return governor;
+    }
+    
+    private void updateFactory() {
+        FactoryAdapter f = metricsListener != null ? new MeteredFactoryAdapter(baseFactory, metricsListener) : baseFactory;
+        if (governor != null) {
+            f = new GovernedFactoryAdapter(f, governor);
+        }
+        // every attempt is measured separately, and a retry does not hold a slot of the governor while it waits
+        factory = retryPolicy != null ? new RetryingFactoryAdapter(f, retryPolicy, metricsListener) : f;
+    }
+    
+    /**
+     * Set the cache that {@link #getActiveLinks()}, {@link #getFilters()} and {@link #getEscalations()} use. With a cache, these methods
+     * only retrieve the objects that were changed since the previous call and return the cached objects.
+     * @param cache the cache, which should use this server, or null to always retrieve all objects
+     */
+    public void setWorkflowCache(WorkflowCache cache) {
+        this.workflowCache = cache;
+    }
+    
+    /**
+     * Store entries, using several contexts from the pool in parallel. An entry map that contains a request id (field 1) modifies
+     * the existing entry, otherwise a new entry is created. An entry that fails does not stop the operation, the failures are 
+     * reported in the result. An exception of the input stops reading and is reported as a failure. When the calling thread is 
+     * interrupted, the entries that were not stored yet are reported as cancelled, see {@link BulkResult.Failure#isCancelled()}.
+     * The contexts are returned to the pool after all workers have stopped.
+     * <pre>
+     * server.setPool(new ServerPool("Demo:demopass@myserver", 4));
+     * BulkResult result = server.storeAll("HPD:Help Desk", entryMaps);
+     * for (BulkResult.Failure failure : result.getFailures()) {
+     *     System.err.println(failure);
+     * }
+     * </pre>
+     * @param form the form
+     * @param entries the entries to store, as maps of field id, value pairs
+     * @return the result
+     * @throws ARException if the contexts could not be leased from the pool
+     * @see #setPool(ServerPool)
+     * @see #setParallelism(int)
+     */
+    public BulkResult storeAll(String form, Iterable<Map<Long, Value>> entries) throws ARException {
+        List<Server> servers = leaseServers(getParallelism());
+        try {
+            return new BulkWriter(form, servers, governor).storeAll(entries.iterator());
+        }
+        finally {
+            releaseServers(servers);
+            if (queryCache != null) {
+                queryCache.invalidate(context.getServer(), form);
+            }
+        }
+    }
+    
+    /**
+     * Store an entry. An entry map that contains a request id (field 1) modifies the existing entry, otherwise a new entry is created.
+     * @param form the form
+     * @param entry the entry, as a map of field id, value pairs
+     * @return the id of the entry
+     * @throws ARException if the entry could not be stored
+     */
+    public String store(String form, Map<Long, Value> entry) throws ARException {
+        Entry e = EntryUtil.toEntry(form, entry);
+        e.setContext(context);
+        try {
+            store(e, governor);
+        }
+        finally {
+            if (queryCache != null) {
+                queryCache.invalidate(context.getServer(), form);
+            }
+        }
+        if (e.getEntryID() != null) {
+            return e.getEntryID().toString();
+        }
+        Value id = entry.get(1L);
+        return id != null && id.getDataType() != DataType.NULL ? id.toString() : null;
+    }
+    
+    /**
+     * Store an entry within the limits of a governor. The factory adapter does not see stores, so they are governed here.
+     * @param entry the entry with its context set
+     * @param governor the governor or null to store the entry directly
+     * @throws ARException if the entry could not be stored
+     */
+    static void store(Entry entry, ConcurrencyGovernor governor) throws ARException {
+        if (governor == null) {
+            entry.store();
+            return;
+        }
+        long start = governor.acquire();
+        try {
+            entry.store();
+        }
+        catch (ARException e) {
+            governor.release("store", start, e);
+            throw e;
+        }
+        catch (RuntimeException e) {
+            governor.release();
+            throw e;
+        }
+        governor.release("store", start, null);
+    }
+    
+    /**
+     * Set fields to the same values on all entries that match a qualification, using several contexts from the pool in parallel.
+     * The ids of the matching entries are retrieved before the entries are modified, so modifying a field that is used in the 
+     * qualification does not affect which entries are modified.
+     * @param form the form
+     * @param qualification a qualification or null to modify all entries
+     * @param values the field id, value pairs to set
+     * @return the result
+     * @throws ARException if the qualification cannot be parsed, the entry ids cannot be retrieved or the contexts could not be leased
+     * @see #storeAll(String, Iterable)
+     */
+    public BulkResult modifyWhere(String form, String qualification, final Map<Long, Value> values) throws ARException {
+        EntryIterator itr = newEntryIterator(form);
+        if (qualification != null) {
+            itr.setQualification(qualification);
+        }
+        final List<EntryID> ids = itr.findEntryIds();
+        return storeAll(form, new Iterable<Map<Long, Value>>() {
+            public Iterator<Map<Long, Value>> iterator() {
+                final Iterator<EntryID> idItr = ids.iterator();
+                return new Iterator<Map<Long, Value>>() {
+                    public boolean hasNext() {
+                        return idItr.hasNext();
+                    }
+
+                    public Map<Long, Value> next() {
+                        Map<Long, Value> entry = new HashMap<Long, Value>(values);
+                        entry.put(1L, new Value(idItr.next().toString()));
+                        return entry;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        });
+    }
+    
+    /**
+     * Lease servers from the pool, or use this server if there is no pool
+     * @param count the number of servers
+     * @return the servers
+     * @throws ARException
+     */
+    List<Server> leaseServers(int count) throws ARException {
+        List<Server> servers = new ArrayList<Server>(count);
+        if (pool == null) {
+            servers.add(this);
+            return servers;
+        }
+        try {
+            for (int i=0; i < count; i++) {
+                servers.add(pool.lease());
+            }
+        }
+        catch (ARException e) {
+            releaseServers(servers);
+            throw e;
+        }
+        catch (RuntimeException e) {
+            releaseServers(servers);
+            throw e;
+        }
+        return servers;
+    }
+    
+    /**
+     * Return servers that were leased with {@link #leaseServers(int)}
+     * @param servers the servers
+     */
+    void releaseServers(List<Server> servers) {
+        if (pool != null) {
+            for (Server server : servers) {
+                pool.release(server);
+            }
+        }
+    }
+    
+    /**
+     * Get a list of all active links on this server. When a pool is set, several blocks of active links are retrieved in parallel.
+     * When a workflow cache is set, only the changed active links are retrieved, see {@link #setWorkflowCache(WorkflowCache)}.
+     * @return an {@link Iterable} that can be used to iterate the active links
+     */
+    public Iterable<ActiveLink> getActiveLinks() {
+        if (workflowCache != null) {
+            syncWorkflowCache(ActiveLink.class);
+            return workflowCache.getActiveLinks();
+        }
+        return newActiveLinkIterable();
+    }
+
+    /**
+     * Get a list of all active links on this server with only the given properties. The workflow cache is not used.
+     * @param properties the properties to retrieve
+     * @return an {@link Iterable} that can be used to iterate the active links
+     */
+    public Iterable<ActiveLink> getActiveLinks(ObjectProperty... properties) {
+        return retrieve(newActiveLinkIterable(), properties);
+    }
+    
+    /**
+     * Get a list of all filters on this server
+     * @return an {@link Iterable} that can be used to iterate the filters
+     */
+    public Iterable<Filter> getFilters() {
+        if (workflowCache != null) {
+            syncWorkflowCache(Filter.class);
+            return workflowCache.getFilters();
+        }
+        return newFilterIterable();
+    }
+
+    /**
+     * Get a list of all filters on this server with only the given properties. The workflow cache is not used.
+     * @param properties the properties to retrieve
+     * @return an {@link Iterable} that can be used to iterate the filters
+     */
+    public Iterable<Filter> getFilters(ObjectProperty... properties) {
+        return retrieve(newFilterIterable(), properties);
+    }
+
+    /**
+     * Get a list of all escalations on this server
+     * @return an {@link Iterable} that can be used to iterate the escalations
+     */
+    public Iterable<Escalation> getEscalations() {
+        if (workflowCache != null) {
+            syncWorkflowCache(Escalation.class);
+            return workflowCache.getEscalations();
+        }
+        return newEscalationIterable();        
+    }
+    
+    /**
+     * Get a list of all escalations on this server with only the given properties. The workflow cache is not used.
+     * @param properties the properties to retrieve
+     * @return an {@link Iterable} that can be used to iterate the escalations
+     */
+    public Iterable<Escalation> getEscalations(ObjectProperty... properties) {
+        return retrieve(newEscalationIterable(), properties);
+    }
+    
+    private void syncWorkflowCache(Class type) {
+        try {
+            workflowCache.sync(type);
+        }
+        catch (ARException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // the workflow objects are retrieved in blocks with contexts from the pool when a pool is set
+    private Iterable<ActiveLink> newActiveLinkIterable() {
+        if (getParallelism() > 1) {
+            return objects(ARObjectIterator.newActiveLinkIterable(context, null, pool, getParallelism(), ordered));
+        }
+        return objects(ARObjectIterator.newActiveLinkIterable(context, null));
+    }
+    
+    private Iterable<Filter> newFilterIterable() {
+        if (getParallelism() > 1) {
+            return objects(ARObjectIterator.newFilterIterable(context, null, pool, getParallelism(), ordered));
+        }
+        return objects(ARObjectIterator.newFilterIterable(context, null));
+    }
+    
+    private Iterable<Escalation> newEscalationIterable() {
+        if (getParallelism() > 1) {
+            return objects(ARObjectIterator.newEscalationIterable(context, null, pool, getParallelism(), ordered));
+        }
+        return objects(ARObjectIterator.newEscalationIterable(context, null));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> Iterable<T> retrieve(Iterable<T> objects, ObjectProperty[] properties) {
+        ((ARObjectIterator<T>) objects).setProperties(properties);
+        return objects;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <T> Iterable<T> objects(Iterable<T> objects) {
+        ((ARObjectIterator<T>) objects).setFactoryAdapter(factory);
+        return objects;
+    }
+    
+    /**
+     * Get a list of all menus on this server
+     * @return an {@link Iterable} that can be used to iterate the menus
+     */
+    public Iterable<Menu> getMenus() {
+        return objects(ARObjectIterator.newMenuIterable(context, null));        
+    }
+    
+    /**
+     * Get a list of all menus on this server with only the given properties
+     * @param properties the properties to retrieve
+     * @return an {@link Iterable} that can be used to iterate the menus
+     */
+    public Iterable<Menu> getMenus(ObjectProperty... properties) {
+        return retrieve(getMenus(), properties);
+    }
+    
+    /**
+     * Get a list of all schemas (forms) on this server
+     * @return an {@link Iterable} that can be used to iterate the schemas
+     */
+    public Iterable<Schema> getSchemas() {
+        return objects(ARObjectIterator.newSchemaIterable(context, null));        
+    }
+
+    /**
+     * Get a list of all schemas (forms) on this server with only the given properties
+     * @param properties the properties to retrieve
+     * @return an {@link Iterable} that can be used to iterate the schemas
+     */
+    public Iterable<Schema> getSchemas(ObjectProperty... properties) {
+        return retrieve(getSchemas(), properties);
+    }
+
+    /**
+     * Get a list of all containers (guides, packing lists, webservices etc) on this server
+     * @return an {@link Iterable} that can be used to iterate the containers
+     */
+    public Iterable<Container> getContainers() {
+        return objects(ARObjectIterator.newContainerIterable(context, null));        
+    }
+    
+    /**
+     * Get a list of all containers (guides, packing lists, webservices etc) on this server with only the given properties
+     * @param properties the properties to retrieve
+     * @return an {@link Iterable} that can be used to iterate the containers
+     */
+    public Iterable<Container> getContainers(ObjectProperty... properties) {
+        return retrieve(getContainers(), properties);
+    }
+    
+    /**
+     * Get a list of all fields on the specified form.
+     * @param form the form to return the fields for.
+     * @return an {@link Iterable} that can be used to iterate the fields
+     */
+    public Iterable<Field> getFields(String form) {
+        FieldListCriteria flc = new FieldListCriteria(new NameID(form), null, FieldType.AR_ALL_FIELD);
+        return objects(ARObjectIterator.newFieldIterable(context, flc));
+    }
+    
+    /**
+     * Get a list of all fields on the specified form with only the given properties.
+     * @param form the form to return the fields for.
+     * @param properties the properties to retrieve
+     * @return an {@link Iterable} that can be used to iterate the fields
+     */
+    public Iterable<Field> getFields(String form, ObjectProperty... properties) {
+        return retrieve(getFields(form), properties);
+    }
+    
+    /**
+     * Get a list of all views on the specified form
+     * @param form the form to return the views for.
+     * @return an {@link Iterable} that can be used to iterate the views
+     */
+    public Iterable<View> getViews(String form) {
+        ViewListCriteria vlc = new ViewListCriteria(new NameID(form), null);
+        return objects(ARObjectIterator.newViewIterable(context, vlc));
+    }
+    
+    /**
+     * Get a list of all views on the specified form with only the given properties
+     * @param form the form to return the views for.
+     * @param properties the properties to retrieve
+     * @return an {@link Iterable} that can be used to iterate the views
+     */
+    public Iterable<View> getViews(String form, ObjectProperty... properties) {
+        return retrieve(getViews(form), properties);
+    }
+    
+    /**
+     * Export the schemas with their fields and views, the workflow, the menus and the containers of this server to a file, that can be 
+     * read without contacting the server.
+     * @param file the file to write the snapshot to, an existing file is replaced
+     * @return the snapshot
+     * @throws ARException if the metadata could not be retrieved
+     * @throws IOException if the file could not be written
+     * @see MetadataSnapshot
+     */
+    public MetadataSnapshot exportSnapshot(File file) throws ARException, IOException {
+        return MetadataSnapshot.export(this, file);
+    }
+    
+    /**
+     * Get the {@link ARServerUser} context that this server wraps.
+     * @return the {@link ARServerUser} for this server
+     */
+    public ARServerUser getContext() {
+        return context;
+    }
+}
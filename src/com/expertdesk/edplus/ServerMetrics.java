@@ -0,0 +1,158 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link MetricsListener} that keeps the {@link OperationMetrics} of every operation and form, and can publish them as JMX MBeans:
+ * <pre>
+ * ServerMetrics metrics = new ServerMetrics();
+ * metrics.registerMBeans("production");
+ * server.setMetricsListener(metrics);
+ * </pre>
+ * The MBeans are named <code>com.expertdesk.edplus:type=OperationMetrics,server=<i>name</i>,operation=<i>operation</i>,form=<i>form</i></code>.
+ * The metrics of an operation are registered when the operation is first called. 
+ * A ServerMetrics object can be shared by several servers, for instance by the servers of a {@link ServerPool}.
+ * 
+ * @author Hugo Visser
+ */
+public class ServerMetrics implements MetricsListener {
+    private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+    private MBeanServer mbeanServer;
+    private String name;
+    
+    public void callCompleted(String operation, String form, long elapsedNanos, int rows, Exception error) {
+        getMetrics(operation, form).record(elapsedNanos, rows, error != null);
+    }
+    
+    public void callRetried(String operation, String form, int attempt, Exception error) {
+        getMetrics(operation, form).recordRetry();
+    }
+    
+    private OperationMetrics getMetrics(String operation, String form) {
+        String key = form != null ? operation + "/" + form : operation;
+        OperationMetrics metrics = operations.get(key);
+        if (metrics == null) {
+            OperationMetrics created = new OperationMetrics(operation, form);
+            metrics = operations.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+                register(created);
+            }
+        }
+        return metrics;
+    }
+    
+    /**
+     * @param operation the operation, for instance "findEntries"
+     * @param form the form or null for an operation that is not for a form
+     * @return the metrics or null if the operation has not been called
+     */
+    public OperationMetrics getOperationMetrics(String operation, String form) {
+        return operations.get(form != null ? operation + "/" + form : operation);
+    }
+    
+    /**
+     * @return the metrics of all operations that have been called
+     */
+    public List<OperationMetrics> getOperationMetrics() {
+        return new ArrayList<OperationMetrics>(operations.values());
+    }
+    
+    /**
+     * Set the counters of all operations to 0
+     */
+    public void reset() {
+        for (OperationMetrics metrics : operations.values()) {
+            metrics.reset();
+        }
+    }
+    
+    /**
+     * Register the metrics as MBeans with the platform MBean server.
+     * @param name the name of the server in the names of the MBeans
+     * @throws JMException if the MBeans could not be registered
+     * @throws IllegalStateException if the MBeans are already registered
+     */
+    public synchronized void registerMBeans(String name) throws JMException, IllegalStateException {
+        if (mbeanServer != null) {
+            throw new IllegalStateException("already registered as " + this.name);
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationMetrics metrics : operations.values()) {
+            server.registerMBean(metrics, objectName(name, metrics));
+        }
+        this.name = name;
+        this.mbeanServer = server;
+    }
+    
+    /**
+     * Unregister the MBeans, for instance when the server is no longer used.
+     * @throws JMException if the MBeans could not be unregistered
+     */
+    public synchronized void unregisterMBeans() throws JMException {
+        if (mbeanServer == null) {
+            return;
+        }
+        for (OperationMetrics metrics : operations.values()) {
+            ObjectName objectName = objectName(name, metrics);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        }
+        mbeanServer = null;
+        name = null;
+    }
+    
+    private synchronized void register(OperationMetrics metrics) {
+        if (mbeanServer != null) {
+            try {
+                mbeanServer.registerMBean(metrics, objectName(name, metrics));
+            }
+            catch (JMException e) {
+                // the metrics are still recorded, they are only not visible over JMX 
+            }
+        }
+    }
+    
+    private static ObjectName objectName(String name, OperationMetrics metrics) throws JMException {
+        StringBuilder sb = new StringBuilder("com.expertdesk.edplus:type=OperationMetrics,server=");
+        sb.append(ObjectName.quote(name));
+        sb.append(",operation=").append(metrics.getOperation());
+        if (metrics.getForm() != null) {
+            sb.append(",form=").append(ObjectName.quote(metrics.getForm()));
+        }
+        return new ObjectName(sb.toString());
+    }
+    
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (OperationMetrics metrics : operations.values()) {
+            sb.append(metrics).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,387 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.Util;
+
+/**
+ * A pool of {@link ARServerUser} contexts for the same server and user, so that several threads can work with the server concurrently
+ * without logging in for every task. A context is leased as a {@link Server}, so all methods of the {@link Server} class can be used 
+ * with it. Each leased server must be returned to the pool:
+ * <pre>
+ * ServerPool pool = new ServerPool("Demo:demopass@myserver", 5);
+ * Server server = pool.lease();
+ * try {
+ *     for (Filter filter : server.getFilters()) {
+ *         // do something with filter
+ *     }
+ * }
+ * finally {
+ *     pool.release(server);
+ * }
+ * </pre>
+ * Contexts that have been idle for longer than the maximum idle time are removed from the pool, and contexts that have been idle for 
+ * longer than the validation interval are checked with {@link ContextFactory#isValid(ARServerUser)} before they are leased again.
+ * Idle contexts are evicted when a context is leased or released, or when {@link #evictIdle()} is called.
+ * 
+ * @author Hugo Visser
+ */
+public class ServerPool {
+    /**
+     * The default time in milliseconds that {@link #lease()} waits for a context
+     */
+    public final static long DEFAULT_LEASE_TIMEOUT = 30000;
+    /**
+     * The default time in milliseconds that a context may be idle before it is removed from the pool
+     */
+    public final static long DEFAULT_MAX_IDLE_TIME = 300000;
+    /**
+     * The default time in milliseconds that a context may be idle before it is validated
+     */
+    public final static long DEFAULT_VALIDATION_INTERVAL = 60000;
+    
+    private final ContextFactory factory;
+    private final int maxSize;
+    private final LinkedList<PooledContext> idle = new LinkedList<PooledContext>();
+    private final Map<Server, PooledContext> leased = new IdentityHashMap<Server, PooledContext>();
+    // the contexts are for the same server and user, so the leased servers can combine their entry requests
+    private final EntryBatcher batcher = new EntryBatcher();
+    private int pending = 0;
+    private long leaseTimeout = DEFAULT_LEASE_TIMEOUT;
+    private long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+    private long validationInterval = DEFAULT_VALIDATION_INTERVAL;
+    private boolean closed = false;
+    
+    /**
+     * Create a new pool
+     * @param factory the factory that creates the contexts
+     * @param maxSize the maximum number of contexts in the pool
+     * @throws IllegalArgumentException if factory is null or maxSize is smaller than 1
+     */
+    public ServerPool(ContextFactory factory, int maxSize) throws IllegalArgumentException {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory is null");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * Create a new pool from a login string.
+     * @param login the login string, see {@link Server#Server(String)} for the format
+     * @param maxSize the maximum number of contexts in the pool
+     * @throws IllegalArgumentException if the login string does not match the format or maxSize is smaller than 1
+     */
+    public ServerPool(String login, int maxSize) throws IllegalArgumentException {
+        this(new LoginContextFactory(login), maxSize);
+    }
+    
+    /**
+     * Set how long the first caller of {@link Server#get(String, String, long...)} waits for other callers to join its batch. The
+     * servers leased from the pool share their batches.
+     * @param delay the delay in milliseconds, or 0 to retrieve each batch immediately. The default is 2.
+     * @throws IllegalArgumentException if the delay is negative
+     */
+    public void setBatchDelay(long delay) throws IllegalArgumentException {
+        batcher.setDelay(delay);
+    }
+    
+    /**
+     * Set the time that {@link #lease()} waits for a context when all contexts are in use.
+     * @param millis the timeout in milliseconds, default is {@link #DEFAULT_LEASE_TIMEOUT}
+     */
+    public synchronized void setLeaseTimeout(long millis) {
+        this.leaseTimeout = millis;
+    }
+    
+    /**
+     * Set the time that a context may be idle before it is removed from the pool.
+     * @param millis the maximum idle time in milliseconds, default is {@link #DEFAULT_MAX_IDLE_TIME}
+     */
+    public synchronized void setMaxIdleTime(long millis) {
+        this.maxIdleTime = millis;
+    }
+    
+    /**
+     * Set the time that a context may be idle before it is validated when it is leased.
+     * @param millis the validation interval in milliseconds, default is {@link #DEFAULT_VALIDATION_INTERVAL}. Use 0 to validate every time.
+     */
+    public synchronized void setValidationInterval(long millis) {
+        this.validationInterval = millis;
+    }
+    
+    /**
+     * Lease a context from the pool. If all contexts are in use, this method waits until a context is released or the lease timeout expires.
+     * @return a server wrapping the leased context, that should be returned with {@link #release(Server)}
+     * @throws ARException if a new context could not be created
+     * @throws IllegalStateException if no context became available within the lease timeout, or the pool is closed
+     */
+    public Server lease() throws ARException, IllegalStateException {
+        while (true) {
+            PooledContext pc = null;
+            List<PooledContext> evicted = new ArrayList<PooledContext>();
+            try {
+                synchronized (this) {
+                    long deadline = System.currentTimeMillis() + leaseTimeout;
+                    while (pc == null) {
+                        if (closed) {
+                            throw new IllegalStateException("The pool is closed");
+                        }
+                        evictIdle(System.currentTimeMillis(), evicted);
+                        if (!idle.isEmpty()) {
+                            pc = idle.removeFirst();
+                        }
+                        else if (leased.size() + pending < maxSize) {
+                            break;
+                        }
+                        else {
+                            long remaining = deadline - System.currentTimeMillis();
+                            if (remaining <= 0) {
+                                throw new IllegalStateException("No context available within " + leaseTimeout + " ms");
+                            }
+                            waitFor(remaining);
+                        }
+                    }
+                    pending++;
+                }
+            }
+            finally {
+                destroy(evicted);
+            }
+            
+            if (pc == null) {
+                pc = create();
+            }
+            else if (System.currentTimeMillis() - pc.lastUsed >= validationInterval && !validate(pc)) {
+                discard(pc);
+                continue;
+            }
+            
+            Server server = new Server(pc.context, batcher);
+            synchronized (this) {
+                pending--;
+                leased.put(server, pc);
+            }
+            return server;
+        }
+    }
+    
+    /**
+     * Return a leased server to the pool.
+     * @param server the server that was returned by {@link #lease()}
+     * @throws IllegalArgumentException if the server was not leased from this pool
+     */
+    public void release(Server server) throws IllegalArgumentException {
+        PooledContext pc;
+        List<PooledContext> evicted = new ArrayList<PooledContext>();
+        synchronized (this) {
+            pc = leased.remove(server);
+            if (pc == null) {
+                throw new IllegalArgumentException("server is not leased from this pool");
+            }
+            if (!closed) {
+                pc.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pc);
+                evictIdle(pc.lastUsed, evicted);
+                notifyAll();
+                pc = null;
+            }
+        }
+        if (pc != null) {
+            evicted.add(pc);
+        }
+        destroy(evicted);
+    }
+    
+    /**
+     * Remove a leased server from the pool without returning its context, for example when the context can no longer be used.
+     * @param server the server that was returned by {@link #lease()}
+     * @throws IllegalArgumentException if the server was not leased from this pool
+     */
+    public void invalidate(Server server) throws IllegalArgumentException {
+        PooledContext pc;
+        synchronized (this) {
+            pc = leased.remove(server);
+            if (pc == null) {
+                throw new IllegalArgumentException("server is not leased from this pool");
+            }
+            notifyAll();
+        }
+        factory.destroyContext(pc.context);
+    }
+    
+    /**
+     * Remove the contexts that have been idle for longer than the maximum idle time.
+     */
+    public void evictIdle() {
+        List<PooledContext> evicted = new ArrayList<PooledContext>();
+        synchronized (this) {
+            evictIdle(System.currentTimeMillis(), evicted);
+        }
+        destroy(evicted);
+    }
+    
+    /**
+     * Close the pool. The idle contexts are destroyed, leased contexts are destroyed when they are released.
+     */
+    public void close() {
+        List<PooledContext> contexts;
+        synchronized (this) {
+            closed = true;
+            contexts = new LinkedList<PooledContext>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        destroy(contexts);
+    }
+    
+    /**
+     * @return the maximum number of contexts in the pool
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * @return the number of contexts that are currently leased
+     */
+    public synchronized int getLeasedCount() {
+        return leased.size();
+    }
+    
+    /**
+     * @return the number of contexts that are currently idle
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+    
+    private PooledContext create() throws ARException {
+        try {
+            return new PooledContext(factory.createContext());
+        }
+        catch (ARException e) {
+            creationFailed();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            creationFailed();
+            throw e;
+        }
+    }
+    
+    private synchronized void creationFailed() {
+        pending--;
+        notifyAll();
+    }
+    
+    private boolean validate(PooledContext pc) {
+        try {
+            return factory.isValid(pc.context);
+        }
+        catch (RuntimeException e) {
+            discard(pc);
+            throw e;
+        }
+    }
+    
+    private void discard(PooledContext pc) {
+        creationFailed();
+        factory.destroyContext(pc.context);
+    }
+    
+    // must be called while holding the lock, the evicted contexts should be destroyed after the lock is released
+    private void evictIdle(long now, List<PooledContext> evicted) {
+        for (Iterator<PooledContext> itr = idle.iterator(); itr.hasNext();) {
+            PooledContext pc = itr.next();
+            if (now - pc.lastUsed > maxIdleTime) {
+                itr.remove();
+                evicted.add(pc);
+            }
+        }
+    }
+    
+    private void destroy(List<PooledContext> contexts) {
+        for (PooledContext pc : contexts) {
+            factory.destroyContext(pc.context);
+        }
+    }
+    
+    private void waitFor(long millis) {
+        try {
+            wait(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a context");
+        }
+    }
+    
+    private static final class PooledContext {
+        private final ARServerUser context;
+        private long lastUsed;
+        
+        PooledContext(ARServerUser context) {
+            this.context = context;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * Creates contexts from a login string, see {@link Server#Server(String)}.
+     */
+    private static final class LoginContextFactory implements ContextFactory {
+        private final String login;
+        
+        LoginContextFactory(String login) throws IllegalArgumentException {
+            if (!Server.isValidLogin(login)) {
+                throw new IllegalArgumentException();
+            }
+            this.login = login;
+        }
+        
+        public ARServerUser createContext() {
+            return Server.createContext(login);
+        }
+        
+        public boolean isValid(ARServerUser context) {
+            try {
+                Util.ARVerifyUser(context);
+                return true;
+            }
+            catch (ARException e) {
+                return false;
+            }
+        }
+        
+        public void destroyContext(ARServerUser context) {
+            context.clear();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARObject;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.ActiveLink;
+import com.remedy.arsys.api.Escalation;
+import com.remedy.arsys.api.Filter;
+import com.remedy.arsys.api.NameID;
+import com.remedy.arsys.api.Timestamp;
+import com.remedy.arsys.api.WorkflowObjectListCriteria;
+
+/**
+ * An in-process cache of the active links, filters and escalations of a server. The first {@link #sync()} retrieves all objects,
+ * every next sync only retrieves the objects that were changed since the previous sync and removes the objects that no longer exist. 
+ * <pre>
+ * WorkflowCache cache = new WorkflowCache(server);
+ * cache.sync();
+ * for (Filter filter: cache.getFilters()) {
+ *     ...
+ * }
+ * </pre>
+ * Changed objects are found by their last changed timestamp, deleted objects by comparing the names on the server with the cached names.
+ * Because the timestamps are set by the server, each sync looks back as far as the previous sync took, so that objects that were changed
+ * while the previous sync was running are not missed.
+ * <br />
+ * The cache can be used by several threads. The cached objects are shared, they should not be modified.
+ * When the server has a pool, the objects are retrieved in parallel, see {@link Server#setPool(ServerPool)}.
+ * 
+ * @author Hugo Visser
+ */
+public class WorkflowCache {
+    private final Server server;
+    private final Store<ActiveLink> activeLinks = new Store<ActiveLink>(ActiveLink.class);
+    private final Store<Filter> filters = new Store<Filter>(Filter.class);
+    private final Store<Escalation> escalations = new Store<Escalation>(Escalation.class);
+    
+    /**
+     * Create an empty cache
+     * @param server the server to retrieve the objects from
+     * @throws IllegalArgumentException if server is null
+     */
+    public WorkflowCache(Server server) throws IllegalArgumentException {
+        if (server == null) {
+            throw new IllegalArgumentException("server is null");
+        }
+        this.server = server;
+    }
+    
+    /**
+     * Bring the cache up to date with the server. 
+     * @return the number of objects that were retrieved or removed
+     * @throws ARException if the objects could not be retrieved, the cache keeps the objects that were retrieved until then and the next
+     * sync retrieves the changes again.
+     */
+    public synchronized int sync() throws ARException {
+        return activeLinks.sync() + filters.sync() + escalations.sync();
+    }
+    
+    // sync one type of objects only
+    synchronized void sync(Class type) throws ARException {
+        storeOf(type).sync();
+    }
+    
+    /**
+     * Fill the cache with the workflow objects of a snapshot instead of retrieving them from the server. The next sync only retrieves
+     * the objects that were changed after the snapshot was exported.
+     * @param snapshot the snapshot of the server of this cache
+     */
+    public synchronized void load(MetadataSnapshot snapshot) {
+        long exportSeconds = (snapshot.getExportMillis() + 999) / 1000;
+        activeLinks.load(snapshot.getActiveLinks(), exportSeconds);
+        filters.load(snapshot.getFilters(), exportSeconds);
+        escalations.load(snapshot.getEscalations(), exportSeconds);
+    }
+    
+    /**
+     * Remove all objects, the next sync retrieves all objects again
+     */
+    public synchronized void clear() {
+        activeLinks.clear();
+        filters.clear();
+        escalations.clear();
+    }
+    
+    /**
+     * @return the cached active links, ordered by name
+     */
+    public synchronized List<ActiveLink> getActiveLinks() {
+        return activeLinks.getObjects();
+    }
+    
+    /**
+     * @return the cached filters, ordered by name
+     */
+    public synchronized List<Filter> getFilters() {
+        return filters.getObjects();
+    }
+    
+    /**
+     * @return the cached escalations, ordered by name
+     */
+    public synchronized List<Escalation> getEscalations() {
+        return escalations.getObjects();
+    }
+    
+    /**
+     * @param name the name of the active link
+     * @return the cached active link or null if it is not in the cache
+     */
+    public synchronized ActiveLink getActiveLink(String name) {
+        return activeLinks.objects.get(name);
+    }
+    
+    /**
+     * @param name the name of the filter
+     * @return the cached filter or null if it is not in the cache
+     */
+    public synchronized Filter getFilter(String name) {
+        return filters.objects.get(name);
+    }
+    
+    /**
+     * @param name the name of the escalation
+     * @return the cached escalation or null if it is not in the cache
+     */
+    public synchronized Escalation getEscalation(String name) {
+        return escalations.objects.get(name);
+    }
+    
+    private Store storeOf(Class type) {
+        if (type == ActiveLink.class) {
+            return activeLinks;
+        }
+        if (type == Filter.class) {
+            return filters;
+        }
+        return escalations;
+    }
+    
+    /**
+     * The cached objects of one type
+     */
+    private final class Store<T extends ARObject> {
+        private final Class<T> type;
+        private final Map<String, T> objects = new TreeMap<String, T>();
+        private boolean loaded = false;
+        // the latest last changed timestamp of the cached objects in seconds
+        private long lastChanged = 0;
+        // the duration of the previous sync in seconds
+        private long lastSyncSeconds = 0;
+        
+        Store(Class<T> type) {
+            this.type = type;
+        }
+        
+        int sync() throws ARException {
+            long start = System.currentTimeMillis();
+            ARServerUser context = server.getContext();
+            NameID[] names = ARObjectIterator.findWorkflowNames(type, server.getFactoryAdapter(), context, new WorkflowObjectListCriteria());
+            int count = removeDeleted(names);
+            
+            NameID[] changed;
+            if (loaded) {
+                Map<String, NameID> fetch = new LinkedHashMap<String, NameID>();
+                WorkflowObjectListCriteria wlc = new WorkflowObjectListCriteria();
+                wlc.setModifiedAfter(new Timestamp(Math.max(lastChanged - lastSyncSeconds - 1, 0)));
+                for (NameID name: ARObjectIterator.findWorkflowNames(type, server.getFactoryAdapter(), context, wlc)) {
+                    fetch.put(name.getValue(), name);
+                }
+                // new objects can have an older timestamp, for instance when they are imported
+                for (NameID name: names) {
+                    if (!objects.containsKey(name.getValue())) {
+                        fetch.put(name.getValue(), name);
+                    }
+                }
+                changed = fetch.values().toArray(new NameID[fetch.size()]);
+            }
+            else {
+                changed = names;
+            }
+            
+            long latest = lastChanged;
+            Iterable<T> retrieved = ARObjectIterator.newWorkflowIterable(type, server.getFactoryAdapter(), context, changed, server.getPool(), 
+                    server.getParallelism(), false);
+            try {
+                for (T object: retrieved) {
+                    objects.put(object.getName().getValue(), object);
+                    if (object.getTimestamp() != null) {
+                        latest = Math.max(latest, object.getTimestamp().getValue());
+                    }
+                    count++;
+                }
+            }
+            catch (RuntimeException e) {
+                // the iterator wraps the ARException
+                if (e.getCause() instanceof ARException) {
+                    throw (ARException) e.getCause();
+                }
+                throw e;
+            }
+            lastChanged = latest;
+            lastSyncSeconds = (System.currentTimeMillis() - start + 999) / 1000;
+            loaded = true;
+            return count;
+        }
+        
+        void load(Iterable<T> snapshot, long exportSeconds) {
+            clear();
+            for (T object: snapshot) {
+                objects.put(object.getName().getValue(), object);
+                if (object.getTimestamp() != null) {
+                    lastChanged = Math.max(lastChanged, object.getTimestamp().getValue());
+                }
+            }
+            // objects that were changed during the export are retrieved again
+            lastSyncSeconds = exportSeconds;
+            loaded = true;
+        }
+        
+        private int removeDeleted(NameID[] names) {
+            Set<String> current = new HashSet<String>();
+            for (NameID name: names) {
+                current.add(name.getValue());
+            }
+            int count = 0;
+            for (Iterator<String> i = objects.keySet().iterator(); i.hasNext();) {
+                if (!current.contains(i.next())) {
+                    i.remove();
+                    count++;
+                }
+            }
+            return count;
+        }
+        
+        List<T> getObjects() {
+            return new ArrayList<T>(objects.values());
+        }
+        
+        void clear() {
+            objects.clear();
+            loaded = false;
+            lastChanged = 0;
+            lastSyncSeconds = 0;
+        }
+    }
+}
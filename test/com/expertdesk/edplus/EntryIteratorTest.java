@@ -0,0 +1,93 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+
+/**
+ * Tests that {@link EntryIterator} continues at the right entry after a failed call, with a {@link StubFactoryAdapter}.
+ *
+ * @author Hugo Visser
+ */
+public class EntryIteratorTest {
+    private static final int ENTRIES = 2500;
+
+    @Test
+    public void continuesAfterFailedBlock() throws Exception {
+        assertAllEntries(newIterator(0, 0));
+    }
+
+    @Test
+    public void continuesAfterFailedBlockWithKeyset() throws Exception {
+        assertAllEntries(newIterator(1, 0));
+    }
+
+    @Test
+    public void continuesAfterFailedPrefetch() throws Exception {
+        assertAllEntries(newIterator(0, 3));
+    }
+
+    @Test
+    public void continuesAfterFailedPrefetchWithKeyset() throws Exception {
+        assertAllEntries(newIterator(1, 3));
+    }
+
+    private static EntryIterator newIterator(long keysetField, int prefetchDepth) {
+        EntryIterator itr = new EntryIterator(new ARServerUser(), "Test");
+        StubFactoryAdapter factory = new StubFactoryAdapter(ENTRIES);
+        // the fifth block of the first chunk fails, with the rest of the chunk still to be retrieved
+        factory.failEntryCall(5);
+        itr.setFactoryAdapter(factory);
+        itr.setChunkSize(1000);
+        itr.setBlockSize(100);
+        itr.setKeysetField(keysetField);
+        itr.setPrefetchDepth(prefetchDepth);
+        return itr;
+    }
+
+    private static void assertAllEntries(EntryIterator itr) {
+        List<String> ids = new ArrayList<String>();
+        int failures = 0;
+        while (true) {
+            try {
+                if (!itr.hasNext()) {
+                    break;
+                }
+            }
+            catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof ARException);
+                failures++;
+                continue;
+            }
+            ids.add(itr.next().getEntryID().toString());
+        }
+        assertEquals(1, failures);
+        assertEquals(ENTRIES, ids.size());
+        for (int i=0; i < ENTRIES; i++) {
+            assertEquals(StubFactoryAdapter.entryId(i), ids.get(i));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.remedy.arsys.api.Value;
+
+/**
+ * Tests the probing, backward shift deletion and resizing of {@link FieldValueMap} against a {@link HashMap}.
+ *
+ * @author Hugo Visser
+ */
+public class FieldValueMapTest {
+    // the capacity of a new map
+    private static final int MASK = 15;
+
+    @Test
+    public void removeFromWrappedCluster() {
+        // three keys for the last slot and one for the first slot form a cluster that wraps around the end of the table
+        long[] last = keysForSlot(MASK, 3);
+        long first = keysForSlot(0, 1)[0];
+        long[] keys = {last[0], last[1], last[2], first};
+        for (int removed=0; removed < keys.length; removed++) {
+            FieldValueMap map = new FieldValueMap();
+            Map<Long, Value> expected = new HashMap<Long, Value>();
+            for (long key : keys) {
+                put(map, expected, key);
+            }
+            assertEquals(last[0], map.keyAt(MASK));
+            assertEquals(last[1], map.keyAt(0));
+            assertEquals(last[2], map.keyAt(1));
+            assertEquals(first, map.keyAt(2));
+            assertSame(expected.remove(keys[removed]), map.remove(keys[removed]));
+            assertSameMap(expected, map, keys);
+            // the remaining keys can be removed after they have been shifted
+            for (long key : keys) {
+                assertSame(expected.remove(key), map.remove(key));
+                assertSameMap(expected, map, keys);
+            }
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    public void putReplacesShiftedKey() {
+        long[] keys = keysForSlot(MASK, 3);
+        FieldValueMap map = new FieldValueMap();
+        Map<Long, Value> expected = new HashMap<Long, Value>();
+        for (long key : keys) {
+            put(map, expected, key);
+        }
+        map.remove(keys[0]);
+        expected.remove(keys[0]);
+        Value value = new Value("replaced");
+        assertSame(expected.put(keys[2], value), map.put(keys[2], value));
+        assertEquals(2, map.size());
+        assertSameMap(expected, map, keys);
+    }
+
+    @Test
+    public void resizeKeepsAllFields() {
+        FieldValueMap map = new FieldValueMap();
+        Map<Long, Value> expected = new HashMap<Long, Value>();
+        long[] keys = new long[1000];
+        for (int i=0; i < keys.length; i++) {
+            keys[i] = 536870912L + i * 7;
+            put(map, expected, keys[i]);
+        }
+        assertSameMap(expected, map, keys);
+        for (int i=0; i < keys.length; i += 2) {
+            assertSame(expected.remove(keys[i]), map.remove(keys[i]));
+        }
+        assertSameMap(expected, map, keys);
+    }
+
+    @Test
+    public void clearedMapCanBeReused() {
+        FieldValueMap map = new FieldValueMap(100);
+        Map<Long, Value> expected = new HashMap<Long, Value>();
+        long[] keys = new long[200];
+        for (int i=0; i < keys.length; i++) {
+            keys[i] = i + 1;
+        }
+        for (int i=0; i < 100; i++) {
+            put(map, expected, keys[i]);
+        }
+        map.clear();
+        expected.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.nextIndex(-1));
+        assertSameMap(expected, map, keys);
+        for (int i=50; i < keys.length; i++) {
+            put(map, expected, keys[i]);
+        }
+        assertSameMap(expected, map, keys);
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        FieldValueMap map = new FieldValueMap();
+        Map<Long, Value> expected = new HashMap<Long, Value>();
+        // few distinct keys, so that the table has long clusters that wrap and the keys are removed and added again
+        long[] keys = new long[48];
+        for (int i=0; i < keys.length; i++) {
+            keys[i] = i < 16 ? i : 536870912L + random.nextInt(1000000);
+        }
+        for (int i=0; i < 100000; i++) {
+            long key = keys[random.nextInt(keys.length)];
+            switch (random.nextInt(3)) {
+                case 0:
+                    put(map, expected, key);
+                    break;
+                case 1:
+                    assertSame(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertSame(expected.get(key), map.get(key));
+            }
+            if (i % 1000 == 0) {
+                assertSameMap(expected, map, keys);
+            }
+            if (i % 25000 == 0) {
+                map.clear();
+                expected.clear();
+            }
+        }
+        assertSameMap(expected, map, keys);
+    }
+
+    private static void put(FieldValueMap map, Map<Long, Value> expected, long key) {
+        Value value = new Value("value " + key);
+        assertSame(expected.put(key, value), map.put(key, value));
+    }
+
+    private static void assertSameMap(Map<Long, Value> expected, FieldValueMap map, long[] keys) {
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map.toMap());
+        for (long key : keys) {
+            assertSame(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+        int count = 0;
+        for (int i = map.nextIndex(-1); i >= 0; i = map.nextIndex(i)) {
+            assertSame(expected.get(map.keyAt(i)), map.valueAt(i));
+            count++;
+        }
+        assertEquals(expected.size(), count);
+        assertFalse(map.containsKey(-1));
+    }
+
+    /**
+     * Find keys with a home slot in a new map, with the hash of {@link FieldValueMap}. The tests check the slots the keys end up in,
+     * so they fail instead of passing without a wrapped cluster when the hash changes.
+     */
+    private static long[] keysForSlot(int slot, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 536870913L; found < count; key++) {
+            int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & MASK) == slot) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
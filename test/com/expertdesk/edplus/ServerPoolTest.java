@@ -0,0 +1,212 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the leasing, validation and eviction of {@link ServerPool} with a {@link StubContextFactory}.
+ * 
+ * @author Hugo Visser
+ */
+public class ServerPoolTest {
+    private StubContextFactory factory;
+    private ServerPool pool;
+    
+    @Before
+    public void setUp() {
+        factory = new StubContextFactory();
+        pool = new ServerPool(factory, 2);
+        factory.setPool(pool);
+    }
+    
+    @Test
+    public void reusesReleasedContext() throws Exception {
+        Server server = pool.lease();
+        pool.release(server);
+        Server again = pool.lease();
+        assertSame(server.getContext(), again.getContext());
+        assertEquals(1, factory.getCreatedCount());
+        assertEquals(1, pool.getLeasedCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+    
+    @Test
+    public void leaseTimesOutWhenAllContextsAreLeased() throws Exception {
+        pool.setLeaseTimeout(50);
+        pool.lease();
+        pool.lease();
+        long start = System.currentTimeMillis();
+        try {
+            pool.lease();
+            fail("lease should time out");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(System.currentTimeMillis() - start >= 50);
+        }
+        assertEquals(2, factory.getCreatedCount());
+    }
+    
+    @Test
+    public void leaseWaitsForRelease() throws Exception {
+        final Server first = pool.lease();
+        pool.lease();
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                pool.release(first);
+            }
+        }.start();
+        assertSame(first.getContext(), pool.lease().getContext());
+    }
+    
+    @Test
+    public void invalidContextIsReplaced() throws Exception {
+        pool.setValidationInterval(0);
+        Server server = pool.lease();
+        pool.release(server);
+        factory.setValid(false);
+        Server replaced = pool.lease();
+        assertNotSame(server.getContext(), replaced.getContext());
+        assertEquals(2, factory.getCreatedCount());
+        assertEquals(1, factory.getDestroyedCount());
+        assertEquals(1, pool.getLeasedCount());
+    }
+    
+    @Test
+    public void failedValidationDoesNotLoseCapacity() throws Exception {
+        pool.setValidationInterval(0);
+        pool.setLeaseTimeout(50);
+        pool.release(pool.lease());
+        factory.setValidationError(new IllegalStateException("validation failed"));
+        try {
+            pool.lease();
+            fail("lease should fail");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("validation failed", e.getMessage());
+        }
+        assertEquals(1, factory.getDestroyedCount());
+        factory.setValidationError(null);
+        pool.lease();
+        pool.lease();
+        assertEquals(2, pool.getLeasedCount());
+    }
+    
+    @Test
+    public void idleContextsAreEvicted() throws Exception {
+        pool.setMaxIdleTime(20);
+        Server first = pool.lease();
+        Server second = pool.lease();
+        pool.release(first);
+        pool.release(second);
+        assertEquals(2, pool.getIdleCount());
+        Thread.sleep(50);
+        pool.evictIdle();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, factory.getDestroyedCount());
+        assertFalse(factory.isDestroyedWhileLocked());
+    }
+    
+    @Test
+    public void idleContextsAreEvictedOnLease() throws Exception {
+        pool.setMaxIdleTime(20);
+        Server first = pool.lease();
+        Server second = pool.lease();
+        pool.release(first);
+        Thread.sleep(50);
+        pool.release(second);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, factory.getDestroyedCount());
+        assertSame(second.getContext(), pool.lease().getContext());
+        assertFalse(factory.isDestroyedWhileLocked());
+    }
+    
+    @Test
+    public void closeDestroysIdleAndReleasedContexts() throws Exception {
+        Server server = pool.lease();
+        pool.release(pool.lease());
+        pool.close();
+        assertEquals(1, factory.getDestroyedCount());
+        pool.release(server);
+        assertEquals(2, factory.getDestroyedCount());
+        try {
+            pool.lease();
+            fail("the pool is closed");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void leasedServersShareBatches() throws Exception {
+        final int threads = 8;
+        final ServerPool pool = new ServerPool(factory, threads);
+        final StubFactoryAdapter adapter = new StubFactoryAdapter(threads);
+        pool.setBatchDelay(500);
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i=0; i < threads; i++) {
+            final String id = StubFactoryAdapter.entryId(i);
+            Thread worker = new Thread() {
+                public void run() {
+                    try {
+                        Server server = pool.lease();
+                        try {
+                            server.setFactoryAdapter(adapter);
+                            barrier.await();
+                            assertEquals(id, server.get("Test", id).getEntryID().toString());
+                        }
+                        finally {
+                            pool.release(server);
+                        }
+                    }
+                    catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(1, adapter.getEntryCalls());
+    }
+}
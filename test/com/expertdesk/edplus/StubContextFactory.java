@@ -0,0 +1,105 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.remedy.arsys.api.ARServerUser;
+
+/**
+ * Creates contexts that are never connected and records what the pool does with them, to test a {@link ServerPool}.
+ * 
+ * @author Hugo Visser
+ */
+public class StubContextFactory implements ContextFactory {
+    private final List<ARServerUser> created = new ArrayList<ARServerUser>();
+    private final List<ARServerUser> destroyed = new ArrayList<ARServerUser>();
+    private boolean valid = true;
+    private RuntimeException validationError;
+    private ServerPool pool;
+    private boolean destroyedWhileLocked = false;
+    
+    /**
+     * Set the result of the next validations.
+     * @param valid true if the contexts are valid
+     */
+    public synchronized void setValid(boolean valid) {
+        this.valid = valid;
+    }
+    
+    /**
+     * Let the next validations fail with an exception.
+     * @param error the exception to throw or null to validate normally
+     */
+    public synchronized void setValidationError(RuntimeException error) {
+        this.validationError = error;
+    }
+    
+    /**
+     * Set the pool that uses this factory, to check that contexts are not destroyed while the pool is locked.
+     * @param pool the pool
+     */
+    public synchronized void setPool(ServerPool pool) {
+        this.pool = pool;
+    }
+    
+    public synchronized ARServerUser createContext() {
+        ARServerUser context = new ARServerUser();
+        created.add(context);
+        return context;
+    }
+
+    public synchronized boolean isValid(ARServerUser context) {
+        if (validationError != null) {
+            throw validationError;
+        }
+        return valid;
+    }
+
+    public void destroyContext(ARServerUser context) {
+        ServerPool pool;
+        synchronized (this) {
+            pool = this.pool;
+            destroyed.add(context);
+        }
+        if (pool != null && Thread.holdsLock(pool)) {
+            destroyedWhileLocked = true;
+        }
+    }
+    
+    /**
+     * @return the number of contexts that have been created
+     */
+    public synchronized int getCreatedCount() {
+        return created.size();
+    }
+    
+    /**
+     * @return the number of contexts that have been destroyed
+     */
+    public synchronized int getDestroyedCount() {
+        return destroyed.size();
+    }
+    
+    /**
+     * @return true if a context was destroyed while the pool was locked
+     */
+    public synchronized boolean isDestroyedWhileLocked() {
+        return destroyedWhileLocked;
+    }
+}
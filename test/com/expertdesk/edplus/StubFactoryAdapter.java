@@ -0,0 +1,138 @@
+/*
+*   Copyright 2007 Mansystems Nederland B.V.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*/
+package com.expertdesk.edplus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.remedy.arsys.api.ARException;
+import com.remedy.arsys.api.ARServerUser;
+import com.remedy.arsys.api.Entry;
+import com.remedy.arsys.api.EntryCriteria;
+import com.remedy.arsys.api.EntryFactory;
+import com.remedy.arsys.api.EntryID;
+import com.remedy.arsys.api.EntryItem;
+import com.remedy.arsys.api.EntryKey;
+import com.remedy.arsys.api.EntryListCriteria;
+import com.remedy.arsys.api.FieldID;
+import com.remedy.arsys.api.QualifierInfo;
+import com.remedy.arsys.api.RelationalOperationInfo;
+import com.remedy.arsys.api.StatusInfo;
+import com.remedy.arsys.api.Value;
+
+/**
+ * Finds the entries of a form with a number of entries, without a server. The entries have request ids 000000000000001 and up
+ * and only contain the request id. The adapter supports the paging of {@link EntryIterator} by position and by keyset on the
+ * request id, counts the calls and can let a call fail.
+ *
+ * @author Hugo Visser
+ */
+public class StubFactoryAdapter extends ApiFactoryAdapter {
+    private final int entryCount;
+    private final AtomicInteger keyCalls = new AtomicInteger();
+    private final AtomicInteger entryCalls = new AtomicInteger();
+    private volatile int failingEntryCall = -1;
+
+    /**
+     * @param entryCount the number of entries of the form
+     */
+    public StubFactoryAdapter(int entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * @param index the index of the entry, starting at 0
+     * @return the request id of the entry
+     */
+    public static String entryId(int index) {
+        String id = Integer.toString(index + 1);
+        return "000000000000000".substring(id.length()) + id;
+    }
+
+    /**
+     * Let a call to find entries fail once.
+     * @param call the number of the call that fails, starting at 1
+     */
+    public void failEntryCall(int call) {
+        this.failingEntryCall = call;
+    }
+
+    /**
+     * @return the number of calls to find entry keys
+     */
+    public int getKeyCalls() {
+        return keyCalls.get();
+    }
+
+    /**
+     * @return the number of calls to find entries
+     */
+    public int getEntryCalls() {
+        return entryCalls.get();
+    }
+
+    public EntryKey[] findEntryKeys(ARServerUser context, EntryListCriteria criteria, Integer matches) throws ARException {
+        keyCalls.incrementAndGet();
+        int first = criteria.getFirstRetrieve();
+        Value lastKey = lastKey(criteria.getQualifier());
+        if (lastKey != null) {
+            first += Integer.parseInt(lastKey.toString());
+        }
+        first = Math.min(first, entryCount);
+        int size = criteria.getMaxLimit() > 0 ? Math.min(criteria.getMaxLimit(), entryCount - first) : entryCount - first;
+        EntryKey[] keys = new EntryKey[size];
+        for (int i=0; i < size; i++) {
+            keys[i] = new EntryKey();
+            keys[i].setEntryID(new EntryID(entryId(first + i)));
+        }
+        return keys;
+    }
+
+    public Entry[] findEntries(ARServerUser context, EntryListCriteria listCriteria, EntryCriteria criteria) throws ARException {
+        if (entryCalls.incrementAndGet() == failingEntryCall) {
+            throw new ARException(new StatusInfo[0]);
+        }
+        EntryID[] ids = listCriteria.getEntriesToRetrieve();
+        Entry[] entries = new Entry[ids.length];
+        for (int i=0; i < ids.length; i++) {
+            entries[i] = (Entry) EntryFactory.getFactory().newInstance();
+            entries[i].setEntryID(ids[i]);
+            entries[i].setEntryItems(new EntryItem[] {new EntryItem(new FieldID(1), new Value(ids[i].toString()))});
+        }
+        return entries;
+    }
+
+    /**
+     * Find the key of a keyset qualification 'Request ID' > key.
+     */
+    private static Value lastKey(QualifierInfo qualifier) {
+        if (qualifier == null) {
+            return null;
+        }
+        if (qualifier.getOperation() == QualifierInfo.AR_COND_OP_AND) {
+            Value key = lastKey(qualifier.getOperand1());
+            return key != null ? key : lastKey(qualifier.getOperand2());
+        }
+        if (qualifier.getOperation() == QualifierInfo.AR_COND_OP_REL_OP) {
+            RelationalOperationInfo relation = qualifier.getRelationalOperationInfo();
+            if (relation.getOperation() == RelationalOperationInfo.AR_REL_OP_GREATER
+                    && relation.getOperand1().getFieldID() != null && relation.getOperand1().getFieldID().getValue() == 1) {
+                return relation.getOperand2().getValue();
+            }
+        }
+        return null;
+    }
+}